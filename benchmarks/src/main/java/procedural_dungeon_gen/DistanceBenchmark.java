@@ -0,0 +1,76 @@
+package procedural_dungeon_gen;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times distance queries between random pairs of rooms on generated maps:
+ * findShortestDistance(), which goes through the cached distance index, and a
+ * single uncached breadth first search over the room graph.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DistanceBenchmark {
+
+	private static final int PAIR_COUNT = 1024;
+
+	@Param({ "64x48", "128x96", "512x384" })
+	public String size;
+
+	private GeneratedMap map;
+	private Room[] sources, targets;
+	private int next;
+
+	// buffers of the uncached search
+	private int[] distances, queue;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		String[] mapSize = size.split("x");
+		map = new MapParameters(Integer.parseInt(mapSize[0]), Integer.parseInt(mapSize[1])).createMap(42);
+		map.setEmptyCellMode(GeneratedMap.EmptyCellMode.INCREMENTAL);
+		map.generateMap();
+
+		SplittableRandom random = new SplittableRandom(7);
+		int roomCount = map.getRooms().size();
+		sources = new Room[PAIR_COUNT];
+		targets = new Room[PAIR_COUNT];
+		for (int i = 0; i < PAIR_COUNT; i++) {
+			sources[i] = map.getRooms().get(random.nextInt(roomCount));
+			targets[i] = map.getRooms().get(random.nextInt(roomCount));
+		}
+
+		distances = new int[roomCount];
+		queue = new int[roomCount];
+	}
+
+	@Benchmark
+	public int findShortestDistance() {
+		int i = next++ & (PAIR_COUNT - 1);
+		return map.findShortestDistance(sources[i], targets[i]);
+	}
+
+	@Benchmark
+	public int distancesFrom() {
+		int i = next++ & (PAIR_COUNT - 1);
+		map.getRoomGraph().distancesFrom(sources[i].getId(), distances, queue);
+		return distances[targets[i].getId()];
+	}
+}
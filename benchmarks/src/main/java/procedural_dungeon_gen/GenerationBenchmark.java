@@ -0,0 +1,58 @@
+package procedural_dungeon_gen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times generateMap() end to end and its empty cell phase on its own, over the
+ * matrix of map shapes in MapBenchmarkState.
+ *
+ * End to end runs use a new seed every invocation, so the time is averaged over
+ * many layouts, including the occasional slow one. Phase runs repeat one
+ * layout, so a change to a phase shows up without the noise of the others.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerationBenchmark extends MapBenchmarkState {
+
+	private static final long PHASE_SEED = 42;
+
+	// seed of the next end to end run
+	private long nextSeed;
+
+	// map the empty cell phase is run on
+	private GeneratedMap phaseMap;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		nextSeed = 0;
+
+		phaseMap = createMap(PHASE_SEED);
+	}
+
+	@Benchmark
+	public GeneratedMap generateMap() {
+		GeneratedMap map = createMap(nextSeed++);
+		map.generateMap();
+		return map;
+	}
+
+	@Benchmark
+	public byte[] createEmptyCells() {
+		phaseMap.beginGeneration();
+		phaseMap.createEmptyCells();
+		return phaseMap.getCells();
+	}
+}
@@ -0,0 +1,53 @@
+package procedural_dungeon_gen;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Matrix of map shapes shared by the generation benchmarks. Every combination
+ * of map size, percentEmpty, room size limit and empty cell mode is run.
+ *
+ * RESTART gets exponentially slower as maps get larger and emptier, so the
+ * default sizes stay small enough for it to finish. Larger maps can be run in
+ * INCREMENTAL mode alone, for example with -p size=512x384 -p
+ * emptyCellMode=INCREMENTAL.
+ */
+@State(Scope.Thread)
+public abstract class MapBenchmarkState {
+
+	@Param({ "64x48", "128x96" })
+	public String size;
+
+	@Param({ "0.1", "0.25" })
+	public float percentEmpty;
+
+	// max room width x max room height
+	@Param({ "2x2", "3x3", "5x4" })
+	public String roomLimit;
+
+	@Param({ "RESTART", "INCREMENTAL" })
+	public GeneratedMap.EmptyCellMode emptyCellMode;
+
+	/**
+	 * @return The parameters of the current point in the matrix
+	 */
+	protected MapParameters parameters() {
+		String[] mapSize = size.split("x");
+		String[] roomSize = roomLimit.split("x");
+		return new MapParameters(Integer.parseInt(mapSize[0]), Integer.parseInt(mapSize[1]), percentEmpty, 3, 2,
+				Integer.parseInt(roomSize[0]), Integer.parseInt(roomSize[1]));
+	}
+
+	/**
+	 * Creates an ungenerated map for the current point in the matrix
+	 *
+	 * @param seed Seed of the map
+	 * @return The new map
+	 */
+	protected GeneratedMap createMap(long seed) {
+		GeneratedMap map = parameters().createMap(seed);
+		map.setEmptyCellMode(emptyCellMode);
+		return map;
+	}
+}
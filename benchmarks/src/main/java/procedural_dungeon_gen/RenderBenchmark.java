@@ -0,0 +1,82 @@
+package procedural_dungeon_gen;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times drawing a generated map with the raster and text renderers. Output goes
+ * into a reused pixel array and a writer that discards its text, so only the
+ * drawing itself is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RenderBenchmark {
+
+	@Param({ "128x96", "512x384" })
+	public String size;
+
+	private GeneratedMap map;
+	private MapRenderer renderer;
+	private MapTextRenderer textRenderer;
+	private int[] pixels;
+	private Writer discard;
+
+	// number of characters passed to the discarding writer
+	private long written;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		String[] mapSize = size.split("x");
+		map = new MapParameters(Integer.parseInt(mapSize[0]), Integer.parseInt(mapSize[1])).createMap(42);
+		map.setEmptyCellMode(GeneratedMap.EmptyCellMode.INCREMENTAL);
+		map.generateMap();
+
+		renderer = new MapRenderer(5, 5, 2);
+		pixels = new int[renderer.getImageWidth(map) * renderer.getImageHeight(map)];
+
+		textRenderer = new MapTextRenderer();
+		discard = new Writer() {
+			@Override
+			public void write(char[] cbuf, int off, int len) {
+				written += len;
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	@Benchmark
+	public int[] renderImage() {
+		renderer.render(map, pixels, 0, renderer.getImageWidth(map));
+		return pixels;
+	}
+
+	@Benchmark
+	public long renderText() throws Exception {
+		textRenderer.render(map, discard);
+		return written;
+	}
+}
@@ -0,0 +1,54 @@
+package procedural_dungeon_gen;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times createRooms() and the placeRoomsAround() recursion it runs on their
+ * own, starting from the same empty cells every time. The cells are restored
+ * before each invocation, outside of the measured time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoomPlacementBenchmark extends MapBenchmarkState {
+
+	private static final long SEED = 42;
+
+	private GeneratedMap map;
+
+	// cells of the map once its empty cells were placed
+	private byte[] emptyCells;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		map = createMap(SEED);
+		map.beginGeneration();
+		map.createEmptyCells();
+		emptyCells = map.getCells().clone();
+	}
+
+	@Setup(Level.Invocation)
+	public void resetRooms() {
+		map.beginGeneration();
+		map.restore(emptyCells, Collections.<Room>emptyList(), -1, -1);
+	}
+
+	@Benchmark
+	public int createRooms() {
+		map.createRooms();
+		return map.getRooms().size();
+	}
+}
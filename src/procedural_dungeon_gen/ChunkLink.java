@@ -0,0 +1,114 @@
+package procedural_dungeon_gen;
+
+import procedural_dungeon_gen.Room.Direction;
+
+/**
+ * A link of a ChunkedWorld between the portal cells of two neighboring chunks.
+ * Like a doorway it joins two rooms, but the rooms belong to different maps, so
+ * it is kept by the world instead of being listed among either room's doorways.
+ * Crossing the link is one step, the same as passing through a doorway.
+ *
+ * The rooms are those of the chunks loaded when the link was made. A chunk that
+ * is evicted and loaded again has new room objects with the same IDs.
+ */
+public final class ChunkLink {
+
+	private final int chunkX, chunkY;
+	private final Direction side;
+	private final int x, y;
+	private final Room room, neighborRoom;
+
+	ChunkLink(int chunkX, int chunkY, Direction side, int x, int y, Room room, Room neighborRoom) {
+		this.chunkX = chunkX;
+		this.chunkY = chunkY;
+		this.side = side;
+		this.x = x;
+		this.y = y;
+		this.room = room;
+		this.neighborRoom = neighborRoom;
+	}
+
+	/**
+	 * @return The x coordinate of the chunk the link leads out of
+	 */
+	public int getChunkX() {
+		return chunkX;
+	}
+
+	/**
+	 * @return The y coordinate of the chunk the link leads out of
+	 */
+	public int getChunkY() {
+		return chunkY;
+	}
+
+	/**
+	 * @return Side of the chunk the link is on
+	 */
+	public Direction getSide() {
+		return side;
+	}
+
+	/**
+	 * @return The x coordinate of the chunk the link leads into
+	 */
+	public int getNeighborChunkX() {
+		return side == Direction.LEFT ? chunkX - 1 : side == Direction.RIGHT ? chunkX + 1 : chunkX;
+	}
+
+	/**
+	 * @return The y coordinate of the chunk the link leads into
+	 */
+	public int getNeighborChunkY() {
+		return side == Direction.UP ? chunkY - 1 : side == Direction.DOWN ? chunkY + 1 : chunkY;
+	}
+
+	/**
+	 * @return The x position in the world of the portal cell on this side
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * @return The y position in the world of the portal cell on this side
+	 */
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * @return The x position in the world of the portal cell across the link
+	 */
+	public int getNeighborX() {
+		return x + getNeighborChunkX() - chunkX;
+	}
+
+	/**
+	 * @return The y position in the world of the portal cell across the link
+	 */
+	public int getNeighborY() {
+		return y + getNeighborChunkY() - chunkY;
+	}
+
+	/**
+	 * @return The room of the chunk containing the portal cell on this side
+	 */
+	public Room getRoom() {
+		return room;
+	}
+
+	/**
+	 * @return The room of the neighboring chunk containing the portal cell across
+	 *         the link
+	 */
+	public Room getNeighborRoom() {
+		return neighborRoom;
+	}
+
+	@Override
+	public String toString() {
+		return "ChunkLink[chunk " + chunkX + "," + chunkY + " to " + getNeighborChunkX() + "," + getNeighborChunkY()
+				+ " at " + x + "," + y + "]";
+	}
+}
@@ -0,0 +1,325 @@
+package procedural_dungeon_gen;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import procedural_dungeon_gen.Room.Direction;
+
+/**
+ * An unbounded world made of fixed-size chunks, each of which is a
+ * GeneratedMap produced on demand from the world seed and the chunk's
+ * coordinates. Chunk (cx, cy) covers world cells cx * chunkWidth up to
+ * (cx + 1) * chunkWidth - 1 horizontally, and likewise vertically.
+ *
+ * Neighboring chunks are joined through a portal cell on their shared edge,
+ * whose position only depends on the world seed and the edge, so both chunks
+ * agree on it without either being loaded. The portal cells on both sides are
+ * reserved so they always end up in rooms, and walking from one to the other
+ * crosses the chunk border. Since every chunk is connected, the whole world is.
+ * A doorway only joins rooms of one map, so these crossings are not doorways
+ * and are not seen by a chunk's room graph or pathfinders. They are listed as
+ * ChunkLinks by getLinks() instead.
+ *
+ * Loaded chunks are kept in a cache holding at most a fixed number of chunks,
+ * evicting the least recently used one, so memory stays flat no matter how
+ * much of the world is visited. An evicted chunk is regenerated identically if
+ * it is needed again, as a new map with new room objects.
+ *
+ * Every chunk is frozen once generated, so it can be shared between threads.
+ * All methods can be called from any thread, and threads asking for a chunk
+ * that is being generated wait for that generation instead of starting their
+ * own, while other chunks are generated at the same time.
+ */
+public class ChunkedWorld {
+
+	private final MapParameters chunkParams;
+	private final long worldSeed;
+	private final int maxLoadedChunks;
+
+	// loaded chunks by packed chunk coordinates, in least to most recently used
+	// order
+	private final LinkedHashMap<Long, GeneratedMap> chunks;
+
+	// futures of the chunks being generated, which other threads asking for them
+	// wait for
+	private final Map<Long, CompletableFuture<GeneratedMap>> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a new chunked world. No chunks are generated until they are
+	 * requested.
+	 *
+	 * @param chunkParams     Parameters of every chunk, where the map width and
+	 *                        height are the size of a chunk
+	 * @param worldSeed       Seed of the world
+	 * @param maxLoadedChunks Max number of chunks kept in memory
+	 */
+	public ChunkedWorld(MapParameters chunkParams, long worldSeed, final int maxLoadedChunks) {
+		if (maxLoadedChunks < 1) {
+			throw new IllegalArgumentException("At least one chunk must be kept loaded");
+		}
+
+		this.chunkParams = chunkParams;
+		this.worldSeed = worldSeed;
+		this.maxLoadedChunks = maxLoadedChunks;
+
+		this.chunks = new LinkedHashMap<Long, GeneratedMap>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, GeneratedMap> eldest) {
+				return size() > maxLoadedChunks;
+			}
+		};
+	}
+
+	/**
+	 * Gets a chunk, generating it if it is not loaded
+	 *
+	 * @param chunkX The x coordinate of the chunk
+	 * @param chunkY The y coordinate of the chunk
+	 * @return The generated and frozen chunk
+	 */
+	public GeneratedMap getChunk(int chunkX, int chunkY) {
+		Long key = chunkKey(chunkX, chunkY);
+		GeneratedMap chunk;
+		synchronized (chunks) {
+			chunk = chunks.get(key);
+		}
+		if (chunk != null) {
+			return chunk;
+		}
+
+		CompletableFuture<GeneratedMap> future = new CompletableFuture<>();
+		CompletableFuture<GeneratedMap> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			try {
+				return existing.join();
+			} catch (CompletionException e) {
+				throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+			}
+		}
+
+		try {
+			// the chunk may have been loaded between the lookup and claiming the key
+			synchronized (chunks) {
+				chunk = chunks.get(key);
+			}
+			if (chunk == null) {
+				chunk = generateChunk(chunkX, chunkY);
+				synchronized (chunks) {
+					chunks.put(key, chunk);
+				}
+			}
+			future.complete(chunk);
+			return chunk;
+		} catch (RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			// removed after loading, so later calls find the chunk in one or the other
+			inFlight.remove(key, future);
+		}
+	}
+
+	/**
+	 * Generates and freezes a chunk, without holding any lock
+	 */
+	private GeneratedMap generateChunk(int chunkX, int chunkY) {
+		GeneratedMap chunk = chunkParams.createMap(chunkSeed(chunkX, chunkY));
+
+		// reserves the portal cell on each side so it is part of a room
+		for (Direction side : Direction.values()) {
+			Point portal = localPortal(chunkX, chunkY, side);
+			chunk.reserveCell(portal.x, portal.y);
+		}
+
+		chunk.generateMap();
+		chunk.freeze();
+		return chunk;
+	}
+
+	/**
+	 * Gets the room at a world position, generating its chunk if needed
+	 *
+	 * @param worldX The x position of the cell in the world
+	 * @param worldY The y position of the cell in the world
+	 * @return The room occupying the cell, or null if the cell is empty
+	 */
+	public Room getRoomAt(int worldX, int worldY) {
+		int chunkWidth = chunkParams.getMapWidth(), chunkHeight = chunkParams.getMapHeight();
+		GeneratedMap chunk = getChunk(Math.floorDiv(worldX, chunkWidth), Math.floorDiv(worldY, chunkHeight));
+		return chunk.getRoomAt(Math.floorMod(worldX, chunkWidth), Math.floorMod(worldY, chunkHeight));
+	}
+
+	/**
+	 * Gets the world position of the portal cell on one side of a chunk. The cell
+	 * is inside the chunk, and the cell one step further in the direction of the
+	 * side is the portal cell of the neighboring chunk.
+	 *
+	 * @param chunkX The x coordinate of the chunk
+	 * @param chunkY The y coordinate of the chunk
+	 * @param side   Side of the chunk
+	 * @return The world position of the portal cell
+	 */
+	public Point getPortal(int chunkX, int chunkY, Direction side) {
+		Point portal = localPortal(chunkX, chunkY, side);
+		portal.x += chunkX * chunkParams.getMapWidth();
+		portal.y += chunkY * chunkParams.getMapHeight();
+		return portal;
+	}
+
+	/**
+	 * Gets the room on the other side of a chunk's portal, loading the neighboring
+	 * chunk if needed. The room belongs to the neighboring chunk.
+	 *
+	 * @param chunkX The x coordinate of the chunk
+	 * @param chunkY The y coordinate of the chunk
+	 * @param side   Side of the chunk the portal is on
+	 * @return The room in the neighboring chunk that the portal leads into
+	 */
+	public Room getRoomAcrossPortal(int chunkX, int chunkY, Direction side) {
+		Point portal = getPortal(chunkX, chunkY, side);
+		switch (side) {
+		case UP:
+			return getRoomAt(portal.x, portal.y - 1);
+		case DOWN:
+			return getRoomAt(portal.x, portal.y + 1);
+		case LEFT:
+			return getRoomAt(portal.x - 1, portal.y);
+		default:
+			return getRoomAt(portal.x + 1, portal.y);
+		}
+	}
+
+	/**
+	 * Gets the link through a chunk's portal to the neighboring chunk, loading both
+	 * chunks if needed
+	 *
+	 * @param chunkX The x coordinate of the chunk
+	 * @param chunkY The y coordinate of the chunk
+	 * @param side   Side of the chunk the portal is on
+	 * @return The link from the chunk's portal room to the room across the portal
+	 */
+	public ChunkLink getLink(int chunkX, int chunkY, Direction side) {
+		Point portal = getPortal(chunkX, chunkY, side);
+		Room room = getRoomAt(portal.x, portal.y);
+		return new ChunkLink(chunkX, chunkY, side, portal.x, portal.y, room,
+				getRoomAcrossPortal(chunkX, chunkY, side));
+	}
+
+	/**
+	 * Gets the links leading out of a chunk, one through the portal on each of its
+	 * sides, loading the chunk and its four neighbors if needed. Together with the
+	 * doorways inside each chunk, these are every way to move between rooms of
+	 * the world.
+	 *
+	 * @param chunkX The x coordinate of the chunk
+	 * @param chunkY The y coordinate of the chunk
+	 * @return The chunk's links, in the order of Direction.values()
+	 */
+	public List<ChunkLink> getLinks(int chunkX, int chunkY) {
+		List<ChunkLink> links = new ArrayList<>(4);
+		for (Direction side : Direction.values()) {
+			links.add(getLink(chunkX, chunkY, side));
+		}
+		return links;
+	}
+
+	/**
+	 * @return The number of chunks currently held in memory
+	 */
+	public int getLoadedChunkCount() {
+		synchronized (chunks) {
+			return chunks.size();
+		}
+	}
+
+	/**
+	 * @param chunkX The x coordinate of the chunk
+	 * @param chunkY The y coordinate of the chunk
+	 * @return True if the chunk is held in memory
+	 */
+	public boolean isChunkLoaded(int chunkX, int chunkY) {
+		synchronized (chunks) {
+			return chunks.containsKey(chunkKey(chunkX, chunkY));
+		}
+	}
+
+	public MapParameters getChunkParameters() {
+		return chunkParams;
+	}
+
+	public long getWorldSeed() {
+		return worldSeed;
+	}
+
+	public int getMaxLoadedChunks() {
+		return maxLoadedChunks;
+	}
+
+	/**
+	 * Gets the seed a chunk is generated from, which only depends on the world seed
+	 * and the chunk's coordinates
+	 *
+	 * @param chunkX The x coordinate of the chunk
+	 * @param chunkY The y coordinate of the chunk
+	 * @return The seed of the chunk
+	 */
+	public long chunkSeed(int chunkX, int chunkY) {
+		return mix(mix(worldSeed ^ chunkKey(chunkX, chunkY)) + chunkY);
+	}
+
+	/**
+	 * Gets the position of a chunk's portal cell relative to the chunk. The offset
+	 * along an edge is derived from the edge itself, which is named by the chunk to
+	 * its left or above it, so both chunks sharing the edge compute the same one.
+	 */
+	private Point localPortal(int chunkX, int chunkY, Direction side) {
+		int chunkWidth = chunkParams.getMapWidth(), chunkHeight = chunkParams.getMapHeight();
+
+		switch (side) {
+		case LEFT:
+			return new Point(0, edgeOffset(chunkX - 1, chunkY, false, chunkHeight));
+		case RIGHT:
+			return new Point(chunkWidth - 1, edgeOffset(chunkX, chunkY, false, chunkHeight));
+		case UP:
+			return new Point(edgeOffset(chunkX, chunkY - 1, true, chunkWidth), 0);
+		default:
+			return new Point(edgeOffset(chunkX, chunkY, true, chunkWidth), chunkHeight - 1);
+		}
+	}
+
+	/**
+	 * Gets the offset of the portal along the right or bottom edge of a chunk
+	 *
+	 * @param chunkX     The x coordinate of the chunk
+	 * @param chunkY     The y coordinate of the chunk
+	 * @param bottomEdge True for the bottom edge, false for the right edge
+	 * @param edgeLength Number of cells along the edge
+	 * @return The offset of the portal cell along the edge
+	 */
+	private int edgeOffset(int chunkX, int chunkY, boolean bottomEdge, int edgeLength) {
+		long hash = mix(chunkSeed(chunkX, chunkY) ^ (bottomEdge ? 0x632BE59BD9B4E019L : 0x9E3779B97F4A7C15L));
+		return (int) Math.floorMod(hash, (long) edgeLength);
+	}
+
+	private static long chunkKey(int chunkX, int chunkY) {
+		return ((long) chunkX << 32) | (chunkY & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Scrambles the bits of a value (the finalizer of SplittableRandom), so nearby
+	 * inputs give unrelated outputs
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
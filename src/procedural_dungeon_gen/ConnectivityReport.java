@@ -0,0 +1,85 @@
+package procedural_dungeon_gen;
+
+import java.util.Arrays;
+
+/**
+ * Describes how the non-empty cells of a map are split into connected
+ * components, where two cells are connected if they can be reached from one
+ * another by only moving up, down, left or right between non-empty cells.
+ */
+public final class ConnectivityReport {
+
+	private final int[] componentSizes;
+	private final int totalCells;
+
+	/**
+	 * Creates a new connectivity report
+	 *
+	 * @param componentSizes Number of cells in each component, in the order the
+	 *                       components were found
+	 */
+	ConnectivityReport(int[] componentSizes) {
+		this.componentSizes = componentSizes;
+
+		int total = 0;
+		for (int size : componentSizes) {
+			total += size;
+		}
+		this.totalCells = total;
+	}
+
+	/**
+	 * @return The number of connected components
+	 */
+	public int getComponentCount() {
+		return componentSizes.length;
+	}
+
+	/**
+	 * @param component Index of the component, in the order components were found
+	 *                  scanning the map row by row from the top left
+	 * @return The number of cells in the component
+	 */
+	public int getComponentSize(int component) {
+		return componentSizes[component];
+	}
+
+	/**
+	 * @return A copy of the sizes of all components
+	 */
+	public int[] getComponentSizes() {
+		return Arrays.copyOf(componentSizes, componentSizes.length);
+	}
+
+	/**
+	 * @return The number of cells in the largest component, or 0 if there are no
+	 *         non-empty cells
+	 */
+	public int getLargestComponentSize() {
+		int largest = 0;
+		for (int size : componentSizes) {
+			largest = Math.max(largest, size);
+		}
+		return largest;
+	}
+
+	/**
+	 * @return The total number of non-empty cells
+	 */
+	public int getTotalCells() {
+		return totalCells;
+	}
+
+	/**
+	 * @return True if all non-empty cells are reachable from one another
+	 */
+	public boolean isConnected() {
+		return componentSizes.length <= 1;
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectivityReport[components=" + componentSizes.length + ", cells=" + totalCells + ", largest="
+				+ getLargestComponentSize() + "]";
+	}
+}
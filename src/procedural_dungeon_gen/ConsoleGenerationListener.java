@@ -0,0 +1,43 @@
+package procedural_dungeon_gen;
+
+/**
+ * Prints the progress of generation to the console, as generateMap() used to
+ * do on its own
+ */
+public class ConsoleGenerationListener implements GenerationListener {
+
+	@Override
+	public void phaseStarted(GeneratedMap map, GenerationPhase phase) {
+		switch (phase) {
+		case EMPTY_CELLS:
+			System.out.println("Generating empty cells");
+			break;
+		case ROOMS:
+			System.out.println("Generating rooms");
+			break;
+		default:
+			break;
+		}
+	}
+
+	@Override
+	public void phaseFinished(GeneratedMap map, GenerationPhase phase, long nanos) {
+		switch (phase) {
+		case EMPTY_CELLS:
+			System.out.println("Finished generating empty cells");
+			break;
+		case ROOMS:
+			System.out.println("Finished generating rooms");
+			break;
+		default:
+			break;
+		}
+	}
+
+	@Override
+	public void endpointsChosen(GeneratedMap map, Room startRoom, Room goalRoom, long matchingPairs) {
+		if (startRoom != null) {
+			System.out.println("Room 1 area:" + startRoom.getArea() + ", Room 2 area:" + goalRoom.getArea());
+		}
+	}
+}
@@ -1,13 +1,14 @@
 package procedural_dungeon_gen;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
 import java.util.Random;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.Queue;
+import java.util.List;
 
 import javax.swing.*;
 import procedural_dungeon_gen.Room.Direction;
@@ -18,10 +19,11 @@ import java.awt.image.BufferedImage;
  * Represents a generated map in the form of a grid where each unit is
  * designated as a cell, with Rooms occupying certain cells and not others. The
  * generated maps are procedurally generated and are randomly created (assuming
- * the same seed is not used). To store data, the map is represented by a 2D
- * Array of the enum Cells, with values representing different values of the
- * cells. Then, using this grid, the program populates the map with Rooms,
- * storing them in a list in the GeneratedMap class. The Rooms store their
+ * the same seed is not used). To store data, the map is represented by a flat
+ * array of cell values stored row by row, alongside a flat array holding the ID
+ * of the room occupying each cell. Then, using this grid, the program populates
+ * the map with Rooms, storing them in a list in the GeneratedMap class indexed
+ * by room ID. The Rooms store their
  * relationships with the rooms around them, which makes the generated map
  * traversable. All rooms generated in the map will be reachable (no island room
  * cells surrounded by empty cells). When created, a generated map will be
@@ -31,16 +33,124 @@ import java.awt.image.BufferedImage;
  */
 public class GeneratedMap {
 
-	// represents a cell in the generated map
-	private enum Cell {
-		UNPROCESSED, PROCESSED, EMPTY, ROOM
+	// values a cell in the generated map can have
+	static final byte UNPROCESSED = 0, PROCESSED = 1, EMPTY = 2, ROOM = 3;
+
+	/**
+	 * Strategies for placing empty cells such that all non-empty cells stay
+	 * reachable
+	 */
+	public static enum EmptyCellMode {
+		// places all empty cells, then starts over if any cells were disconnected
+		RESTART,
+		// only places empty cells that keep all cells connected, in a single pass
+		INCREMENTAL
 	}
 
 	private int mapWidth, mapHeight;
-	private Cell mapGrid[][];
-	private Room mapRoomGrid[][];
+
+	// the value of each cell and the ID of the room occupying it (-1 if none),
+	// both stored row by row so the cell at (x,y) is at index y * mapWidth + x
+	private byte mapGrid[];
+	private int mapRoomGrid[];
+
+	// rooms indexed by their ID
 	private ArrayList<Room> rooms = new ArrayList<>();
 
+	// compact view of the room connections and the distance index over it, built
+	// the first time they are requested after a generation
+	private RoomGraph roomGraph;
+	private RoomDistanceIndex distanceIndex;
+
+	// distance index from before the layout was edited, whose rows that the edits
+	// did not change are carried over to the next index
+	private RoomDistanceIndex staleDistanceIndex;
+
+	// max number of distance rows the distance index keeps in memory
+	private int distanceIndexRows = RoomDistanceIndex.DEFAULT_CACHED_ROWS;
+
+	// doorways and the costs between them used by RoomPathfinder, built on demand
+	private PortalGraph portalGraph;
+
+	// room graph and portals from before the layout was edited, and the rooms the
+	// edits since they were built touched, by ID. The next graphs copy the rows of
+	// the other rooms from them instead of walking every doorway again
+	private RoomGraph staleRoomGraph;
+	private PortalGraph stalePortalGraph;
+	private boolean[] editedRooms = new boolean[0];
+
+	// scratch buffers of canReach(), where a room was reached by the search from
+	// the first room if its mark equals reachStamp, and by the one from the second
+	// if it equals reachStamp + 1
+	private int[] reachMarks = new int[0], reachQueue = new int[0];
+	private int reachStamp;
+
+	// buckets of the rooms by position, kept up to date as rooms are placed
+	private final RoomSpatialIndex spatialIndex;
+
+	// number of doorways between the start and goal rooms
+	private static final int ENDPOINT_DISTANCE = 5;
+
+	// rooms picked as the start and goal of the map, colored green
+	private Room startRoom, goalRoom;
+
+	// one bit per cell that is set if the cell is empty or part of a room, with each
+	// row padded to a whole number of longs, so rectangles can be checked for
+	// overlap a word at a time. Only fillGrid() may change EMPTY or ROOM cells
+	private long occupied[];
+	private int occupiedStride;
+
+	// explicit stack of cell indices reused by the connectivity fill
+	private int[] fillStack = new int[64];
+
+	// cells that must not be made empty
+	private BitSet reservedCells = new BitSet();
+
+	// how empty cells are placed while keeping all other cells reachable
+	private EmptyCellMode emptyCellMode = EmptyCellMode.RESTART;
+
+	// receives events during generation, or null if nothing is listening
+	private GenerationListener listener;
+
+	// budget of the generation in progress, or null if it is unbounded, and the
+	// System.nanoTime() value its timeout passes at
+	private GenerationBudget budget;
+	private long deadline;
+
+	// number of attempts between checks of the clock by retry loops under a budget
+	private static final int BUDGET_CHECK_INTERVAL = 256;
+
+	// whether the last generation ran out of budget and used a fallback
+	private boolean fallbackUsed;
+
+	// whether the map is read-only and may be shared between threads
+	private boolean frozen;
+
+	// relative likelihood of each room size
+	private RoomSizeDistribution roomSizes;
+
+	// scratch state of chooseRoomAround(): free cells going away from an entrance,
+	// and the extent of the rectangle picked from them
+	private int[] freeDepths = new int[0];
+	private int chosenBefore, chosenAfter, chosenDepth;
+
+	// cells around the rooms being grown, as y * mapWidth + x. Used as a stack:
+	// each room being grown owns the cells it pushed, and the rooms placed around
+	// it push theirs on top and pop them once they are done
+	private int[] adjacentCells = new int[64];
+	private int adjacentCellCount;
+
+	// stack of the rooms being grown by placeRoomsAround(), where the room at index
+	// d was placed at depth d. Each has the range of adjacentCells it pushed and
+	// the next of those cells to try
+	private Room[] growingRooms = new Room[16];
+	private int[] growingStarts = new int[16], growingNext = new int[16], growingEnds = new int[16];
+
+	// scratch buffers of the local connectivity check, where a window cell counts as
+	// visited if its entry equals the current stamp
+	private int[] localVisited = new int[0], localQueue = new int[0];
+	private int localStamp;
+
 	// the percent of the map that should be empty
 	private float percentEmpty;
 
@@ -49,6 +159,11 @@ public class GeneratedMap {
 
 	private Random rand = new Random();
 
+	// seed that rand is reset to at the start of each generation. Maps created
+	// without a fixed seed draw a new one every time they are generated
+	private long seed;
+	private boolean fixedSeed;
+
 	/**
 	 * Creates a new, unprocessed generated map.
 	 * 
@@ -64,9 +179,16 @@ public class GeneratedMap {
 		maxEmptyHeight = 2;
 		maxRoomWidth = 3;
 		maxRoomHeight = 3;
+		roomSizes = RoomSizeDistribution.uniform(Math.min(maxRoomWidth, mapWidth),
+				Math.min(maxRoomHeight, mapHeight));
+
+		this.mapGrid = new byte[mapWidth * mapHeight];
+		this.mapRoomGrid = new int[mapWidth * mapHeight];
+		Arrays.fill(mapRoomGrid, -1);
 
-		this.mapGrid = new Cell[mapHeight][mapWidth];
-		this.mapRoomGrid = new Room[mapHeight][mapWidth];
+		this.occupiedStride = (mapWidth + 63) >>> 6;
+		this.occupied = new long[occupiedStride * mapHeight];
+		this.spatialIndex = new RoomSpatialIndex(mapWidth, mapHeight);
 	}
 
 	/**
@@ -91,60 +213,670 @@ public class GeneratedMap {
 		this.maxRoomWidth = maxRoomWidth;
 		this.maxRoomHeight = maxRoomHeight;
 
-		this.mapGrid = new Cell[mapHeight][mapWidth];
-		this.mapRoomGrid = new Room[mapHeight][mapWidth];
+		// no room is larger than the map, so sizes past it are left out of the
+		// distribution rather than allocated
+		this.roomSizes = RoomSizeDistribution.uniform(Math.min(maxRoomWidth, mapWidth),
+				Math.min(maxRoomHeight, mapHeight));
+
+		this.mapGrid = new byte[mapWidth * mapHeight];
+		this.mapRoomGrid = new int[mapWidth * mapHeight];
+		Arrays.fill(mapRoomGrid, -1);
+
+		this.occupiedStride = (mapWidth + 63) >>> 6;
+		this.occupied = new long[occupiedStride * mapHeight];
+		this.spatialIndex = new RoomSpatialIndex(mapWidth, mapHeight);
+	}
+
+	/**
+	 * Creates a new, unprocessed generated map with a fixed seed. Generating the
+	 * map always produces the same layout for the same parameters and seed.
+	 * 
+	 * @param params Parameters of the generated map
+	 * @param seed   Seed of the map's random stream
+	 */
+	public GeneratedMap(MapParameters params, long seed) {
+		this(params.getMapWidth(), params.getMapHeight(), params.getPercentEmpty(), params.getMaxEmptyWidth(),
+				params.getMaxEmptyHeight(), params.getMaxRoomWidth(), params.getMaxRoomHeight());
+
+		this.seed = seed;
+		this.fixedSeed = true;
 	}
 
 	/**
-	 * Generates a new layout of rooms and empty cells
+	 * Generates a new layout of rooms and empty cells. Runs until it finishes,
+	 * which can take very long for crowded maps in the RESTART empty cell mode. Use
+	 * generateMap(GenerationBudget) to put a limit on it.
 	 */
 	public void generateMap() {
-		rooms.clear();
-		this.mapRoomGrid = new Room[mapHeight][mapWidth];
+		budget = null;
+		generate(null);
+	}
+
+	/**
+	 * Generates a new layout of rooms and empty cells, stopping as soon as the
+	 * layout fails one of a filter's checks. A filter's checks for a phase run
+	 * right after the phase finishes, so the remaining phases are skipped for a
+	 * rejected map, which is left as its last phase finished it and should be
+	 * discarded.
+	 * 
+	 * @param filter Checks the map must pass
+	 * @return True if the map passed every check and was fully generated
+	 */
+	public boolean generateMap(MapFilter filter) {
+		budget = null;
+		return generate(filter);
+	}
+
+	/**
+	 * Generates a new layout of rooms and empty cells within a budget. Checks the
+	 * time and interruption between phases and regularly inside every retry loop.
+	 * When a limit is reached, either throws or finishes the current phase with a
+	 * fallback that always terminates, depending on the budget's fallback policy.
+	 * Fallbacks are bounded by the size of the map, so a best-effort generation
+	 * may finish shortly after the timeout. Whether a fallback was used can be
+	 * checked with isFallbackUsed().
+	 * 
+	 * @param budget Limits of the generation
+	 * @throws MapGenerationException If the thread is interrupted, or a limit is
+	 *                                reached and the budget's policy is FAIL. The
+	 *                                interrupt status of the thread is kept
+	 */
+	public void generateMap(GenerationBudget budget) {
+		this.budget = budget;
+		this.deadline = System.nanoTime() + budget.getTimeoutNanos();
+
+		try {
+			generate(null);
+		} finally {
+			this.budget = null;
+		}
+	}
+
+	/**
+	 * Runs the phases of a generation, with or without a budget
+	 * 
+	 * @param filter Checks run after each phase, or null to run every phase
+	 * @return True if the map passed every check of the filter
+	 */
+	private boolean generate(MapFilter filter) {
+		beginGeneration();
+		fallbackUsed = false;
 
-		System.out.println("Generating empty cells");
 		// populates map with empty cells
+		long phaseStart = startPhase(GenerationPhase.EMPTY_CELLS);
 		createEmptyCells();
-		System.out.println("Finished generating empty cells");
+		finishPhase(GenerationPhase.EMPTY_CELLS, phaseStart);
+		if (isRejected(filter, GenerationPhase.EMPTY_CELLS)) {
+			return false;
+		}
 
-		System.out.println("Generating rooms");
 		// populates non-empty cells with rooms
+		phaseStart = startPhase(GenerationPhase.ROOMS);
 		createRooms();
-		System.out.println("Finished generating rooms");
+		finishPhase(GenerationPhase.ROOMS, phaseStart);
+		if (isRejected(filter, GenerationPhase.ROOMS)) {
+			return false;
+		}
 
-		Room room1, room2;
-		do {
-			room1 = rooms.get(rand.nextInt(rooms.size()));
-		 	room2 = rooms.get(rand.nextInt(rooms.size()));
-			
-		} while (room1 == room2 || room1.getArea() != 1 || room2.getArea() != 1 || findShortestDistance(room1, room2) != 5);
+		// picks the start and goal rooms
+		phaseStart = startPhase(GenerationPhase.ENDPOINTS);
+		long matchingPairs = chooseEndpoints();
+
+		if (startRoom != null) {
+			startRoom.setColor(Color.GREEN);
+			goalRoom.setColor(Color.GREEN);
+		}
+		if (listener != null) {
+			listener.endpointsChosen(this, startRoom, goalRoom, matchingPairs);
+		}
+		finishPhase(GenerationPhase.ENDPOINTS, phaseStart);
+		return !isRejected(filter, GenerationPhase.ENDPOINTS);
+	}
+
+	/**
+	 * Runs a filter's checks of a phase that just finished, telling the listener
+	 * if the map fails them
+	 * 
+	 * @return True if the map failed a check
+	 */
+	private boolean isRejected(MapFilter filter, GenerationPhase phase) {
+		if (filter == null || filter.accepts(phase, this)) {
+			return false;
+		}
+		if (listener != null) {
+			listener.mapRejected(this, phase);
+		}
+		return true;
+	}
+
+	/**
+	 * Tells the listener a phase is starting
+	 * 
+	 * @return The time the phase started in nanoseconds, or 0 without a listener
+	 */
+	private long startPhase(GenerationPhase phase) {
+		checkBudget(phase);
+		if (listener == null) {
+			return 0;
+		}
+		listener.phaseStarted(this, phase);
+		return System.nanoTime();
+	}
+
+	/**
+	 * Checks that the generation in progress was not interrupted and, if its
+	 * policy is FAIL, that it is not past its deadline. Does nothing for
+	 * generations without a budget.
+	 * 
+	 * @param phase Phase that is running
+	 * @throws MapGenerationException If the generation must stop
+	 */
+	private void checkBudget(GenerationPhase phase) {
+		if (budget == null) {
+			return;
+		}
+		if (Thread.currentThread().isInterrupted()) {
+			throw new MapGenerationException(MapGenerationException.Reason.INTERRUPTED, phase);
+		}
+		if (budget.getFallback() == GenerationBudget.Fallback.FAIL && System.nanoTime() - deadline > 0) {
+			throw new MapGenerationException(MapGenerationException.Reason.DEADLINE_EXCEEDED, phase);
+		}
+	}
+
+	/**
+	 * @param attempts    Attempts used so far by a retry loop
+	 * @param maxAttempts Attempts the loop may use
+	 * @return True if the loop should call budgetExhausted(), which it does every
+	 *         BUDGET_CHECK_INTERVAL attempts and once it runs out, so the clock is
+	 *         not read on every attempt
+	 */
+	private boolean shouldCheckBudget(int attempts, int maxAttempts) {
+		return budget != null && (attempts % BUDGET_CHECK_INTERVAL == 0 || attempts >= maxAttempts);
+	}
+
+	/**
+	 * Checks if a retry loop has run out of budget, either its own attempts or the
+	 * generation's time
+	 * 
+	 * @param phase       Phase that is running
+	 * @param attempts    Attempts used so far by the loop
+	 * @param maxAttempts Attempts the loop may use
+	 * @return True if the budget ran out and the loop should switch to its
+	 *         fallback
+	 * @throws MapGenerationException If the thread was interrupted, or the budget
+	 *                                ran out and its policy is FAIL
+	 */
+	private boolean budgetExhausted(GenerationPhase phase, int attempts, int maxAttempts) {
+		if (budget == null) {
+			return false;
+		}
+		checkBudget(phase);
+
+		MapGenerationException.Reason reason;
+		if (attempts >= maxAttempts) {
+			reason = MapGenerationException.Reason.ATTEMPTS_EXHAUSTED;
+		} else if (System.nanoTime() - deadline > 0) {
+			reason = MapGenerationException.Reason.DEADLINE_EXCEEDED;
+		} else {
+			return false;
+		}
+
+		if (budget.getFallback() == GenerationBudget.Fallback.FAIL) {
+			throw new MapGenerationException(reason, phase);
+		}
+
+		fallbackUsed = true;
+		if (listener != null) {
+			listener.fallbackUsed(this, phase, reason);
+		}
+		return true;
+	}
+
+	/**
+	 * Tells the listener a phase has finished and how long it took
+	 */
+	private void finishPhase(GenerationPhase phase, long phaseStart) {
+		if (listener != null) {
+			listener.phaseFinished(this, phase, System.nanoTime() - phaseStart);
+		}
+	}
+
+	/**
+	 * Resets the random stream to the map's seed and clears the rooms and endpoints
+	 * of the last generation, so a map rejected before ENDPOINTS does not keep the
+	 * endpoints of an earlier layout. The phases of generateMap() are package-private, so they can be
+	 * run and timed on their own after this.
+	 */
+	void beginGeneration() {
+		checkNotFrozen();
+		if (!fixedSeed) {
+			seed = rand.nextLong();
+		}
+		rand.setSeed(seed);
+
+		rooms.clear();
+		startRoom = null;
+		goalRoom = null;
+		roomGraph = null;
+		distanceIndex = null;
+		staleDistanceIndex = null;
+		portalGraph = null;
+		staleRoomGraph = null;
+		stalePortalGraph = null;
+		spatialIndex.clear();
+		Arrays.fill(mapRoomGrid, -1);
+	}
+
+	/**
+	 * Picks two 1x1 rooms exactly ENDPOINT_DISTANCE doorways apart as the start and
+	 * goal rooms, uniformly among all such pairs. Rather than drawing random pairs
+	 * until one matches, it counts the matching pairs with the distance index and
+	 * picks one directly, so it always terminates. If no pair matches, it uses the
+	 * pair closest to that distance instead, and if there are fewer than two 1x1
+	 * rooms it considers all rooms.
+	 * 
+	 * @return The number of pairs exactly ENDPOINT_DISTANCE apart the endpoints
+	 *         were picked from, or 0 if there were none
+	 */
+	long chooseEndpoints() {
+		startRoom = null;
+		goalRoom = null;
+		if (rooms.size() < 2) {
+			return 0;
+		}
+
+		// candidate rooms are the 1x1 rooms, or every room if there are too few
+		int[] candidates = new int[rooms.size()];
+		int candidateCount = 0;
+		for (Room room : rooms) {
+			if (room.getArea() == 1) {
+				candidates[candidateCount++] = room.getId();
+			}
+		}
+		candidates = candidateCount >= 2 ? Arrays.copyOf(candidates, candidateCount) : null;
+
+		// each query runs a search or reads a row for every candidate, so under a
+		// budget it is checked once per candidate
+		Runnable sourceCheck = budget == null ? null : () -> checkBudget(GenerationPhase.ENDPOINTS);
+
+		RoomDistanceIndex index = getDistanceIndex();
+		long pairCount = index.countPairsAtDistance(candidates, ENDPOINT_DISTANCE, sourceCheck);
+
+		long pair;
+		if (pairCount > 0) {
+			long n = pairCount <= Integer.MAX_VALUE ? rand.nextInt((int) pairCount)
+					: Math.floorMod(rand.nextLong(), pairCount);
+			pair = index.getPairAtDistance(candidates, ENDPOINT_DISTANCE, n, sourceCheck);
+		} else {
+			pair = index.getClosestPairToDistance(candidates, ENDPOINT_DISTANCE, sourceCheck);
+		}
+
+		if (pair < 0) {
+			return 0;
+		}
+
+		// pairs are found smallest ID first, so the order is randomized
+		Room room1 = rooms.get((int) (pair >>> 32));
+		Room room2 = rooms.get((int) pair);
+		boolean swap = rand.nextBoolean();
+		startRoom = swap ? room2 : room1;
+		goalRoom = swap ? room1 : room2;
+		return pairCount;
+	}
+
+	/**
+	 * Sets how empty cells are placed. RESTART, the default, places random empty
+	 * rectangles and starts over if the result is not connected, which can take
+	 * many attempts for a high percentEmpty. INCREMENTAL keeps the map connected
+	 * while placing and finishes in a single pass, but may place slightly fewer
+	 * empty cells than requested on very crowded maps.
+	 * 
+	 * @param emptyCellMode Strategy used to place empty cells
+	 */
+	public void setEmptyCellMode(EmptyCellMode emptyCellMode) {
+		checkNotFrozen();
+		this.emptyCellMode = emptyCellMode;
+	}
+
+	public EmptyCellMode getEmptyCellMode() {
+		return emptyCellMode;
+	}
+
+	/**
+	 * Sets the listener told about the progress of each generation, such as a
+	 * GenerationMetrics to record timings and counts or a ConsoleGenerationListener
+	 * to print progress. Without a listener, generation does no bookkeeping at all.
+	 * 
+	 * @param listener Listener of later generations, or null to remove it
+	 */
+	public void setGenerationListener(GenerationListener listener) {
+		checkNotFrozen();
+		this.listener = listener;
+	}
+
+	public GenerationListener getGenerationListener() {
+		return listener;
+	}
+
+	/**
+	 * @return True if the last generation ran out of its budget and finished with
+	 *         a best-effort fallback, such as placing fewer empty cells than
+	 *         requested
+	 */
+	public boolean isFallbackUsed() {
+		return fallbackUsed;
+	}
+
+	/**
+	 * Makes the map read-only, so it can be shared between threads without
+	 * locking. Builds the room graph and distance index up front, so no later
+	 * query initializes them, after which generating the map again or changing
+	 * its settings throws IllegalStateException. Its rooms are frozen too, so
+	 * setting their colors or adding doorways throws as well, and their doorway
+	 * lists are read-only. The Points returned for positions and entrances are
+	 * still the rooms' own and must not be changed. A map cannot be unfrozen.
+	 */
+	public void freeze() {
+		if (!frozen) {
+			getDistanceIndex();
+			getPortalGraph();
+			for (Room room : rooms) {
+				room.freeze();
+			}
+			frozen = true;
+		}
+	}
+
+	/**
+	 * @return True if the map has been frozen and is read-only
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new IllegalStateException("Map is frozen");
+		}
+	}
+
+	/**
+	 * Sets the relative likelihood of each room size. By default all sizes up to
+	 * the max room width and height are equally likely.
+	 * 
+	 * @param roomSizes Room size distribution, which must cover exactly the max
+	 *                  room width and height of this map, each limited to the
+	 *                  size of the map
+	 */
+	public void setRoomSizeDistribution(RoomSizeDistribution roomSizes) {
+		checkNotFrozen();
+		int width = Math.min(maxRoomWidth, mapWidth), height = Math.min(maxRoomHeight, mapHeight);
+		if (roomSizes.getMaxWidth() != width || roomSizes.getMaxHeight() != height) {
+			throw new IllegalArgumentException("Room size distribution must be " + width + "x" + height + ", was "
+					+ roomSizes.getMaxWidth() + "x" + roomSizes.getMaxHeight());
+		}
+		this.roomSizes = roomSizes;
+	}
+
+	public RoomSizeDistribution getRoomSizeDistribution() {
+		return roomSizes;
+	}
+
+	/**
+	 * Gets an immutable, compact graph of the rooms and doorways of the generated
+	 * map, where each room is identified by its ID. The graph is built once per
+	 * generation or series of edits and shared by later calls.
+	 * 
+	 * @return The room graph of the current layout
+	 */
+	public RoomGraph getRoomGraph() {
+		if (roomGraph == null) {
+			if (staleRoomGraph == null) {
+				roomGraph = RoomGraph.build(rooms, mapWidth);
+			} else {
+				roomGraph = RoomGraph.update(staleRoomGraph, rooms, mapWidth, editedRooms);
+				staleRoomGraph = null;
+			}
+			staleGraphsUsed();
+		}
+		return roomGraph;
+	}
+
+	/**
+	 * Gets the index used to answer distance queries between rooms of the generated
+	 * map. Distance rows are computed on demand and cached, with at most
+	 * getDistanceIndexRows() rows kept in memory.
+	 * 
+	 * @return The distance index of the current layout
+	 */
+	public RoomDistanceIndex getDistanceIndex() {
+		if (distanceIndex == null) {
+			if (staleDistanceIndex == null) {
+				distanceIndex = new RoomDistanceIndex(getRoomGraph(), distanceIndexRows);
+			} else {
+				distanceIndex = new RoomDistanceIndex(getRoomGraph(), distanceIndexRows, staleDistanceIndex);
+				staleDistanceIndex = null;
+			}
+		}
+		return distanceIndex;
+	}
+
+	/**
+	 * Sets how many single source distance rows the distance index keeps in memory,
+	 * RoomDistanceIndex.DEFAULT_CACHED_ROWS by default. A row holds one int per
+	 * room, so the index takes at most maxCachedRows * 4 * rooms bytes. Pass
+	 * Integer.MAX_VALUE to keep every row once computed, which makes
+	 * RoomDistanceIndex.precompute() compute all pairs. Rows already computed are
+	 * kept, up to the new limit. Must be set before the map is frozen.
+	 * 
+	 * @param maxCachedRows Max number of distance rows kept in memory
+	 */
+	public void setDistanceIndexRows(int maxCachedRows) {
+		checkNotFrozen();
+		if (maxCachedRows < 1) {
+			throw new IllegalArgumentException("At least one distance row must be cached");
+		}
+
+		this.distanceIndexRows = maxCachedRows;
+		if (distanceIndex != null && distanceIndex.getMaxCachedRows() != maxCachedRows) {
+			distanceIndex = new RoomDistanceIndex(getRoomGraph(), maxCachedRows, distanceIndex);
+		}
+	}
+
+	public int getDistanceIndexRows() {
+		return distanceIndexRows;
+	}
+
+	/**
+	 * Gets the spatial index of the rooms of the generated map, which finds the
+	 * rooms at a cell, in a rectangle or within a radius without scanning every
+	 * room. The index is kept up to date during generation.
+	 * 
+	 * @return The spatial index of the current layout
+	 */
+	public RoomSpatialIndex getSpatialIndex() {
+		return spatialIndex;
+	}
+
+	/**
+	 * Gets the portals of the map's doorways shared by every RoomPathfinder of the
+	 * map. Built once per generation.
+	 * 
+	 * @return The portal graph of the current layout
+	 */
+	PortalGraph getPortalGraph() {
+		if (portalGraph == null) {
+			if (stalePortalGraph == null) {
+				portalGraph = PortalGraph.build(getRoomGraph(), rooms, mapWidth);
+			} else {
+				portalGraph = PortalGraph.update(stalePortalGraph, getRoomGraph(), rooms, mapWidth, editedRooms);
+				stalePortalGraph = null;
+			}
+			staleGraphsUsed();
+		}
+		return portalGraph;
+	}
+
+	/**
+	 * Forgets the edited rooms once neither graph is left to be updated from them
+	 */
+	private void staleGraphsUsed() {
+		if (staleRoomGraph == null && stalePortalGraph == null) {
+			Arrays.fill(editedRooms, false);
+		}
+	}
+
+	/**
+	 * @return The start room picked by the last generation, or null if the map has
+	 *         fewer than two connected rooms
+	 */
+	public Room getStartRoom() {
+		return startRoom;
+	}
+
+	/**
+	 * @return The goal room picked by the last generation, or null if the map has
+	 *         fewer than two connected rooms
+	 */
+	public Room getGoalRoom() {
+		return goalRoom;
+	}
+
+	/**
+	 * @return A read-only view of the rooms of the generated map, where each room's
+	 *         index is its ID
+	 */
+	public List<Room> getRooms() {
+		return Collections.unmodifiableList(rooms);
+	}
+
+	public int getMapWidth() {
+		return mapWidth;
+	}
+
+	public int getMapHeight() {
+		return mapHeight;
+	}
+
+	/**
+	 * @return The internal array of cell values, stored row by row. Must not be
+	 *         modified
+	 */
+	byte[] getCells() {
+		return mapGrid;
+	}
+
+	/**
+	 * Replaces the layout of the map with one that was generated earlier, such as
+	 * one read back from a file, instead of generating it again
+	 * 
+	 * @param cells       Value of each cell, stored row by row
+	 * @param savedRooms  Rooms of the layout, where each room's ID is its index in
+	 *                    the list, with their doorways already connected
+	 * @param startRoomId ID of the start room, or -1 if there is none
+	 * @param goalRoomId  ID of the goal room, or -1 if there is none
+	 */
+	void restore(byte[] cells, List<Room> savedRooms, int startRoomId, int goalRoomId) {
+		checkNotFrozen();
+		System.arraycopy(cells, 0, mapGrid, 0, mapGrid.length);
+
+		rooms.clear();
+		rooms.addAll(savedRooms);
+		roomGraph = null;
+		distanceIndex = null;
+		staleDistanceIndex = null;
+		portalGraph = null;
+		staleRoomGraph = null;
+		stalePortalGraph = null;
+
+		Arrays.fill(mapRoomGrid, -1);
+		spatialIndex.clear();
+		for (Room room : rooms) {
+			spatialIndex.add(room);
+			Point topLeft = room.getTopLeftPos();
+			Point botRight = room.getBotRightPos();
+			for (int y = topLeft.y; y <= botRight.y; y++) {
+				int row = y * mapWidth;
+				Arrays.fill(mapRoomGrid, row + topLeft.x, row + botRight.x + 1, room.getId());
+			}
+		}
+
+		// rebuilds the occupancy bitmask from the cell values
+		Arrays.fill(occupied, 0);
+		for (int y = 0; y < mapHeight; y++) {
+			int row = y * mapWidth, wordRow = y * occupiedStride;
+			for (int x = 0; x < mapWidth; x++) {
+				byte val = mapGrid[row + x];
+				if (val == EMPTY || val == ROOM) {
+					occupied[wordRow + (x >>> 6)] |= 1L << x;
+				}
+			}
+		}
+
+		startRoom = startRoomId < 0 ? null : rooms.get(startRoomId);
+		goalRoom = goalRoomId < 0 ? null : rooms.get(goalRoomId);
+	}
 
-		System.out.println("Room 1 area:" + room1.getArea() + ", Room 2 area:" + room2.getArea());
-		room1.setColor(Color.GREEN);
-		room2.setColor(Color.GREEN);
+	/**
+	 * @return The parameters this map was created with
+	 */
+	public MapParameters getParameters() {
+		return new MapParameters(mapWidth, mapHeight, percentEmpty, maxEmptyWidth, maxEmptyHeight, maxRoomWidth,
+				maxRoomHeight);
+	}
+
+	/**
+	 * @return The seed used by the last call to generateMap(), or the fixed seed
+	 *         the map was created with
+	 */
+	public long getSeed() {
+		return seed;
 	}
 
 	/**
 	 * Populates non-empty cells with rooms of varying sizes
 	 */
-	private void createRooms() {
+	void createRooms() {
 
 		// randomly chooses dimensions for the first placed room, looping until the
 		// dimensions are valid and can be placed
 		Point seedRoomTopLeft = new Point(), seedRoomBotRight = new Point();
-		do {
+		int attempts = 0;
+		int maxAttempts = budget == null ? Integer.MAX_VALUE : budget.getMaxSeedRoomAttempts();
+		while (true) {
+			// under a budget, falls back to a 1x1 room on the first free cell
+			if (shouldCheckBudget(attempts, maxAttempts)
+					&& budgetExhausted(GenerationPhase.ROOMS, attempts, maxAttempts)) {
+				if (!findFreeCell(seedRoomTopLeft)) {
+					return;
+				}
+				seedRoomBotRight.setLocation(seedRoomTopLeft);
+				break;
+			}
+			attempts++;
+
+			int size = roomSizes.sample(rand);
 			seedRoomTopLeft.x = rand.nextInt(mapWidth);
 			seedRoomTopLeft.y = rand.nextInt(mapHeight);
-			seedRoomBotRight.x = seedRoomTopLeft.x + rand.nextInt(maxRoomWidth);
-			seedRoomBotRight.y = seedRoomTopLeft.y + rand.nextInt(maxRoomHeight);
+			seedRoomBotRight.x = seedRoomTopLeft.x + roomSizes.width(size) - 1;
+			seedRoomBotRight.y = seedRoomTopLeft.y + roomSizes.height(size) - 1;
 
-		} while (!canPlaceRoom(seedRoomTopLeft, seedRoomBotRight));
+			if (canPlaceRoom(seedRoomTopLeft, seedRoomBotRight)) {
+				break;
+			}
+			if (listener != null) {
+				listener.seedRoomRejected(this);
+			}
+		}
 
 		// places 'seed' room (colored blue)
 		Room seedRoom = placeRoom(seedRoomTopLeft, seedRoomBotRight, Color.BLUE);
-		rooms.add(seedRoom);
+		if (listener != null) {
+			listener.roomCreated(this, seedRoom, 0);
+		}
 
-		// recursively generates the rest of rooms
+		// generates the rest of rooms out from the seed room
+		adjacentCellCount = 0;
 		placeRoomsAround(seedRoom);
 
 		// iterates through rooms and randomly adds doorways to make dungeon less linear
@@ -154,35 +886,35 @@ public class GeneratedMap {
 			if (rand.nextFloat() < 0.3f) { 
 				Point roomTopLeft = room.getTopLeftPos();
 				Point roomBotRight = room.getBotRightPos();
-				Iterator<Point> points = getAdjacentCells(roomTopLeft, roomBotRight).iterator();
-				boolean exitLoop = false;
+				int start = pushAdjacentCells(roomTopLeft, roomBotRight);
 			
 				// iterates through adjacent rooms that room is not connected
-				while (points.hasNext() && !exitLoop) {
-					Point point = points.next();
+				for (int i = start; i < adjacentCellCount; i++) {
+					int x = adjacentCells[i] % mapWidth, y = adjacentCells[i] / mapWidth;
 					
-					Room otherRoom = mapRoomGrid[point.y][point.x];
+					Room otherRoom = getRoomAt(x, y);
 
 					if (otherRoom != null && !room.isConnectedToRoom(otherRoom)) {
-						if (point.x < roomTopLeft.x) { // left
-							otherRoom.addConnectedRoom(room, point, Direction.RIGHT);
-							room.addConnectedRoom(otherRoom, new Point(point.x + 1, point.y), Direction.LEFT);
+						if (x < roomTopLeft.x) { // left
+							otherRoom.addConnectedRoom(room, new Point(x, y), Direction.RIGHT);
+							room.addConnectedRoom(otherRoom, new Point(x + 1, y), Direction.LEFT);
 
-						} else if (point.x > roomBotRight.x) { // right
-							otherRoom.addConnectedRoom(room, point, Direction.LEFT);
-							room.addConnectedRoom(otherRoom, new Point(point.x - 1, point.y), Direction.RIGHT);
+						} else if (x > roomBotRight.x) { // right
+							otherRoom.addConnectedRoom(room, new Point(x, y), Direction.LEFT);
+							room.addConnectedRoom(otherRoom, new Point(x - 1, y), Direction.RIGHT);
 
-						} else if (point.y < roomTopLeft.y) { // above
-							otherRoom.addConnectedRoom(room, point, Direction.DOWN);
-							room.addConnectedRoom(otherRoom, new Point(point.x, point.y + 1), Direction.UP);
+						} else if (y < roomTopLeft.y) { // above
+							otherRoom.addConnectedRoom(room, new Point(x, y), Direction.DOWN);
+							room.addConnectedRoom(otherRoom, new Point(x, y + 1), Direction.UP);
 
 						} else { // below
-							otherRoom.addConnectedRoom(room, point, Direction.UP);
-							room.addConnectedRoom(otherRoom, new Point(point.x, point.y - 1), Direction.DOWN);
+							otherRoom.addConnectedRoom(room, new Point(x, y), Direction.UP);
+							room.addConnectedRoom(otherRoom, new Point(x, y - 1), Direction.DOWN);
 						}
-						exitLoop = true;
+						break;
 					}
 				}
+				adjacentCellCount = start;
 				
 			}
 		}
@@ -190,237 +922,798 @@ public class GeneratedMap {
 	}
 
 	/**
-	 * This is a recursive method that populates the map with random rooms. It does this by
-	 * checking for non-occupied cells around the dimensions of the room, and randomly choosing
-	 * dimensions on the rooms created, and then calling itself on those said rooms.
+	 * Finds the first cell, in row order, that is neither empty nor part of a room
 	 * 
-	 * @param room Room that other rooms should be placed around
+	 * @param cell Set to the position of the free cell
+	 * @return True if a free cell was found, false if the map has none
 	 */
-	private void placeRoomsAround(Room room) {
-		Point topLeft = room.getTopLeftPos();
-		Point botRight = room.getBotRightPos();
+	private boolean findFreeCell(Point cell) {
+		for (int i = 0; i < mapGrid.length; i++) {
+			if (mapGrid[i] == UNPROCESSED || mapGrid[i] == PROCESSED) {
+				cell.setLocation(i % mapWidth, i / mapWidth);
+				return true;
+			}
+		}
+		return false;
+	}
 
-		for (Point adjPoint: getAdjacentCells(room.getTopLeftPos(), room.getBotRightPos())) {
+	/**
+	 * This method populates the map with random rooms. It does this by checking for
+	 * non-occupied cells around the dimensions of the room, and randomly choosing
+	 * dimensions on the rooms created, and then growing those said rooms before
+	 * going on with the next cell. Rooms being grown are kept on the growingRooms
+	 * stack rather than the call stack, as a large map can chain thousands of rooms
+	 * that each grow from the last.
+	 * 
+	 * @param seedRoom Room that other rooms should be placed around
+	 */
+	private void placeRoomsAround(Room seedRoom) {
+		int top = pushGrowingRoom(seedRoom, -1);
+
+		while (top >= 0) {
+			// pops a room once every cell around it has been tried, along with its cells
+			if (growingNext[top] == growingEnds[top]) {
+				adjacentCellCount = growingStarts[top];
+				growingRooms[top--] = null;
+				continue;
+			}
 
-			if (adjPoint.x < topLeft.x) { // handles generating rooms to the left
-				if (mapGrid[adjPoint.y][topLeft.x - 1].equals(Cell.PROCESSED)) {
+			Room room = growingRooms[top];
+			int depth = top;
+			Point topLeft = room.getTopLeftPos();
+			Point botRight = room.getBotRightPos();
+
+			int i = growingNext[top]++;
+			int adjX = adjacentCells[i] % mapWidth, adjY = adjacentCells[i] / mapWidth;
+
+			if (adjX < topLeft.x) { // handles generating rooms to the left
+				if (mapGrid[adjY * mapWidth + topLeft.x - 1] == PROCESSED) {
 					
 					Point newTopLeft = new Point(), newBotRight = new Point();
 					// if cell is processed -- meaning it's not empty or part of a room,
-					// create random dimensions for a room until one fits
-					do {
-						
-						int newRoomWidth = rand.nextInt(maxRoomWidth) + 1;
-						
-						int newRoomHeight = rand.nextInt(maxRoomHeight) + 1;
-						// horizontal offset that the top left corner of the new room should have
-						// compared to the "entrance" cell from the current room
-						int verticalOffset = rand.nextInt(newRoomHeight);
+					// pick random dimensions among the rooms that fit next to it
+					chooseRoomAround(adjX, adjY, Direction.LEFT, newTopLeft, newBotRight);
+
+					Room newRoom = placeRoom(newTopLeft, newBotRight, Color.RED);
+					if (listener != null) {
+						listener.roomCreated(this, newRoom, depth + 1);
+					}
+
+					// adds connections so that the rooms can be traversed
+					newRoom.addConnectedRoom(room, new Point(adjX, adjY), Direction.RIGHT);
+					room.addConnectedRoom(newRoom, new Point(adjX + 1, adjY), Direction.LEFT);
 
-						newTopLeft.x = topLeft.x - newRoomWidth;
-						newTopLeft.y = adjPoint.y - verticalOffset;
+					// places rooms around the new room before the next cell of this one
+					top = pushGrowingRoom(newRoom, top);
 
-						newBotRight.x = topLeft.x - 1;
-						newBotRight.y = newTopLeft.y + newRoomHeight - 1;
+				} else if (listener != null) {
+					listener.adjacentCellRejected(this, Direction.LEFT);
+				}
 
-					} while (!canPlaceRoom(newTopLeft, newBotRight));
+			} else if (adjX > botRight.x) { // handles generating rooms to the right
+				if (mapGrid[adjY * mapWidth + botRight.x + 1] == PROCESSED) {
+					
+					Point newTopLeft = new Point(), newBotRight = new Point();
+					// if cell is processed -- meaning it's not empty or part of a room,
+					// pick random dimensions among the rooms that fit next to it
+					chooseRoomAround(adjX, adjY, Direction.RIGHT, newTopLeft, newBotRight);
 
 					Room newRoom = placeRoom(newTopLeft, newBotRight, Color.RED);
+					if (listener != null) {
+						listener.roomCreated(this, newRoom, depth + 1);
+					}
 
 					// adds connections so that the rooms can be traversed
-					newRoom.addConnectedRoom(room, new Point(adjPoint.x, adjPoint.y), Direction.RIGHT);
-					room.addConnectedRoom(newRoom, new Point(adjPoint.x + 1, adjPoint.y), Direction.LEFT);
+					newRoom.addConnectedRoom(room, new Point(adjX, adjY), Direction.LEFT);
+					room.addConnectedRoom(newRoom, new Point(adjX - 1, adjY), Direction.RIGHT);
 
-					rooms.add(newRoom);
+					// places rooms around the new room before the next cell of this one
+					top = pushGrowingRoom(newRoom, top);
 
-					// recursively places rooms around the new room
-					placeRoomsAround(newRoom);
+				} else if (listener != null) {
+					listener.adjacentCellRejected(this, Direction.RIGHT);
 				}
 
-			} else if (adjPoint.x > botRight.x) { // handles generating rooms to the right
-				if (mapGrid[adjPoint.y][botRight.x + 1].equals(Cell.PROCESSED)) {
+			} else if (adjY < topLeft.y) { // handles generating rooms above
+				if (mapGrid[(topLeft.y - 1) * mapWidth + adjX] == PROCESSED) {
 					
 					Point newTopLeft = new Point(), newBotRight = new Point();
 					// if cell is processed -- meaning it's not empty or part of a room,
-					// create random dimensions for a room until one fits
-					do {
-						
-						int newRoomWidth = rand.nextInt(maxRoomWidth) + 1;
-						int newRoomHeight = rand.nextInt(maxRoomHeight) + 1;
+					// pick random dimensions among the rooms that fit next to it
+					chooseRoomAround(adjX, adjY, Direction.UP, newTopLeft, newBotRight);
 
-						// horizontal offset that the top left corner of the new room should have
-						// compared to the "entrance" cell from the current room
-						int verticalOffset = rand.nextInt(newRoomHeight);
+					Room newRoom = placeRoom(newTopLeft, newBotRight, Color.RED);
+					if (listener != null) {
+						listener.roomCreated(this, newRoom, depth + 1);
+					}
 
-						newTopLeft.x = botRight.x + 1;
-						newTopLeft.y = adjPoint.y - verticalOffset;
+					// adds connections so that the rooms can be traversed
+					newRoom.addConnectedRoom(room, new Point(adjX, adjY), Direction.DOWN);
+					room.addConnectedRoom(newRoom, new Point(adjX, adjY + 1), Direction.UP);
 
-						newBotRight.x = botRight.x + newRoomWidth;
-						newBotRight.y = newTopLeft.y + newRoomHeight - 1;
+					// places rooms around the new room before the next cell of this one
+					top = pushGrowingRoom(newRoom, top);
 
-					} while (!canPlaceRoom(newTopLeft, newBotRight));
+				} else if (listener != null) {
+					listener.adjacentCellRejected(this, Direction.UP);
+				}
+			} else { // handles generting rooms below
+				if (mapGrid[(botRight.y + 1) * mapWidth + adjX] == PROCESSED) {
+					
+					Point newTopLeft = new Point(), newBotRight = new Point();
+					// if cell is processed -- meaning it's not empty or part of a room,
+					// pick random dimensions among the rooms that fit next to it
+					chooseRoomAround(adjX, adjY, Direction.DOWN, newTopLeft, newBotRight);
 
 					Room newRoom = placeRoom(newTopLeft, newBotRight, Color.RED);
+					if (listener != null) {
+						listener.roomCreated(this, newRoom, depth + 1);
+					}
 
 					// adds connections so that the rooms can be traversed
-					newRoom.addConnectedRoom(room, new Point(adjPoint.x, adjPoint.y), Direction.LEFT);
-					room.addConnectedRoom(newRoom, new Point(adjPoint.x - 1, adjPoint.y), Direction.RIGHT);
+					newRoom.addConnectedRoom(room, new Point(adjX, adjY), Direction.UP);
+					room.addConnectedRoom(newRoom, new Point(adjX, adjY - 1), Direction.DOWN);
 
-					rooms.add(newRoom);
+					// places rooms around the new room before the next cell of this one
+					top = pushGrowingRoom(newRoom, top);
 
-					// recursively places rooms around the new room
-					placeRoomsAround(newRoom);
+				} else if (listener != null) {
+					listener.adjacentCellRejected(this, Direction.DOWN);
 				}
+			}
+		}
+	}
 
-			} else if (adjPoint.y < topLeft.y) { // handles generating rooms above
-				if (mapGrid[topLeft.y - 1][adjPoint.x].equals(Cell.PROCESSED)) {
-					
-					Point newTopLeft = new Point(), newBotRight = new Point();
-					// if cell is processed -- meaning it's not empty or part of a room,
-					// create random dimensions for a room until one fits
-					do {
-						
-						int newRoomWidth = rand.nextInt(maxRoomWidth) + 1;
-						// horizontal offset that the top left corner of the new room should have
-						// compared to the "entrance" cell from the current room
-						int horizontalOffset = rand.nextInt(newRoomWidth);
-						
-						int newRoomHeight = rand.nextInt(maxRoomHeight) + 1;
+	/**
+	 * Pushes a room onto the stack of rooms being grown, along with the cells
+	 * around it, which stay below those of the rooms placed around it
+	 * 
+	 * @param room Room that other rooms should be placed around
+	 * @param top  Index of the current top of the stack, or -1 if it is empty
+	 * @return The index of the room, which is the new top of the stack
+	 */
+	private int pushGrowingRoom(Room room, int top) {
+		top++;
+		if (top == growingRooms.length) {
+			int length = growingRooms.length * 2;
+			growingRooms = Arrays.copyOf(growingRooms, length);
+			growingStarts = Arrays.copyOf(growingStarts, length);
+			growingNext = Arrays.copyOf(growingNext, length);
+			growingEnds = Arrays.copyOf(growingEnds, length);
+		}
 
-						newTopLeft.x = adjPoint.x - horizontalOffset;
-						newTopLeft.y = topLeft.y - newRoomHeight;
+		growingRooms[top] = room;
+		growingStarts[top] = growingNext[top] = pushAdjacentCells(room.getTopLeftPos(), room.getBotRightPos());
+		growingEnds[top] = adjacentCellCount;
+		return top;
+	}
 
-						newBotRight.x = newTopLeft.x + newRoomWidth - 1;
-						newBotRight.y = topLeft.y - 1;
+	/**
+	 * Picks random dimensions for a new room that contains an entrance cell and
+	 * grows away from the room next to it. Rather than drawing sizes until one fits,
+	 * it first measures how far the free cells extend from the entrance, then
+	 * samples directly among the rectangles that fit, so it never has to retry. A
+	 * rectangle of width w and height h is chosen with a probability proportional
+	 * to its weight in roomSizes, split evenly among the h (or w) offsets it can
+	 * have relative to the entrance, which matches drawing a size and offset and
+	 * rejecting it until it fits.
+	 * 
+	 * @param entranceX   The x position of the processed cell next to the current
+	 *                    room that the new room must contain
+	 * @param entranceY   The y position of that cell
+	 * @param side        Side of the current room the new room is placed on
+	 * @param newTopLeft  Set to the top left corner of the new room
+	 * @param newBotRight Set to the bottom right corner of the new room
+	 */
+	private void chooseRoomAround(int entranceX, int entranceY, Direction side, Point newTopLeft,
+			Point newBotRight) {
+		boolean horizontal = side == Direction.LEFT || side == Direction.RIGHT;
+
+		// the depth axis points away from the current room and the span axis runs
+		// along its side
+		int maxDepth = horizontal ? roomSizes.getMaxWidth() : roomSizes.getMaxHeight();
+		int maxSpan = horizontal ? roomSizes.getMaxHeight() : roomSizes.getMaxWidth();
+
+		// number of free cells in a line going away from the current room, for each
+		// span offset in [-(maxSpan - 1), maxSpan - 1] from the entrance
+		int center = maxSpan - 1;
+		if (freeDepths.length < 2 * maxSpan - 1) {
+			freeDepths = new int[2 * maxSpan - 1];
+		}
+		for (int offset = -center; offset <= center; offset++) {
+			freeDepths[center + offset] = freeDepth(entranceX, entranceY, side, offset, maxDepth);
+		}
 
-					} while (!canPlaceRoom(newTopLeft, newBotRight));
+		// how far the span can extend on either side before hitting a blocked line
+		int maxBefore = 0, maxAfter = 0;
+		while (maxBefore < center && freeDepths[center - maxBefore - 1] > 0) {
+			maxBefore++;
+		}
+		while (maxAfter < center && freeDepths[center + maxAfter + 1] > 0) {
+			maxAfter++;
+		}
 
-					Room newRoom = placeRoom(newTopLeft, newBotRight, Color.RED);
+		// first pass sums the weights of all rectangles that fit, the second picks
+		// one. Falls back to a single cell if no sizes that fit have any weight
+		chosenBefore = 0;
+		chosenAfter = 0;
+		chosenDepth = 1;
+		double totalWeight = sumRoomWeights(horizontal, center, maxBefore, maxAfter, maxSpan, maxDepth, -1);
+		if (totalWeight > 0) {
+			sumRoomWeights(horizontal, center, maxBefore, maxAfter, maxSpan, maxDepth,
+					rand.nextDouble() * totalWeight);
+		}
+		int before = chosenBefore, after = chosenAfter, depth = chosenDepth;
+
+		int depthStep = side == Direction.LEFT || side == Direction.UP ? -1 : 1;
+		int farX = horizontal ? entranceX + depthStep * (depth - 1) : entranceX + after;
+		int farY = horizontal ? entranceY + after : entranceY + depthStep * (depth - 1);
+		int nearX = horizontal ? entranceX : entranceX - before;
+		int nearY = horizontal ? entranceY - before : entranceY;
+
+		newTopLeft.x = Math.min(nearX, farX);
+		newTopLeft.y = Math.min(nearY, farY);
+		newBotRight.x = Math.max(nearX, farX);
+		newBotRight.y = Math.max(nearY, farY);
+	}
 
-					// adds connections so that the rooms can be traversed
-					newRoom.addConnectedRoom(room, new Point(adjPoint.x,  adjPoint.y + 1), Direction.DOWN);
-					room.addConnectedRoom(newRoom, new Point(adjPoint.x,  adjPoint.y), Direction.UP);
+	/**
+	 * Helper to chooseRoomAround(), walking every rectangle that fits and summing
+	 * their weights. If target is not negative, stops at the first rectangle at
+	 * which the running sum passes target and stores it in chosenBefore,
+	 * chosenAfter and chosenDepth.
+	 * 
+	 * @return The sum of the weights walked
+	 */
+	private double sumRoomWeights(boolean horizontal, int center, int maxBefore, int maxAfter, int maxSpan,
+			int maxDepth, double target) {
+		double sum = 0;
+		int minBefore = Integer.MAX_VALUE;
+
+		for (int before = 0; before <= maxBefore; before++) {
+			minBefore = Math.min(minBefore, freeDepths[center - before]);
+			int minDepth = minBefore;
+
+			for (int after = 0; after <= maxAfter && before + after < maxSpan; after++) {
+				if (after > 0) {
+					minDepth = Math.min(minDepth, freeDepths[center + after]);
+				}
+				int span = before + after + 1;
 
-					rooms.add(newRoom);
+				for (int depth = 1; depth <= Math.min(minDepth, maxDepth); depth++) {
+					double weight = horizontal ? roomSizes.weight(depth, span) : roomSizes.weight(span, depth);
+					if (weight <= 0) {
+						continue;
+					}
 
-					// recursively places rooms around the new room
-					placeRoomsAround(newRoom);
+					sum += weight / span;
+					if (target >= 0) {
+						// keeps the last rectangle in case rounding leaves target past the sum
+						chosenBefore = before;
+						chosenAfter = after;
+						chosenDepth = depth;
+						if (sum > target) {
+							return sum;
+						}
+					}
 				}
-			} else { // handles generting rooms below
-				if (mapGrid[botRight.y + 1][adjPoint.x].equals(Cell.PROCESSED)) {
-					
-					Point newTopLeft = new Point(), newBotRight = new Point();
-					// if cell is processed -- meaning it's not empty or part of a room,
-					// create random dimensions for a room until one fits
-					do {
-						
-						int newRoomWidth = rand.nextInt(maxRoomWidth) + 1;
-						// horizontal offset that the top left corner of the new room should have
-						// compared to the "entrance" cell from the current room
-						int horizontalOffset = rand.nextInt(newRoomWidth);
-						
-						int newRoomHeight = rand.nextInt(maxRoomHeight) + 1;
+			}
+		}
 
-						newTopLeft.x = adjPoint.x - horizontalOffset;
-						newTopLeft.y = botRight.y + 1;
+		return sum;
+	}
 
-						newBotRight.x = newTopLeft.x + newRoomWidth - 1;
-						newBotRight.y = botRight.y + newRoomHeight;
+	/**
+	 * Helper to chooseRoomAround(), counting the free cells in a line going away
+	 * from the current room
+	 * 
+	 * @param entranceX The x position of the entrance cell the line is measured from
+	 * @param entranceY The y position of the entrance cell
+	 * @param side     Side of the current room the line goes away from
+	 * @param offset   Offset of the line from the entrance, along the side
+	 * @param maxDepth Max number of cells to count
+	 * @return The number of consecutive unoccupied, in bounds cells in the line
+	 */
+	private int freeDepth(int entranceX, int entranceY, Direction side, int offset, int maxDepth) {
+		int dx = side == Direction.LEFT ? -1 : side == Direction.RIGHT ? 1 : 0;
+		int dy = side == Direction.UP ? -1 : side == Direction.DOWN ? 1 : 0;
+		int x = entranceX + (dx == 0 ? offset : 0);
+		int y = entranceY + (dy == 0 ? offset : 0);
+
+		int depth = 0;
+		while (depth < maxDepth && x >= 0 && x < mapWidth && y >= 0 && y < mapHeight) {
+			byte val = mapGrid[y * mapWidth + x];
+			if (val != UNPROCESSED && val != PROCESSED) {
+				break;
+			}
+			depth++;
+			x += dx;
+			y += dy;
+		}
 
-					} while (!canPlaceRoom(newTopLeft, newBotRight));
+		return depth;
+	}
 
-					Room newRoom = placeRoom(newTopLeft, newBotRight, Color.RED);
+	/**
+	 * Pushes the adjacent cells around a room onto adjacentCells in a random order.
+	 * The cells are listed and shuffled exactly like an ArrayList passed to
+	 * Collections.shuffle() with rand, drawing the same numbers, so the layouts
+	 * generated for a seed do not depend on how the cells are stored.
+	 * @param topLeft Top left position of room
+	 * @param botRight Bot right position of room
+	 * @return Index of the first cell pushed. The cells run up to adjacentCellCount
+	 */
+	private int pushAdjacentCells(Point topLeft, Point botRight) {
+		int start = adjacentCellCount;
+		int needed = start + 2 * (botRight.x - topLeft.x + 1) + 2 * (botRight.y - topLeft.y + 1);
+		if (needed > adjacentCells.length) {
+			adjacentCells = Arrays.copyOf(adjacentCells, Math.max(needed, adjacentCells.length * 2));
+		}
 
-					// adds connections so that the rooms can be traversed
-					newRoom.addConnectedRoom(room, new Point(adjPoint.x,  adjPoint.y - 1), Direction.UP);
-					room.addConnectedRoom(newRoom, new Point(adjPoint.x,  adjPoint.y), Direction.DOWN);
+		int count = start;
+		if (topLeft.y > 0) {
+			for (int x = topLeft.x; x <= botRight.x; x++) {
+				adjacentCells[count++] = (topLeft.y - 1) * mapWidth + x;
+			}
+		}
+
+		if (botRight.y < mapHeight - 1) {
+			for (int x = topLeft.x; x <= botRight.x; x++) {
+				adjacentCells[count++] = (botRight.y + 1) * mapWidth + x;
+			}
+		}
+
+		if (topLeft.x > 0) {
+			for (int y = topLeft.y; y <= botRight.y; y++) {
+				adjacentCells[count++] = y * mapWidth + topLeft.x - 1;
+			}
+		}
+
+		if (botRight.x < mapWidth - 1) {
+			for (int y = topLeft.y; y <= botRight.y; y++) {
+				adjacentCells[count++] = y * mapWidth + botRight.x + 1;
+			}
+		}
+
+		// Fisher-Yates shuffle in the same order as Collections.shuffle()
+		for (int i = count - start; i > 1; i--) {
+			int j = start + rand.nextInt(i);
+			int cell = adjacentCells[start + i - 1];
+			adjacentCells[start + i - 1] = adjacentCells[j];
+			adjacentCells[j] = cell;
+		}
+
+		adjacentCellCount = count;
+		return start;
+	}
+
+	/**
+	 * Places a room at the given position, creating a new Room object with the
+	 * next free ID and updating the cells in mapGrid and mapRoomGrid
+	 * 
+	 * @param topLeft  Top left corner of the rectangle to be placed
+	 * @param botRight Bottom right corner of the rectangle to be placed
+	 * @param color Color of room
+	 * @return A new room that was placed at the given position
+	 */
+	private Room placeRoom(Point topLeft, Point botRight, Color color) {
+		Room room = new Room(rooms.size(), topLeft, botRight, color);
+		rooms.add(room);
+		spatialIndex.add(room);
+		setRoomGridCells(topLeft, botRight, room.getId());
+
+		fillGrid(topLeft, botRight, ROOM);
+		return room;
+	}
+
+	/**
+	 * Gets the room occupying the cell at position (x,y)
+	 * 
+	 * @param x The x position of the cell
+	 * @param y The y position of the cell
+	 * @return The room occupying the cell, or null if the cell is not part of a room
+	 */
+	public Room getRoomAt(int x, int y) {
+		int roomId = mapRoomGrid[y * mapWidth + x];
+		return roomId < 0 ? null : rooms.get(roomId);
+	}
+
+	/**
+	 * Adds a room without any doorways to the generated map, such as from a level
+	 * editor. Only the cells of the room are updated. The room graph, portals and
+	 * distance index are rebuilt the next time they are requested, copying the
+	 * rows of the rooms the edits did not touch and keeping the cached distance
+	 * rows they did not change, so a series of edits costs a single rebuild.
+	 * 
+	 * @param topLeft  Top left corner of the room
+	 * @param botRight Bottom right corner of the room
+	 * @param color    Color of the room
+	 * @return The new room, whose ID is the number of rooms before it was added
+	 * @throws IllegalArgumentException If the room is not inside the map or covers
+	 *                                  an empty or room cell
+	 */
+	public Room addRoom(Point topLeft, Point botRight, Color color) {
+		checkNotFrozen();
+		if (topLeft.x > botRight.x || topLeft.y > botRight.y || !canPlaceRoom(topLeft, botRight)) {
+			throw new IllegalArgumentException("Room must be inside the map and only cover free cells");
+		}
+
+		Room room = placeRoom(new Point(topLeft), new Point(botRight), color);
+		roomEdited(room);
+		layoutEdited();
+		return room;
+	}
+
+	/**
+	 * Removes a room and seals its doorways. Its cells become free cells again, and
+	 * the last room of the room table takes over its ID so IDs stay contiguous. If
+	 * the room was the start or goal room, the map no longer has either. Costs time
+	 * proportional to the area and doorways of the two rooms, plus a search for
+	 * whether the rooms it connected can still reach each other, which only visits
+	 * the smaller side of a split.
+	 * 
+	 * @param room A room of the map
+	 * @return True if the rooms the removed room connected can no longer all reach
+	 *         each other, splitting a group of connected rooms in several
+	 * @throws IllegalArgumentException If the room is not part of the map
+	 */
+	public boolean removeRoom(Room room) {
+		checkNotFrozen();
+		checkRoom(room);
+
+		// the rooms next to the removed one could reach each other through it
+		List<Room> neighbors = new ArrayList<>();
+		for (Room.Doorway door : room.getDoors()) {
+			if (!neighbors.contains(door.getConnectingRoom())) {
+				neighbors.add(door.getConnectingRoom());
+			}
+		}
+
+		List<Room.Doorway> doors = room.getDoors();
+		while (!doors.isEmpty()) {
+			sealDoorway(room, doors.get(doors.size() - 1));
+		}
+
+		Point topLeft = room.getTopLeftPos();
+		Point botRight = room.getBotRightPos();
+		setRoomGridCells(topLeft, botRight, -1);
+		fillGrid(topLeft, botRight, PROCESSED);
+		spatialIndex.remove(room);
+
+		// moves the last room into the removed room's slot
+		int id = room.getId();
+		Room last = rooms.remove(rooms.size() - 1);
+		if (last != room) {
+			rooms.set(id, last);
+			last.setId(id);
+			setRoomGridCells(last.getTopLeftPos(), last.getBotRightPos(), id);
+
+			// the rooms next to the moved room lead to its new ID
+			roomEdited(last);
+			for (Room.Doorway door : last.getDoors()) {
+				roomEdited(door.getConnectingRoom());
+			}
+		}
+		room.setId(-1);
+
+		layoutEdited();
+		if (staleDistanceIndex != null && last != room) {
+			staleDistanceIndex.roomMoved(rooms.size(), id);
+		}
+
+		if (room == startRoom || room == goalRoom) {
+			startRoom = null;
+			goalRoom = null;
+		}
+
+		for (int i = 1; i < neighbors.size(); i++) {
+			if (!canReach(neighbors.get(0), neighbors.get(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Opens a doorway between a cell of a room and the cell next to it, which must
+	 * be part of another room. Both rooms get a doorway, each in their own cell and
+	 * facing the other room.
+	 * 
+	 * @param room     A room of the map
+	 * @param entrance Cell of the room the doorway is in
+	 * @param dir      Direction of the other room from the entrance
+	 * @return The new doorway of the room
+	 * @throws IllegalArgumentException If the entrance is not in the room, the cell
+	 *                                  it faces is not in another room, or the
+	 *                                  doorway already exists
+	 */
+	public Room.Doorway addDoorway(Room room, Point entrance, Direction dir) {
+		checkNotFrozen();
+		checkRoom(room);
+		if (getRoomAt(entrance.x, entrance.y) != room) {
+			throw new IllegalArgumentException("Entrance must be a cell of the room");
+		}
+
+		Point outside = step(entrance, dir);
+		Room otherRoom = outside.x < 0 || outside.x >= mapWidth || outside.y < 0 || outside.y >= mapHeight ? null
+				: getRoomAt(outside.x, outside.y);
+		if (otherRoom == null || otherRoom == room) {
+			throw new IllegalArgumentException("Doorway must face another room");
+		}
+		if (findDoorway(room, entrance, dir) != null) {
+			throw new IllegalArgumentException("Doorway already exists");
+		}
+
+		room.addConnectedRoom(otherRoom, new Point(entrance), dir);
+		otherRoom.addConnectedRoom(room, outside, opposite(dir));
+
+		roomEdited(room);
+		roomEdited(otherRoom);
+		layoutEdited();
+		if (staleDistanceIndex != null) {
+			staleDistanceIndex.doorwayChanged(room.getId(), otherRoom.getId(), true);
+		}
+
+		List<Room.Doorway> doors = room.getDoors();
+		return doors.get(doors.size() - 1);
+	}
+
+	/**
+	 * Seals a doorway, removing it from both rooms it connects. If it was the last
+	 * doorway between them, searches for another way from one room to the other,
+	 * which only visits the smaller side of a split.
+	 * 
+	 * @param room A room of the map
+	 * @param door One of the room's doorways
+	 * @return True if the two rooms can no longer reach each other, splitting a
+	 *         group of connected rooms in two
+	 * @throws IllegalArgumentException If the doorway is not one of the room's
+	 */
+	public boolean removeDoorway(Room room, Room.Doorway door) {
+		checkNotFrozen();
+		checkRoom(room);
+		if (!room.getDoors().contains(door)) {
+			throw new IllegalArgumentException("Doorway is not in the room");
+		}
+
+		Room otherRoom = door.getConnectingRoom();
+		sealDoorway(room, door);
+		return !canReach(room, otherRoom);
+	}
+
+	/**
+	 * Helper to removeDoorway() and removeRoom(), removing a doorway and the
+	 * doorway facing back from the other room
+	 */
+	private void sealDoorway(Room room, Room.Doorway door) {
+		Room otherRoom = door.getConnectingRoom();
+		Point cell = door.getEntrance();
+		Direction dir = door.directionFacing();
+		room.removeDoor(door);
+
+		// the doorway facing back leads to this room across the same wall
+		Point otherCell = step(cell, dir);
+		for (Room.Doorway otherDoor : otherRoom.getDoors()) {
+			if (otherDoor.getConnectingRoom() == room && otherDoor.directionFacing() == opposite(dir)
+					&& otherDoor.getEntrance().equals(otherCell)) {
+				otherRoom.removeDoor(otherDoor);
+				break;
+			}
+		}
 
-					rooms.add(newRoom);
+		roomEdited(room);
+		roomEdited(otherRoom);
+		layoutEdited();
+		if (staleDistanceIndex != null && !room.isConnectedToRoom(otherRoom)) {
+			staleDistanceIndex.doorwayChanged(room.getId(), otherRoom.getId(), false);
+		}
+	}
 
-					// recursively places rooms around the new room
-					placeRoomsAround(newRoom);
-				}
+	/**
+	 * Finds a room's doorway in a given cell and facing a given direction
+	 * 
+	 * @return The doorway, or null if the room has none there
+	 */
+	private static Room.Doorway findDoorway(Room room, Point entrance, Direction dir) {
+		for (Room.Doorway door : room.getDoors()) {
+			if (door.directionFacing() == dir && door.getEntrance().equals(entrance)) {
+				return door;
 			}
 		}
+		return null;
 	}
 
 	/**
-	 * Gets the adjacent cells around a room in a random order
-	 * @param topLeft Top left position of room
-	 * @param botRight Bot right position of room
-	 * @return An ArrayList of Points that hold the coordinates to the adjacent cells of a given room
+	 * Gets the cell of a room that a doorway read from saved data is in. Maps
+	 * saved before the vertical doorway fix hold the entrance of the other room,
+	 * one step past the wall, which is stepped back from, so loaded maps only ever
+	 * hold entrances inside their own room.
+	 * 
+	 * @param room     A room
+	 * @param entrance The saved entrance of one of the room's doorways
+	 * @param dir      The direction the doorway faces
+	 * @return The doorway's cell inside the room, or null if the entrance is
+	 *         neither in the room nor one step past it
 	 */
-	private ArrayList<Point> getAdjacentCells(Point topLeft, Point botRight) {
-		ArrayList<Point> adjCells = new ArrayList<>();
+	static Point savedDoorwayCell(Room room, Point entrance, Direction dir) {
+		Point cell = contains(room, entrance) ? entrance : step(entrance, opposite(dir));
+		return contains(room, cell) ? cell : null;
+	}
 
-		if (topLeft.y > 0) {
-			for (int x = topLeft.x; x <= botRight.x; x++) {
-				adjCells.add(new Point(x, topLeft.y - 1));
-			}
+	private static boolean contains(Room room, Point cell) {
+		Point topLeft = room.getTopLeftPos(), botRight = room.getBotRightPos();
+		return cell.x >= topLeft.x && cell.x <= botRight.x && cell.y >= topLeft.y && cell.y <= botRight.y;
+	}
+
+	/**
+	 * Checks if two rooms can reach each other through their doorways. Searches
+	 * out from both rooms at once, one room from each side in turn, and stops as
+	 * soon as the searches meet or either runs out of rooms. When the rooms are
+	 * apart, it only visits about as many rooms as the smaller of their groups.
+	 * 
+	 * @param room      A room of the map
+	 * @param otherRoom Another room of the map
+	 * @return True if there is a path between the rooms
+	 */
+	private boolean canReach(Room room, Room otherRoom) {
+		if (room == otherRoom) {
+			return true;
 		}
 
-		if (botRight.y < mapHeight - 1) {
-			for (int x = topLeft.x; x <= botRight.x; x++) {
-				adjCells.add(new Point(x, botRight.y + 1));
-			}
+		int roomCount = rooms.size();
+		if (reachMarks.length < roomCount) {
+			reachMarks = new int[roomCount];
+			reachQueue = new int[roomCount];
+			reachStamp = 0;
 		}
+		reachStamp += 2;
+		if (reachStamp < 0) {
+			Arrays.fill(reachMarks, 0);
+			reachStamp = 2;
+		}
+		int mark = reachStamp, otherMark = reachStamp + 1;
+
+		// each room is queued by at most one side, so the first side's queue grows
+		// from the front of the buffer and the other's from the back
+		int head = 0, tail = 0, otherHead = roomCount - 1, otherTail = roomCount - 1;
+		reachMarks[room.getId()] = mark;
+		reachQueue[tail++] = room.getId();
+		reachMarks[otherRoom.getId()] = otherMark;
+		reachQueue[otherTail--] = otherRoom.getId();
+
+		while (head < tail && otherHead > otherTail) {
+			for (Room.Doorway door : rooms.get(reachQueue[head++]).getDoors()) {
+				int next = door.getConnectingRoom().getId();
+				if (reachMarks[next] == otherMark) {
+					return true;
+				}
+				if (reachMarks[next] != mark) {
+					reachMarks[next] = mark;
+					reachQueue[tail++] = next;
+				}
+			}
 
-		if (topLeft.x > 0) {
-			for (int y = topLeft.y; y <= botRight.y; y++) {
-				adjCells.add(new Point(topLeft.x - 1, y));
+			for (Room.Doorway door : rooms.get(reachQueue[otherHead--]).getDoors()) {
+				int next = door.getConnectingRoom().getId();
+				if (reachMarks[next] == mark) {
+					return true;
+				}
+				if (reachMarks[next] != otherMark) {
+					reachMarks[next] = otherMark;
+					reachQueue[otherTail--] = next;
+				}
 			}
 		}
+		return false;
+	}
+
+	private void checkRoom(Room room) {
+		int id = room.getId();
+		if (id < 0 || id >= rooms.size() || rooms.get(id) != room) {
+			throw new IllegalArgumentException("Room is not part of this map");
+		}
+	}
 
-		if (botRight.x < mapWidth - 1) {
-			for (int y = topLeft.y; y <= botRight.y; y++) {
-				adjCells.add(new Point(botRight.x + 1, y));
-			}
+	/**
+	 * Sets the room ID of a rectangle of cells
+	 */
+	private void setRoomGridCells(Point topLeft, Point botRight, int roomId) {
+		for (int y = topLeft.y; y <= botRight.y; y++) {
+			int row = y * mapWidth;
+			Arrays.fill(mapRoomGrid, row + topLeft.x, row + botRight.x + 1, roomId);
 		}
+	}
 
-		Collections.shuffle(adjCells, rand);
-		return adjCells;
+	/**
+	 * Marks a room whose doorways, or the ID of a room next to it, an edit changed,
+	 * so the next graphs rebuild its rows rather than copying them
+	 */
+	private void roomEdited(Room room) {
+		int id = room.getId();
+		if (id >= editedRooms.length) {
+			editedRooms = Arrays.copyOf(editedRooms, Math.max(id + 1, editedRooms.length * 2));
+		}
+		editedRooms[id] = true;
 	}
 
 	/**
-	 * Places a room at the given position, creating a new Room object and updating
-	 * the cells in mapGrid
-	 * 
-	 * @param topLeft  Top left corner of the rectangle to be placed
-	 * @param botRight Bottom right corner of the rectangle to be placed
-	 * @param color Color of room
-	 * @return A new room that was placed at the given position
+	 * Drops the views of the layout built from the rooms and doorways after an
+	 * edit, keeping them, and the distance index, so the rows the edits did not
+	 * change can be carried over
 	 */
-	private Room placeRoom(Point topLeft, Point botRight, Color color) {
-		fillGrid(topLeft, botRight, Cell.ROOM);
-		Room room = new Room(topLeft, botRight, color);
+	private void layoutEdited() {
+		if (roomGraph != null) {
+			staleRoomGraph = roomGraph;
+			roomGraph = null;
+		}
+		if (portalGraph != null) {
+			stalePortalGraph = portalGraph;
+			portalGraph = null;
+		}
+		if (distanceIndex != null) {
+			staleDistanceIndex = distanceIndex;
+			distanceIndex = null;
+		}
+	}
 
-		for (int y = topLeft.y; y <= botRight.y; y++) {
-			for (int x = topLeft.x; x <= botRight.x; x++) {
-				mapRoomGrid[y][x] = room;
-			}
+	private static Point step(Point cell, Direction dir) {
+		switch (dir) {
+		case UP:
+			return new Point(cell.x, cell.y - 1);
+		case DOWN:
+			return new Point(cell.x, cell.y + 1);
+		case LEFT:
+			return new Point(cell.x - 1, cell.y);
+		default:
+			return new Point(cell.x + 1, cell.y);
+		}
+	}
+
+	private static Direction opposite(Direction dir) {
+		switch (dir) {
+		case UP:
+			return Direction.DOWN;
+		case DOWN:
+			return Direction.UP;
+		case LEFT:
+			return Direction.RIGHT;
+		default:
+			return Direction.LEFT;
 		}
-	
-		fillGrid(topLeft, botRight, Cell.ROOM);
-		return room;
 	}
 
 	/**
 	 * Sets a percentage of cells on the grid to empty such that all non-empty cells
 	 * are connected and reachable
 	 */
-	private void createEmptyCells() {
+	void createEmptyCells() {
+		if (emptyCellMode == EmptyCellMode.INCREMENTAL) {
+			createEmptyCellsIncrementally();
+			return;
+		}
+
 		// number of empty cells the grid should contain
 		int numEmptyCells = (int) (mapWidth * mapHeight * percentEmpty);
 
 		// loops until a map is generated such that all cells can be reached
-		do {
+		int restarts = 0;
+		while (true) {
 			// sets all cells in grid to UNPROCESSED
-			fillGrid(new Point(0, 0), new Point(mapWidth - 1, mapHeight - 1), Cell.UNPROCESSED);
+			fillGrid(new Point(0, 0), new Point(mapWidth - 1, mapHeight - 1), UNPROCESSED);
 
 			int emptyCellCount = 0;
+			int attempts = 0;
 
 			// loops until enough empty cells have been created
 			while (emptyCellCount < numEmptyCells) {
+				// under a budget, falls back to a single pass that keeps cells connected
+				if (shouldCheckBudget(attempts, maxEmptyCellAttempts())
+						&& budgetExhausted(GenerationPhase.EMPTY_CELLS, attempts, maxEmptyCellAttempts())) {
+					createEmptyCellsIncrementally();
+					return;
+				}
+				attempts++;
+
 				int width = rand.nextInt(maxEmptyWidth);
 				int height = rand.nextInt(maxEmptyHeight);
 
@@ -431,86 +1724,407 @@ public class GeneratedMap {
 				Point topLeft = new Point(xPos, yPos);
 				Point botRight = new Point(xPos + width, yPos + height);
 
-				if (canPlaceRoom(topLeft, botRight)) {
+				if (canPlaceRoom(topLeft, botRight) && !containsReservedCell(topLeft, botRight)) {
 					// sets the rectangle of cells to empty if it fits on the grid
-					fillGrid(topLeft, botRight, Cell.EMPTY);
+					fillGrid(topLeft, botRight, EMPTY);
 
 					// adds the area of the empty rectangle to the empty cell count
 					emptyCellCount += (width + 1) * (height + 1);
 				}
 			}
 
-		} while (!allCellsReachable());
+			if (allCellsReachable()) {
+				break;
+			}
+
+			restarts++;
+			if (listener != null) {
+				listener.emptyCellsRestarted(this, restarts);
+			}
+
+			if (budget != null && budgetExhausted(GenerationPhase.EMPTY_CELLS, restarts - 1,
+					budget.getMaxEmptyCellRestarts())) {
+				createEmptyCellsIncrementally();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return Max number of random empty rectangles drawn in one pass under the
+	 *         current budget
+	 */
+	private int maxEmptyCellAttempts() {
+		return budget == null ? Integer.MAX_VALUE : budget.getMaxEmptyCellAttempts();
+	}
+
+	/**
+	 * Sets a percentage of cells on the grid to empty in a single pass, keeping all
+	 * non-empty cells connected the whole time. Each candidate rectangle is only
+	 * placed if the non-empty cells bordering it can still reach each other without
+	 * passing through it. Since the cells were connected before, that is enough to
+	 * keep every non-empty cell connected afterwards.
+	 * 
+	 * The check only searches a window around the rectangle, so a rectangle whose
+	 * neighbors are connected by a long detour is rejected even though placing it
+	 * would be valid. If too many candidates in a row are rejected, the pass stops
+	 * with fewer empty cells than requested instead of looping forever.
+	 */
+	private void createEmptyCellsIncrementally() {
+		// number of empty cells the grid should contain
+		int numEmptyCells = (int) (mapWidth * mapHeight * percentEmpty);
+		int maxRejections = mapWidth * mapHeight;
+
+		// sets all cells in grid to UNPROCESSED
+		fillGrid(new Point(0, 0), new Point(mapWidth - 1, mapHeight - 1), UNPROCESSED);
+
+		int emptyCellCount = 0;
+		int rejections = 0;
+		int attempts = 0;
+
+		while (emptyCellCount < numEmptyCells && rejections < maxRejections) {
+			// under a budget, stops early with the empty cells placed so far, which
+			// are always connected. Does not check again when falling back from
+			// RESTART mode, which already ran out
+			if (!fallbackUsed && shouldCheckBudget(attempts, maxEmptyCellAttempts())
+					&& budgetExhausted(GenerationPhase.EMPTY_CELLS, attempts, maxEmptyCellAttempts())) {
+				break;
+			}
+			attempts++;
+
+			int width = rand.nextInt(maxEmptyWidth);
+			int height = rand.nextInt(maxEmptyHeight);
+
+			int xPos = rand.nextInt(mapWidth);
+			int yPos = rand.nextInt(mapHeight);
+
+			// position of the corners of the empty rectangle of cells
+			Point topLeft = new Point(xPos, yPos);
+			Point botRight = new Point(xPos + width, yPos + height);
+
+			if (canPlaceRoom(topLeft, botRight) && !containsReservedCell(topLeft, botRight)
+					&& keepsCellsConnected(topLeft, botRight)) {
+				fillGrid(topLeft, botRight, EMPTY);
+				emptyCellCount += (width + 1) * (height + 1);
+				rejections = 0;
+
+			} else {
+				rejections++;
+			}
+		}
+
+		// every remaining cell is reachable, so all of them are marked as processed
+		for (int y = 0; y < mapHeight; y++) {
+			for (int x = 0; x < mapWidth; x++) {
+				if (mapGrid[y * mapWidth + x] == UNPROCESSED) {
+					mapGrid[y * mapWidth + x] = PROCESSED;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper to createEmptyCellsIncrementally(), checking that emptying a rectangle
+	 * of unprocessed cells would not disconnect the unprocessed cells around it.
+	 * Runs a breadth first search from one bordering cell, limited to a window a few
+	 * cells larger than the rectangle, and checks that it reaches all the others.
+	 * 
+	 * @param topLeft  Top left corner of the rectangle to be emptied
+	 * @param botRight Bottom right corner of the rectangle to be emptied
+	 * @return True if all unprocessed cells bordering the rectangle are still
+	 *         connected within the window, false if not
+	 */
+	private boolean keepsCellsConnected(Point topLeft, Point botRight) {
+		int margin = Math.max(maxEmptyWidth, maxEmptyHeight) + 2;
+
+		// window the search is limited to
+		int winLeft = Math.max(0, topLeft.x - margin);
+		int winTop = Math.max(0, topLeft.y - margin);
+		int winRight = Math.min(mapWidth - 1, botRight.x + margin);
+		int winBot = Math.min(mapHeight - 1, botRight.y + margin);
+		int winWidth = winRight - winLeft + 1;
+		int winArea = winWidth * (winBot - winTop + 1);
+
+		if (localVisited.length < winArea) {
+			localVisited = new int[winArea];
+			localQueue = new int[winArea];
+			localStamp = 0;
+		}
+		if (++localStamp == 0) {
+			Arrays.fill(localVisited, 0);
+			localStamp = 1;
+		}
+
+		// counts the cells bordering the rectangle and picks the first as the start
+		int borderCells = 0;
+		int start = -1;
+		for (int y = topLeft.y - 1; y <= botRight.y + 1; y++) {
+			for (int x = topLeft.x - 1; x <= botRight.x + 1; x++) {
+				boolean insideX = x >= topLeft.x && x <= botRight.x;
+				boolean insideY = y >= topLeft.y && y <= botRight.y;
+
+				// only cells directly above, below, left or right of the rectangle border it
+				if (insideX == insideY || !isLocalOpenCell(x, y, topLeft, botRight)) {
+					continue;
+				}
+
+				borderCells++;
+				if (start < 0) {
+					start = (y - winTop) * winWidth + (x - winLeft);
+				}
+			}
+		}
+
+		if (borderCells <= 1) {
+			return true;
+		}
+
+		int head = 0, tail = 0;
+		localVisited[start] = localStamp;
+		localQueue[tail++] = start;
+
+		while (head < tail) {
+			int local = localQueue[head++];
+			int x = local % winWidth + winLeft;
+			int y = local / winWidth + winTop;
+
+			for (int dir = 0; dir < 4; dir++) {
+				int nx = x + (dir == 0 ? -1 : dir == 1 ? 1 : 0);
+				int ny = y + (dir == 2 ? -1 : dir == 3 ? 1 : 0);
+
+				if (nx < winLeft || nx > winRight || ny < winTop || ny > winBot) {
+					continue;
+				}
+
+				int next = (ny - winTop) * winWidth + (nx - winLeft);
+				if (localVisited[next] != localStamp && isLocalOpenCell(nx, ny, topLeft, botRight)) {
+					localVisited[next] = localStamp;
+					localQueue[tail++] = next;
+
+					// checks if the cell borders the rectangle
+					boolean insideX = nx >= topLeft.x && nx <= botRight.x;
+					boolean insideY = ny >= topLeft.y && ny <= botRight.y;
+					if (insideX != insideY && nx >= topLeft.x - 1 && nx <= botRight.x + 1 && ny >= topLeft.y - 1
+							&& ny <= botRight.y + 1) {
+						if (--borderCells == 1) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Marks a cell that must never be made empty, so it is guaranteed to end up in
+	 * a room. Used to line up doorways between neighboring maps. Reserved cells are
+	 * kept for every later generation of the map.
+	 * 
+	 * @param x The x position of the cell
+	 * @param y The y position of the cell
+	 */
+	void reserveCell(int x, int y) {
+		reservedCells.set(y * mapWidth + x);
+	}
+
+	/**
+	 * Checks if a rectangle of cells contains a reserved cell
+	 * 
+	 * @param topLeft  Top left corner of the rectangle
+	 * @param botRight Bottom right corner of the rectangle
+	 * @return True if any cell in the rectangle was reserved with reserveCell()
+	 */
+	private boolean containsReservedCell(Point topLeft, Point botRight) {
+		if (reservedCells.isEmpty()) {
+			return false;
+		}
+
+		for (int y = topLeft.y; y <= botRight.y; y++) {
+			int row = y * mapWidth;
+			int next = reservedCells.nextSetBit(row + topLeft.x);
+			if (next >= 0 && next <= row + botRight.x) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Helper to keepsCellsConnected(), checking if a cell is in bounds, unprocessed
+	 * and outside of the rectangle being emptied
+	 */
+	private boolean isLocalOpenCell(int x, int y, Point topLeft, Point botRight) {
+		if (x < 0 || x >= mapWidth || y < 0 || y >= mapHeight) {
+			return false;
+		}
+		if (x >= topLeft.x && x <= botRight.x && y >= topLeft.y && y <= botRight.y) {
+			return false;
+		}
+		return mapGrid[y * mapWidth + x] == UNPROCESSED;
 	}
 
 	/**
 	 * Checks if all non-empty cells can be reached by only traversing up, down,
-	 * left, or right between non-empty cells (ie all non-empty cells are connected)
+	 * left, or right between non-empty cells (ie all non-empty cells are connected).
+	 * Cells reachable from the first unprocessed cell are marked as processed.
 	 * 
 	 * @return True if all non-empty cells are reachable, false if not
 	 */
 	private boolean allCellsReachable() {
 		int totalUnprocessedCells = 0;
-		Point startPnt = new Point();
+		int startX = -1, startY = -1;
 
 		// iterates through mapGrid, counting all unprocessed cells (which will become
 		// room cells)
 		for (int y = 0; y < mapHeight; y++) {
 			for (int x = 0; x < mapWidth; x++) {
-				if (mapGrid[y][x].equals(Cell.UNPROCESSED)) {
-					// sets startPnt to the cords of the unprocessed cell
-					startPnt.x = x;
-					startPnt.y = y;
-
+				if (mapGrid[y * mapWidth + x] == UNPROCESSED) {
+					if (startX < 0) {
+						startX = x;
+						startY = y;
+					}
 					totalUnprocessedCells++;
 				}
 			}
 		}
 
-		if (numCellsReachable(startPnt.x, startPnt.y) == totalUnprocessedCells) {
-			// if the number of cells reachable from startPnt is equal to the total
-			// unprocessed
-			// cells, return true
+		if (totalUnprocessedCells == 0) {
 			return true;
 		}
 
-		return false;
+		// if the number of cells reachable from the start is equal to the total
+		// unprocessed cells, all cells are reachable
+		return fillComponent(startX, startY, null) == totalUnprocessedCells;
 	}
 
 	/**
-	 * Recursive helper method to allCellsReachable(), that returns the number of
-	 * reachable cells from a starting point at position (x,y) on the grid.
-	 * Traverses through unprocessed cells, marking them as processed to prevent an
-	 * infinite loop of checking the same few cells indefinitely.
+	 * Finds the connected components of the non-empty cells of the map. Does not
+	 * modify the map, but shares the fill's scratch stack, so concurrent calls on
+	 * a frozen map take turns.
 	 * 
-	 * @param x The x position of the cell being processed
-	 * @param y The y position of the cell being processed
+	 * @return A report holding the number and sizes of the connected components
+	 */
+	public synchronized ConnectivityReport getConnectivity() {
+		BitSet visited = new BitSet(mapWidth * mapHeight);
+		int[] sizes = new int[8];
+		int componentCount = 0;
+
+		for (int y = 0; y < mapHeight; y++) {
+			for (int x = 0; x < mapWidth; x++) {
+				if (isOpenCell(x, y, visited)) {
+					if (componentCount == sizes.length) {
+						sizes = Arrays.copyOf(sizes, componentCount * 2);
+					}
+					sizes[componentCount++] = fillComponent(x, y, visited);
+				}
+			}
+		}
+
+		return new ConnectivityReport(Arrays.copyOf(sizes, componentCount));
+	}
+
+	/**
+	 * Counts the cells in the component containing (x,y) using a scanline fill,
+	 * which walks whole horizontal runs of cells at a time and only keeps the start
+	 * of each run on an explicit stack, so it does not recurse and uses far less
+	 * memory than a per-cell search.
 	 * 
-	 * @return The number of cells reachable from the point (x,y), with a minimum of
-	 *         0 if the cell at the position is not unprocessed or not in bounds
+	 * If visited is null, the fill runs over unprocessed cells and marks them as
+	 * processed. Otherwise it runs over all non-empty cells, recording them in
+	 * visited.
 	 * 
+	 * @param x       The x position of a cell in the component
+	 * @param y       The y position of a cell in the component
+	 * @param visited Cells that have already been visited, or null
+	 * @return The number of cells in the component that had not been visited yet
 	 */
-	private int numCellsReachable(int x, int y) {
+	private int fillComponent(int x, int y, BitSet visited) {
 		int numReachable = 0;
+		int stackSize = 0;
+
+		fillStack[stackSize++] = y * mapWidth + x;
+
+		while (stackSize > 0) {
+			int index = fillStack[--stackSize];
+			int cy = index / mapWidth;
+			int cx = index % mapWidth;
+
+			if (!isOpenCell(cx, cy, visited)) {
+				continue;
+			}
+
+			// extends the run as far left and right as possible
+			int left = cx, right = cx;
+			while (left > 0 && isOpenCell(left - 1, cy, visited)) {
+				left--;
+			}
+			while (right < mapWidth - 1 && isOpenCell(right + 1, cy, visited)) {
+				right++;
+			}
+
+			for (int rx = left; rx <= right; rx++) {
+				markVisited(rx, cy, visited);
+			}
+			numReachable += right - left + 1;
 
-		if (!(x < 0 || x >= mapWidth || y < 0 || y >= mapHeight)) {
-			if (mapGrid[y][x].equals(Cell.UNPROCESSED)) {
-				// if cell in bounds and unprocessed, increase count and set
-				// cell to processed
-				numReachable = 1;
-				mapGrid[y][x] = Cell.PROCESSED;
+			// pushes the start of every run above and below that touches this run
+			for (int ny = cy - 1; ny <= cy + 1; ny += 2) {
+				if (ny < 0 || ny >= mapHeight) {
+					continue;
+				}
 
-				// adds the num of reachable cells from each of its neighbors to the count
-				numReachable += numCellsReachable(x - 1, y);
-				numReachable += numCellsReachable(x + 1, y);
-				numReachable += numCellsReachable(x, y - 1);
-				numReachable += numCellsReachable(x, y + 1);
+				boolean inRun = false;
+				for (int rx = left; rx <= right; rx++) {
+					boolean open = isOpenCell(rx, ny, visited);
+					if (open && !inRun) {
+						if (stackSize == fillStack.length) {
+							fillStack = Arrays.copyOf(fillStack, stackSize * 2);
+						}
+						fillStack[stackSize++] = ny * mapWidth + rx;
+					}
+					inRun = open;
+				}
 			}
 		}
 
 		return numReachable;
 	}
 
+	/**
+	 * Helper to fillComponent(), checking if a cell still needs to be filled
+	 * 
+	 * @param x       The x position of the cell
+	 * @param y       The y position of the cell
+	 * @param visited Cells that have already been visited, or null to check for
+	 *                unprocessed cells
+	 * @return True if the cell is part of the fill and has not been visited
+	 */
+	private boolean isOpenCell(int x, int y, BitSet visited) {
+		if (visited == null) {
+			return mapGrid[y * mapWidth + x] == UNPROCESSED;
+		}
+		return mapGrid[y * mapWidth + x] != EMPTY && !visited.get(y * mapWidth + x);
+	}
+
+	/**
+	 * Helper to fillComponent(), marking a cell as visited
+	 * 
+	 * @param x       The x position of the cell
+	 * @param y       The y position of the cell
+	 * @param visited Cells that have already been visited, or null to mark the
+	 *                cell as processed
+	 */
+	private void markVisited(int x, int y, BitSet visited) {
+		if (visited == null) {
+			mapGrid[y * mapWidth + x] = PROCESSED;
+		} else {
+			visited.set(y * mapWidth + x);
+		}
+	}
+
 	/**
 	 * Checks if a room/rectangle of cells can be placed without overlapping another
 	 * room
@@ -524,16 +2138,11 @@ public class GeneratedMap {
 	 */
 	private boolean canPlaceRoom(Point topLeft, Point botRight) {
 		if (isRoomInBounds(topLeft, botRight)) {
-			// if both corners of the room are in bounds
+			// if both corners of the room are in bounds, checks that no row of the room
+			// to be placed contains an empty or room cell
 			for (int y = topLeft.y; y <= botRight.y; y++) {
-				for (int x = topLeft.x; x <= botRight.x; x++) {
-					Cell val = mapGrid[y][x];
-
-					// checks that every cell in room to be placed does not contain and empty
-					// or room cell
-					if (!(val.equals(Cell.UNPROCESSED)) && !val.equals(Cell.PROCESSED))
-						return false;
-				}
+				if (!isRowRangeFree(y, topLeft.x, botRight.x))
+					return false;
 			}
 
 			return true;
@@ -542,6 +2151,65 @@ public class GeneratedMap {
 		return false;
 	}
 
+	/**
+	 * Checks if a range of cells in a row are all free (unprocessed or processed)
+	 * using the occupancy bitmask, testing 64 cells at a time
+	 * 
+	 * @param y     The row of the cells
+	 * @param fromX The x position of the first cell in the range
+	 * @param toX   The x position of the last cell in the range
+	 * @return True if none of the cells are empty or room cells
+	 */
+	private boolean isRowRangeFree(int y, int fromX, int toX) {
+		int rowStart = y * occupiedStride;
+		int firstWord = rowStart + (fromX >>> 6), lastWord = rowStart + (toX >>> 6);
+		long firstMask = -1L << fromX, lastMask = -1L >>> (63 - (toX & 63));
+
+		if (firstWord == lastWord) {
+			return (occupied[firstWord] & firstMask & lastMask) == 0;
+		}
+
+		if ((occupied[firstWord] & firstMask) != 0) {
+			return false;
+		}
+		for (int word = firstWord + 1; word < lastWord; word++) {
+			if (occupied[word] != 0) {
+				return false;
+			}
+		}
+		return (occupied[lastWord] & lastMask) == 0;
+	}
+
+	/**
+	 * Marks a range of cells in a row as occupied or free in the occupancy bitmask
+	 * 
+	 * @param y      The row of the cells
+	 * @param fromX  The x position of the first cell in the range
+	 * @param toX    The x position of the last cell in the range
+	 * @param occupy True to mark the cells as occupied, false to mark them free
+	 */
+	private void setRowRangeOccupied(int y, int fromX, int toX, boolean occupy) {
+		int rowStart = y * occupiedStride;
+		int firstWord = rowStart + (fromX >>> 6), lastWord = rowStart + (toX >>> 6);
+		long firstMask = -1L << fromX, lastMask = -1L >>> (63 - (toX & 63));
+
+		for (int word = firstWord; word <= lastWord; word++) {
+			long mask = -1L;
+			if (word == firstWord) {
+				mask &= firstMask;
+			}
+			if (word == lastWord) {
+				mask &= lastMask;
+			}
+
+			if (occupy) {
+				occupied[word] |= mask;
+			} else {
+				occupied[word] &= ~mask;
+			}
+		}
+	}
+
 	/**
 	 * Checks if a room would be in bounds if placed
 	 * 
@@ -564,103 +2232,56 @@ public class GeneratedMap {
 
 	/**
 	 * Fills the cells in rectangle from topLeft to botRight on the grid with a
-	 * specified Cell enum value.
+	 * specified cell value, keeping the occupancy bitmask in sync.
 	 * 
 	 * @param topLeft  Top left corner of the rectangle to be placed
 	 * @param botRight Bottom right corner of the rectangle to be placed
-	 * @param val      The Cell enum value that the rectangle of cells should be set
+	 * @param val      The cell value that the rectangle of cells should be set
 	 *                 to
 	 */
-	private void fillGrid(Point topLeft, Point botRight, Cell val) {
+	private void fillGrid(Point topLeft, Point botRight, byte val) {
+		boolean occupy = val == EMPTY || val == ROOM;
+
 		for (int y = topLeft.y; y <= botRight.y; y++) {
-			for (int x = topLeft.x; x <= botRight.x; x++) {
-				mapGrid[y][x] = val;
-			}
+			int row = y * mapWidth;
+			Arrays.fill(mapGrid, row + topLeft.x, row + botRight.x + 1, val);
+			setRowRangeOccupied(y, topLeft.x, botRight.x, occupy);
 		}
 	}
 
 	/**
-     * Finds the shortest distance between two rooms using BFS.
-     *
-     * @param startRoom The starting room
-     * @param targetRoom The target room
-     * @return The shortest distance between the start and target rooms, or -1 if no path exists
-     */
-    public int findShortestDistance(Room startRoom, Room targetRoom) {
-        // map to store the visited status of each room
-        Map<Room, Boolean> visited = new HashMap<>();
-        for (Room room : rooms) {
-            visited.put(room, false);
-        }
-
-        // queue for BFS traversal
-        Queue<Room> queue = new LinkedList<>();
-        // map to store the distance from the start room to each room
-        Map<Room, Integer> distance = new HashMap<>();
-
-        // initialize the starting room
-        visited.put(startRoom, true);
-        distance.put(startRoom, 0);
-        queue.add(startRoom);
-
-        while (!queue.isEmpty()) {
-            Room currentRoom = queue.poll();
-
-            if (currentRoom == targetRoom) {
-                // found the target room, return the distance
-                return distance.get(currentRoom);
-            }
-
-            // iterate through connected rooms
-            for (Room.Doorway doorway : currentRoom.getDoors()) {
-                Room adjacentRoom = doorway.getConnectingRoom();
-
-                if (!visited.get(adjacentRoom)) {
-                    // mark the adjacent room as visited
-                    visited.put(adjacentRoom, true);
-                    // update the distance
-                    distance.put(adjacentRoom, distance.get(currentRoom) + 1);
-                    // add the adjacent room to the queue for further traversal
-                    queue.add(adjacentRoom);
-                }
-            }
-        }
-
-        // no path exists between the start and target rooms
-        return -1;
-    }
+	 * Finds the shortest distance between two rooms, using the map's distance
+	 * index so repeated queries from the same room are lookups.
+	 *
+	 * @param startRoom The starting room
+	 * @param targetRoom The target room
+	 * @return The shortest distance between the start and target rooms, or -1 if no path exists
+	 */
+	public int findShortestDistance(Room startRoom, Room targetRoom) {
+		return getDistanceIndex().getDistance(startRoom.getId(), targetRoom.getId());
+	}
 
 	/**
 	 * Draws map in console, where '~' represents an UNPROCESSED cell, 'O'
 	 * represents a PROCESSED
-	 * cell, 'X' represents an EMPTY cell, and 'R' represents a ROOM cell
+	 * cell, 'X' represents an EMPTY cell, and 'R' represents a ROOM cell. Use a
+	 * MapTextRenderer to draw with other glyphs or to other destinations.
 	 */
 	public void drawInConsole() {
-		for (int y = 0; y < mapHeight; y++) {
-			for (int x = 0; x < mapWidth; x++) {
-				switch (mapGrid[y][x]) {
 
-					case UNPROCESSED:
-						System.out.print("~");
-						break;
-					case PROCESSED:
-						System.out.print("O");
-						break;
-					case EMPTY:
-						System.out.print("X");
-						break;
-					case ROOM:
-						System.out.print("R");
-						break;
-				}
-			}
-			System.out.println();
+		// writes through a buffered encoder a whole row at a time rather than printing
+		// each cell, which takes the console's lock and may flush every time
+		try {
+			new MapTextRenderer().render(this, 0, 0, mapWidth, mapHeight, System.out, Charset.defaultCharset());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
 	}
 
 	/**
 	 * Displays the map using colored rectangles to represent, opening a new window.
-	 * Cells are represented as 2D tiles on a grid.
+	 * Cells are represented as 2D tiles on a grid. The image is drawn by a
+	 * MapRenderer, which can also be used on its own without a window.
 	 * 
 	 * @param tileWidth   Width of the tile in pixels
 	 * @param tileHeight  Height of the tile in pixels
@@ -668,65 +2289,11 @@ public class GeneratedMap {
 	 */
 	public void displayMapImage(int tileWidth, int tileHeight, int pixelSize) {
 
-		tileWidth *= pixelSize;
-		tileHeight *= pixelSize;
-
-		int imageWidth = tileWidth * mapWidth;
-		int imageHeight = tileHeight * mapHeight;
-
 		// image that will be displayed
-		BufferedImage image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
-		Graphics2D graphics = image.createGraphics();
-
-		// sets background of image to white
-		graphics.setColor(Color.WHITE);
-		graphics.fillRect(0, 0, imageWidth, imageHeight);
-
-		// iterates through each room drawing them as a rectangle from the top left to bottom right of the tile
-		for (Room room : rooms) {
-			Point topLeft = room.getTopLeftPos();
-			Point botRight = room.getBotRightPos();
-
-			int roomWidth = botRight.x - topLeft.x + 1;
-			int roomHeight = botRight.y - topLeft.y + 1;
-
-			graphics.setColor(room.getColor());
-
-			graphics.fillRect(topLeft.x * tileWidth + pixelSize, topLeft.y * tileHeight + pixelSize,
-					roomWidth * tileWidth - 2 * pixelSize, roomHeight * tileHeight - 2 * pixelSize);
-			
-			// draws doorways
-			graphics.setColor(Color.MAGENTA);
-			
-			for (Room.Doorway door: room.getDoors()) {
-				Point entrance = door.getEntrance();
-				switch (door.directionFacing()) {
-				
-				case UP:
-					graphics.fillRect(entrance.x * tileWidth + tileWidth/2 - pixelSize/2,
-							topLeft.y * tileHeight, pixelSize, pixelSize);
-					break;
-					
-				case DOWN:
-					graphics.fillRect(entrance.x * tileWidth + tileWidth/2 - pixelSize/2,
-							(topLeft.y + roomHeight) * tileHeight - pixelSize, pixelSize, pixelSize);
-					break;
-					
-				case LEFT:
-					graphics.fillRect(topLeft.x * tileWidth,
-							entrance.y * tileHeight + tileHeight/2 - pixelSize/2, pixelSize, pixelSize);
-					break;
-				
-				case RIGHT:
-					graphics.fillRect((botRight.x + 1) * tileWidth - pixelSize,
-							entrance.y * tileHeight + tileHeight/2 - pixelSize/2, pixelSize, pixelSize);
-					break;
-				
-				}	
-			}
-		}
-
-		graphics.dispose();
+		MapRenderer renderer = new MapRenderer(tileWidth, tileHeight, pixelSize);
+		BufferedImage image = renderer.render(this);
+		int imageWidth = image.getWidth();
+		int imageHeight = image.getHeight();
 
 		// creates window to be displayed
 		JFrame frame = new JFrame();
@@ -0,0 +1,100 @@
+package procedural_dungeon_gen;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable limits on how long a single generation may run and how many times
+ * its unbounded loops may retry, passed to GeneratedMap.generateMap(). When a
+ * limit is reached, generation either fails with a MapGenerationException or
+ * finishes the current phase with a fallback that always terminates, depending
+ * on the budget's fallback policy. Generation under a budget also stops with a
+ * MapGenerationException when its thread is interrupted.
+ */
+public final class GenerationBudget {
+
+	/**
+	 * What generation does when it runs out of budget
+	 */
+	public static enum Fallback {
+		// throws a MapGenerationException
+		FAIL,
+		// finishes with a fallback: empty cells are placed in a single pass like
+		// EmptyCellMode.INCREMENTAL, and the seed room is the first free cell
+		BEST_EFFORT
+	}
+
+	// max time a generation may take, in nanoseconds
+	private final long timeoutNanos;
+
+	// max number of times empty cells may be placed again from scratch, and max
+	// number of random rectangles drawn in one pass of placing them
+	private final int maxEmptyCellRestarts, maxEmptyCellAttempts;
+
+	// max number of random seed rooms drawn before one fits
+	private final int maxSeedRoomAttempts;
+
+	private final Fallback fallback;
+
+	/**
+	 * Creates a budget that only limits the time a generation may take, falling
+	 * back to a best-effort layout when it runs out
+	 *
+	 * @param timeout Max time a generation may take
+	 * @param unit    Unit of the timeout
+	 */
+	public GenerationBudget(long timeout, TimeUnit unit) {
+		this(timeout, unit, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Fallback.BEST_EFFORT);
+	}
+
+	/**
+	 * Creates a new generation budget.
+	 *
+	 * @param timeout              Max time a generation may take
+	 * @param unit                 Unit of the timeout
+	 * @param maxEmptyCellRestarts Max number of times empty cells may be placed
+	 *                             again after leaving cells unreachable
+	 * @param maxEmptyCellAttempts Max number of random empty rectangles drawn in
+	 *                             one pass of placing empty cells
+	 * @param maxSeedRoomAttempts  Max number of random seed rooms drawn
+	 * @param fallback             What to do when any limit is reached
+	 */
+	public GenerationBudget(long timeout, TimeUnit unit, int maxEmptyCellRestarts, int maxEmptyCellAttempts,
+			int maxSeedRoomAttempts, Fallback fallback) {
+		if (timeout < 0 || maxEmptyCellRestarts < 0 || maxEmptyCellAttempts < 1 || maxSeedRoomAttempts < 1) {
+			throw new IllegalArgumentException("Timeout and restarts must not be negative and attempts must be positive");
+		}
+
+		this.timeoutNanos = unit.toNanos(timeout);
+		this.maxEmptyCellRestarts = maxEmptyCellRestarts;
+		this.maxEmptyCellAttempts = maxEmptyCellAttempts;
+		this.maxSeedRoomAttempts = maxSeedRoomAttempts;
+		this.fallback = fallback;
+	}
+
+	public long getTimeoutNanos() {
+		return timeoutNanos;
+	}
+
+	public int getMaxEmptyCellRestarts() {
+		return maxEmptyCellRestarts;
+	}
+
+	public int getMaxEmptyCellAttempts() {
+		return maxEmptyCellAttempts;
+	}
+
+	public int getMaxSeedRoomAttempts() {
+		return maxSeedRoomAttempts;
+	}
+
+	public Fallback getFallback() {
+		return fallback;
+	}
+
+	@Override
+	public String toString() {
+		return "GenerationBudget[timeout=" + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms, maxEmptyCellRestarts="
+				+ maxEmptyCellRestarts + ", maxEmptyCellAttempts=" + maxEmptyCellAttempts + ", maxSeedRoomAttempts="
+				+ maxSeedRoomAttempts + ", fallback=" + fallback + "]";
+	}
+}
@@ -0,0 +1,109 @@
+package procedural_dungeon_gen;
+
+import procedural_dungeon_gen.Room.Direction;
+
+/**
+ * Receives events while a map is being generated, such as to time its phases or
+ * count how much work it took. Every method does nothing by default, so a
+ * listener only overrides the events it needs. Maps without a listener skip
+ * all of this, including reading the clock.
+ *
+ * Events are delivered on the thread running generateMap(). A listener shared
+ * between maps generated at the same time must be thread safe.
+ */
+public interface GenerationListener {
+
+	/**
+	 * Called before a phase of generation starts
+	 *
+	 * @param map   The map being generated
+	 * @param phase The phase about to run
+	 */
+	default void phaseStarted(GeneratedMap map, GenerationPhase phase) {
+	}
+
+	/**
+	 * Called after a phase of generation finishes
+	 *
+	 * @param map   The map being generated
+	 * @param phase The phase that ran
+	 * @param nanos Time the phase took in nanoseconds
+	 */
+	default void phaseFinished(GeneratedMap map, GenerationPhase phase, long nanos) {
+	}
+
+	/**
+	 * Called when the empty cells left some cells unreachable and are placed again
+	 * from scratch. Only happens in the RESTART empty cell mode.
+	 *
+	 * @param map      The map being generated
+	 * @param restarts Number of restarts so far, including this one
+	 */
+	default void emptyCellsRestarted(GeneratedMap map, int restarts) {
+	}
+
+	/**
+	 * Called when a randomly drawn seed room does not fit where it was drawn and
+	 * another one is drawn
+	 *
+	 * @param map The map being generated
+	 */
+	default void seedRoomRejected(GeneratedMap map) {
+	}
+
+	/**
+	 * Called when a cell next to a room cannot hold a new room because it is empty
+	 * or already part of a room
+	 *
+	 * @param map  The map being generated
+	 * @param side Side of the room the cell is on
+	 */
+	default void adjacentCellRejected(GeneratedMap map, Direction side) {
+	}
+
+	/**
+	 * Called when a room is placed
+	 *
+	 * @param map   The map being generated
+	 * @param room  The new room
+	 * @param depth Depth the room was placed at, where the seed room is at depth 0
+	 *              and each room is one deeper than the room it was placed next to
+	 */
+	default void roomCreated(GeneratedMap map, Room room, int depth) {
+	}
+
+	/**
+	 * Called when a generation with a BEST_EFFORT budget runs out of budget and
+	 * finishes the phase with its fallback
+	 *
+	 * @param map    The map being generated
+	 * @param phase  Phase that ran out of budget
+	 * @param reason Which limit was reached
+	 */
+	default void fallbackUsed(GeneratedMap map, GenerationPhase phase, MapGenerationException.Reason reason) {
+	}
+
+	/**
+	 * Called when the start and goal rooms have been picked
+	 *
+	 * @param map           The map being generated
+	 * @param startRoom     The start room, or null if the map has fewer than two
+	 *                      connected rooms
+	 * @param goalRoom      The goal room, or null if there is no start room
+	 * @param matchingPairs Number of candidate pairs the exact target distance
+	 *                      apart that the pair was picked from, or 0 if the pair
+	 *                      closest to that distance was used instead
+	 */
+	default void endpointsChosen(GeneratedMap map, Room startRoom, Room goalRoom, long matchingPairs) {
+	}
+
+	/**
+	 * Called when a map generated with a MapFilter fails a check, after which no
+	 * further phases run
+	 *
+	 * @param map   The map being generated
+	 * @param phase Phase whose checks the map failed
+	 */
+	default void mapRejected(GeneratedMap map, GenerationPhase phase) {
+	}
+}
@@ -0,0 +1,189 @@
+package procedural_dungeon_gen;
+
+import java.util.Arrays;
+
+import procedural_dungeon_gen.Room.Direction;
+
+/**
+ * Listener that records how long each phase of generation took and how much
+ * work it did, to find out why some maps take much longer than others. Values
+ * add up over every map generated while it is attached, until reset() is
+ * called.
+ *
+ * Metrics are not thread safe, so each map generated at the same time as
+ * others needs its own.
+ */
+public class GenerationMetrics implements GenerationListener {
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	// time spent in each phase, by phase ordinal
+	private final long[] phaseNanos = new long[GenerationPhase.values().length];
+
+	private int mapsGenerated;
+	private int emptyCellRestarts;
+	private int seedRoomRejections;
+
+	// adjacent cells that could not hold a new room, by side ordinal
+	private final int[] adjacentCellRejections = new int[DIRECTIONS.length];
+
+	private int roomsCreated;
+	private int maxDepth;
+
+	private long matchingEndpointPairs;
+	private int closestPairFallbacks;
+
+	// phases that ran out of budget and used their fallback
+	private int budgetFallbacks;
+
+	@Override
+	public void phaseFinished(GeneratedMap map, GenerationPhase phase, long nanos) {
+		phaseNanos[phase.ordinal()] += nanos;
+		if (phase == GenerationPhase.ENDPOINTS) {
+			mapsGenerated++;
+		}
+	}
+
+	@Override
+	public void emptyCellsRestarted(GeneratedMap map, int restarts) {
+		emptyCellRestarts++;
+	}
+
+	@Override
+	public void seedRoomRejected(GeneratedMap map) {
+		seedRoomRejections++;
+	}
+
+	@Override
+	public void adjacentCellRejected(GeneratedMap map, Direction side) {
+		adjacentCellRejections[side.ordinal()]++;
+	}
+
+	@Override
+	public void roomCreated(GeneratedMap map, Room room, int depth) {
+		roomsCreated++;
+		maxDepth = Math.max(maxDepth, depth);
+	}
+
+	@Override
+	public void fallbackUsed(GeneratedMap map, GenerationPhase phase, MapGenerationException.Reason reason) {
+		budgetFallbacks++;
+	}
+
+	@Override
+	public void endpointsChosen(GeneratedMap map, Room startRoom, Room goalRoom, long matchingPairs) {
+		matchingEndpointPairs += matchingPairs;
+		if (startRoom != null && matchingPairs == 0) {
+			closestPairFallbacks++;
+		}
+	}
+
+	/**
+	 * Clears all recorded values
+	 */
+	public void reset() {
+		Arrays.fill(phaseNanos, 0);
+		Arrays.fill(adjacentCellRejections, 0);
+		mapsGenerated = 0;
+		emptyCellRestarts = 0;
+		seedRoomRejections = 0;
+		roomsCreated = 0;
+		maxDepth = 0;
+		matchingEndpointPairs = 0;
+		closestPairFallbacks = 0;
+		budgetFallbacks = 0;
+	}
+
+	/**
+	 * @param phase Phase of generation
+	 * @return Total time spent in the phase in nanoseconds
+	 */
+	public long getPhaseNanos(GenerationPhase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	/**
+	 * @return Number of maps that finished generating
+	 */
+	public int getMapsGenerated() {
+		return mapsGenerated;
+	}
+
+	/**
+	 * @return Number of times empty cells were placed again from scratch
+	 */
+	public int getEmptyCellRestarts() {
+		return emptyCellRestarts;
+	}
+
+	/**
+	 * @return Number of seed rooms drawn that did not fit
+	 */
+	public int getSeedRoomRejections() {
+		return seedRoomRejections;
+	}
+
+	/**
+	 * @param side Side of a room
+	 * @return Number of cells on that side of a room that could not hold a new
+	 *         room
+	 */
+	public int getAdjacentCellRejections(Direction side) {
+		return adjacentCellRejections[side.ordinal()];
+	}
+
+	public int getRoomsCreated() {
+		return roomsCreated;
+	}
+
+	/**
+	 * @return The greatest depth a room was placed at
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return Total number of candidate endpoint pairs at exactly the target
+	 *         distance
+	 */
+	public long getMatchingEndpointPairs() {
+		return matchingEndpointPairs;
+	}
+
+	/**
+	 * @return Number of maps where no endpoint pair was exactly the target distance
+	 *         apart, so the closest pair was used
+	 */
+	public int getClosestPairFallbacks() {
+		return closestPairFallbacks;
+	}
+
+	/**
+	 * @return Number of phases that ran out of budget and finished with a fallback
+	 */
+	public int getBudgetFallbacks() {
+		return budgetFallbacks;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("GenerationMetrics[maps=").append(mapsGenerated);
+		for (GenerationPhase phase : GenerationPhase.values()) {
+			sb.append(", ").append(phase).append("=").append(phaseNanos[phase.ordinal()] / 1000).append("us");
+		}
+		sb.append(", emptyCellRestarts=").append(emptyCellRestarts);
+		sb.append(", seedRoomRejections=").append(seedRoomRejections);
+		sb.append(", adjacentCellRejections={");
+		for (Direction side : DIRECTIONS) {
+			sb.append(side.ordinal() == 0 ? "" : ", ").append(side).append("=")
+					.append(adjacentCellRejections[side.ordinal()]);
+		}
+		sb.append("}, rooms=").append(roomsCreated);
+		sb.append(", maxDepth=").append(maxDepth);
+		sb.append(", matchingEndpointPairs=").append(matchingEndpointPairs);
+		sb.append(", closestPairFallbacks=").append(closestPairFallbacks);
+		sb.append(", budgetFallbacks=").append(budgetFallbacks);
+		return sb.append("]").toString();
+	}
+}
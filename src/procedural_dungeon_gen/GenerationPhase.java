@@ -0,0 +1,13 @@
+package procedural_dungeon_gen;
+
+/**
+ * The phases of GeneratedMap.generateMap(), in the order they run
+ */
+public enum GenerationPhase {
+	// places empty cells such that all other cells stay reachable
+	EMPTY_CELLS,
+	// fills the remaining cells with connected rooms
+	ROOMS,
+	// picks the start and goal rooms
+	ENDPOINTS
+}
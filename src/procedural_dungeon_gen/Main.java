@@ -5,6 +5,7 @@ public class Main {
 	public static void main(String[] args){
 		GeneratedMap map = new GeneratedMap(30, 20, 0.32f,
 			3, 3, 3, 2);
+		map.setGenerationListener(new ConsoleGenerationListener());
 		map.generateMap();
 		//map.drawInConsole();
 
@@ -0,0 +1,120 @@
+package procedural_dungeon_gen;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Generates batches of maps in parallel on a fork-join pool. Every map in a
+ * batch gets its own seed, split from a SplittableRandom seeded with the batch
+ * seed. Seeds are assigned by index before any work is forked, so the maps
+ * produced for a given batch seed and set of parameters are identical no
+ * matter how many threads generate them.
+ */
+public class MapBatchGenerator {
+
+	// number of maps a fork-join task generates directly instead of splitting
+	private static final int SEQUENTIAL_THRESHOLD = 4;
+
+	private final MapParameters params;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates a batch generator that uses the common fork-join pool, which runs on
+	 * all available cores.
+	 *
+	 * @param params Parameters of every map in a batch
+	 */
+	public MapBatchGenerator(MapParameters params) {
+		this(params, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a batch generator that runs on the given fork-join pool.
+	 *
+	 * @param params Parameters of every map in a batch
+	 * @param pool   Pool that maps are generated on
+	 */
+	public MapBatchGenerator(MapParameters params, ForkJoinPool pool) {
+		this.params = params;
+		this.pool = pool;
+	}
+
+	/**
+	 * Generates a batch of maps.
+	 *
+	 * @param batchSeed Seed that the seeds of the individual maps are split from
+	 * @param count     Number of maps to generate
+	 * @return A list of generated maps, where the map at index i is always the
+	 *         same for the same batch seed
+	 */
+	public List<GeneratedMap> generate(long batchSeed, int count) {
+		GeneratedMap[] maps = new GeneratedMap[count];
+		long[] seeds = mapSeeds(batchSeed, count);
+
+		pool.invoke(new GenerateTask(maps, seeds, 0, count));
+
+		return Arrays.asList(maps);
+	}
+
+	/**
+	 * Computes the seeds of the maps in a batch. Each seed is drawn from its own
+	 * stream split off the batch stream, so map i's seed only depends on the batch
+	 * seed and i.
+	 *
+	 * @param batchSeed Seed of the batch
+	 * @param count     Number of maps in the batch
+	 * @return The seed of each map in the batch
+	 */
+	public static long[] mapSeeds(long batchSeed, int count) {
+		SplittableRandom batchRandom = new SplittableRandom(batchSeed);
+		long[] seeds = new long[count];
+
+		for (int i = 0; i < count; i++) {
+			seeds[i] = batchRandom.split().nextLong();
+		}
+
+		return seeds;
+	}
+
+	public MapParameters getParameters() {
+		return params;
+	}
+
+	/**
+	 * Generates the maps in the index range [from, to), splitting the range in half
+	 * until it is small enough to generate directly.
+	 */
+	private class GenerateTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final GeneratedMap[] maps;
+		private final long[] seeds;
+		private final int from, to;
+
+		private GenerateTask(GeneratedMap[] maps, long[] seeds, int from, int to) {
+			this.maps = maps;
+			this.seeds = seeds;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SEQUENTIAL_THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					GeneratedMap map = params.createMap(seeds[i]);
+					map.generateMap();
+					maps[i] = map;
+				}
+
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new GenerateTask(maps, seeds, from, mid), new GenerateTask(maps, seeds, mid, to));
+			}
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package procedural_dungeon_gen;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process cache of generated maps, keyed by seed and map parameters. Since
+ * generation is deterministic, a cached map is identical to the one a new
+ * generation would produce. Maps are generated with the default settings of
+ * GeneratedMap, such as the RESTART empty cell mode and uniform room sizes.
+ *
+ * Holds at most a fixed number of maps and evicts the least recently used one
+ * to make room. Maps can also be held by soft references, so the garbage
+ * collector may drop them when memory runs low. Threads asking for a map that
+ * is being generated wait for that generation instead of starting their own.
+ *
+ * Every cached map is frozen, so it can be handed to any number of threads at
+ * once. All methods can be called from any thread.
+ */
+public class MapCache {
+
+	private final int maxSize;
+	private final boolean softValues;
+
+	// cached maps, in least to most recently used order
+	private final LinkedHashMap<MapKey, CachedMap> maps;
+
+	// soft references cleared by the garbage collector, whose entries are removed
+	// on the next access
+	private final ReferenceQueue<GeneratedMap> collected = new ReferenceQueue<>();
+
+	// futures of the maps being generated, which other threads asking for them wait
+	// for
+	private final Map<MapKey, CompletableFuture<GeneratedMap>> inFlight = new ConcurrentHashMap<>();
+
+	private long hitCount, missCount, evictionCount, collectedCount;
+
+	/**
+	 * Creates a cache that holds its maps strongly
+	 *
+	 * @param maxSize Max number of maps kept in the cache
+	 */
+	public MapCache(int maxSize) {
+		this(maxSize, false);
+	}
+
+	/**
+	 * Creates a new map cache
+	 *
+	 * @param maxSize    Max number of maps kept in the cache
+	 * @param softValues Whether maps are held by soft references, letting the
+	 *                   garbage collector drop them when memory runs low
+	 */
+	public MapCache(final int maxSize, boolean softValues) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Cache must hold at least one map");
+		}
+
+		this.maxSize = maxSize;
+		this.softValues = softValues;
+		this.maps = new LinkedHashMap<MapKey, CachedMap>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<MapKey, CachedMap> eldest) {
+				if (size() > maxSize) {
+					evictionCount++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Gets a generated map, generating and caching it if it is not cached yet
+	 *
+	 * @param params Parameters of the map
+	 * @param seed   Seed of the map
+	 * @return The frozen map
+	 */
+	public GeneratedMap get(MapParameters params, long seed) {
+		return get(new MapKey(params, seed));
+	}
+
+	/**
+	 * Gets a generated map, generating and caching it if it is not cached yet. A
+	 * call that waits for another thread's generation of the same map counts as a
+	 * hit.
+	 *
+	 * @param key Parameters and seed of the map
+	 * @return The frozen map
+	 */
+	public GeneratedMap get(MapKey key) {
+		GeneratedMap map = lookup(key, false);
+		if (map != null) {
+			count(true);
+			return map;
+		}
+
+		CompletableFuture<GeneratedMap> future = new CompletableFuture<>();
+		CompletableFuture<GeneratedMap> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			count(true);
+			try {
+				return existing.join();
+			} catch (CompletionException e) {
+				throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+			}
+		}
+
+		try {
+			// the map may have been cached between the lookup and claiming the key
+			map = lookup(key, false);
+			count(map != null);
+			if (map == null) {
+				map = key.createMap();
+				map.generateMap();
+				map.freeze();
+				put(key, map);
+			}
+			future.complete(map);
+			return map;
+		} catch (RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			// removed after caching, so later calls find the map in one or the other
+			inFlight.remove(key, future);
+		}
+	}
+
+	/**
+	 * Gets a map only if it is cached, without generating it
+	 *
+	 * @param key Parameters and seed of the map
+	 * @return The frozen map, or null if it is not cached
+	 */
+	public GeneratedMap getIfPresent(MapKey key) {
+		return lookup(key, true);
+	}
+
+	/**
+	 * Adds a map that was generated elsewhere, such as one read from a MapStore.
+	 * The map is frozen. It must have been generated with the default settings,
+	 * or later lookups of its key would get a different layout than generating
+	 * it.
+	 *
+	 * @param map The generated map
+	 */
+	public void put(GeneratedMap map) {
+		map.freeze();
+		put(new MapKey(map.getParameters(), map.getSeed()), map);
+	}
+
+	private void put(MapKey key, GeneratedMap map) {
+		synchronized (maps) {
+			removeCollected();
+			maps.put(key, new CachedMap(key, map, softValues ? null : map, collected));
+		}
+	}
+
+	/**
+	 * Looks up a cached map
+	 *
+	 * @param count Whether to count the lookup as a hit or miss
+	 */
+	private GeneratedMap lookup(MapKey key, boolean count) {
+		synchronized (maps) {
+			removeCollected();
+
+			CachedMap cached = maps.get(key);
+			GeneratedMap map = cached == null ? null : cached.get();
+			if (count) {
+				count(map != null);
+			}
+			return map;
+		}
+	}
+
+	private void count(boolean hit) {
+		synchronized (maps) {
+			if (hit) {
+				hitCount++;
+			} else {
+				missCount++;
+			}
+		}
+	}
+
+	/**
+	 * Removes the entries whose maps were dropped by the garbage collector. Must be
+	 * called while holding the lock on maps.
+	 */
+	private void removeCollected() {
+		CachedMap cleared;
+		while ((cleared = (CachedMap) collected.poll()) != null) {
+			if (maps.remove(cleared.key, cleared)) {
+				collectedCount++;
+			}
+		}
+	}
+
+	/**
+	 * Removes all maps from the cache. Counters are kept.
+	 */
+	public void clear() {
+		synchronized (maps) {
+			maps.clear();
+			while (collected.poll() != null) {
+			}
+		}
+	}
+
+	/**
+	 * @return Number of maps in the cache, including any dropped by the garbage
+	 *         collector since the last access
+	 */
+	public int size() {
+		synchronized (maps) {
+			return maps.size();
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public boolean hasSoftValues() {
+		return softValues;
+	}
+
+	/**
+	 * @return Number of lookups that found their map cached or being generated
+	 */
+	public long getHitCount() {
+		synchronized (maps) {
+			return hitCount;
+		}
+	}
+
+	/**
+	 * @return Number of lookups that did not find their map
+	 */
+	public long getMissCount() {
+		synchronized (maps) {
+			return missCount;
+		}
+	}
+
+	/**
+	 * @return Number of maps evicted to keep the cache within its max size
+	 */
+	public long getEvictionCount() {
+		synchronized (maps) {
+			return evictionCount;
+		}
+	}
+
+	/**
+	 * @return Number of maps dropped by the garbage collector
+	 */
+	public long getCollectedCount() {
+		synchronized (maps) {
+			return collectedCount;
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized (maps) {
+			return "MapCache[size=" + maps.size() + "/" + maxSize + ", soft=" + softValues + ", hits=" + hitCount
+					+ ", misses=" + missCount + ", evictions=" + evictionCount + ", collected=" + collectedCount
+					+ "]";
+		}
+	}
+
+	/**
+	 * Cache entry holding its map softly, and also strongly unless the cache has
+	 * soft values
+	 */
+	private static final class CachedMap extends SoftReference<GeneratedMap> {
+
+		private final MapKey key;
+
+		// keeps the map reachable when values are held strongly, so it is never
+		// cleared
+		@SuppressWarnings("unused")
+		private final GeneratedMap strongRef;
+
+		private CachedMap(MapKey key, GeneratedMap map, GeneratedMap strongRef,
+				ReferenceQueue<GeneratedMap> queue) {
+			super(map, queue);
+			this.key = key;
+			this.strongRef = strongRef;
+		}
+	}
+}
@@ -0,0 +1,577 @@
+package procedural_dungeon_gen;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import procedural_dungeon_gen.Room.Direction;
+
+/**
+ * Compact binary encoding of a generated map, meant for sending maps over the
+ * network. Maps are written to and read from streams or byte buffers directly
+ * without building any intermediate copy of the encoding, and most values are
+ * small deltas that fit in a single byte.
+ *
+ * Encoding, where varint is an unsigned LEB128 integer and zigzag a signed one:
+ *
+ * <pre>
+ * header   format version (byte), seed (8 bytes, little-endian), width,
+ *          height (varints), percentEmpty (float bits, 4 bytes, little-endian),
+ *          max empty width, max empty height, max room width, max room height
+ *          (varints)
+ * cells    runs of equal cells in row order, each a varint of
+ *          (run length - 1) << 2 | cell value, covering width * height cells
+ * colors   number of distinct room colors, then each as an ARGB int (4 bytes,
+ *          little-endian)
+ * rooms    number of rooms, then for each: top left x and y relative to the
+ *          previous room's (zigzags), width - 1, height - 1, color index
+ *          (varints)
+ * ends     ID of the start room + 1, ID of the goal room + 1 (varints)
+ * doors    for each room: number of doorways, then for each: the position and
+ *          direction packed by doorCode(), shifted left by one (varint). The
+ *          low bit is set if the connecting room cannot be found from the
+ *          position by impliedRoom(), in which case its ID relative to the
+ *          room's ID follows (zigzag)
+ * </pre>
+ */
+public final class MapCodec {
+
+	static final int FORMAT_VERSION = 1;
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private MapCodec() {
+	}
+
+	/**
+	 * Writes a generated map to a stream. The stream is not flushed or closed.
+	 *
+	 * @param map The generated map
+	 * @param out Stream to write to
+	 * @throws IOException If the stream cannot be written
+	 */
+	public static void encode(GeneratedMap map, OutputStream out) throws IOException {
+		StreamOutput output = new StreamOutput(out);
+		encode(map, output);
+		output.flush();
+	}
+
+	/**
+	 * Writes a generated map to a buffer, starting at its position and leaving the
+	 * position after the encoded map
+	 *
+	 * @param map    The generated map
+	 * @param buffer Buffer to write to, with at least encodedSize(map) bytes
+	 *               remaining
+	 * @throws BufferOverflowException If the buffer does not have enough space
+	 */
+	public static void encode(GeneratedMap map, final ByteBuffer buffer) {
+		try {
+			encode(map, new Output() {
+				@Override
+				void write(int b) {
+					buffer.put((byte) b);
+				}
+			});
+		} catch (IOException e) {
+			// writing to a buffer never throws IOException
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Computes the number of bytes a generated map encodes to, such as to size a
+	 * buffer before encoding
+	 *
+	 * @param map The generated map
+	 * @return The length of the encoding in bytes
+	 */
+	public static int encodedSize(GeneratedMap map) {
+		CountingOutput output = new CountingOutput();
+		try {
+			encode(map, output);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return output.count;
+	}
+
+	/**
+	 * Reads a generated map from a stream, rebuilding its rooms and doorways. Reads
+	 * exactly the bytes of one map, so several maps can be read from the same
+	 * stream. Bytes are read one at a time, so the stream should be buffered.
+	 *
+	 * @param in Stream to read from
+	 * @return A new GeneratedMap with the encoded layout
+	 * @throws IOException If the stream cannot be read or does not hold a valid map
+	 */
+	public static GeneratedMap decode(InputStream in) throws IOException {
+		return decode(new StreamInput(in));
+	}
+
+	/**
+	 * Reads a generated map from a buffer, starting at its position and leaving the
+	 * position after the encoded map
+	 *
+	 * @param buffer Buffer to read from
+	 * @return A new GeneratedMap with the encoded layout
+	 * @throws IOException If the buffer does not hold a valid map
+	 */
+	public static GeneratedMap decode(final ByteBuffer buffer) throws IOException {
+		try {
+			return decode(new Input() {
+				@Override
+				int read() {
+					return buffer.get() & 0xFF;
+				}
+
+				@Override
+				int remaining() {
+					return buffer.remaining();
+				}
+			});
+		} catch (BufferUnderflowException e) {
+			throw new EOFException("Encoded map is truncated");
+		}
+	}
+
+	private static void encode(GeneratedMap map, Output out) throws IOException {
+		MapParameters params = map.getParameters();
+		int width = map.getMapWidth(), height = map.getMapHeight();
+
+		out.write(FORMAT_VERSION);
+		out.writeFixedLong(map.getSeed());
+		out.writeVarint(width);
+		out.writeVarint(height);
+		out.writeFixedInt(Float.floatToIntBits(params.getPercentEmpty()));
+		out.writeVarint(params.getMaxEmptyWidth());
+		out.writeVarint(params.getMaxEmptyHeight());
+		out.writeVarint(params.getMaxRoomWidth());
+		out.writeVarint(params.getMaxRoomHeight());
+
+		// run-length encodes the cells, which are mostly long runs of room cells
+		byte[] cells = map.getCells();
+		int cellCount = width * height;
+		for (int start = 0; start < cellCount;) {
+			byte val = cells[start];
+			int end = start + 1;
+			while (end < cellCount && cells[end] == val && end - start < (Integer.MAX_VALUE >>> 2)) {
+				end++;
+			}
+			out.writeVarint((end - start - 1) << 2 | val);
+			start = end;
+		}
+
+		// rooms share a handful of colors, so each is written once
+		List<Room> rooms = map.getRooms();
+		HashMap<Integer, Integer> colorIndices = new HashMap<>();
+		List<Integer> colors = new ArrayList<>();
+		for (Room room : rooms) {
+			int argb = room.getColor().getRGB();
+			if (!colorIndices.containsKey(argb)) {
+				colorIndices.put(argb, colors.size());
+				colors.add(argb);
+			}
+		}
+
+		out.writeVarint(colors.size());
+		for (int argb : colors) {
+			out.writeFixedInt(argb);
+		}
+
+		// rooms placed one after another are close together, so positions are
+		// written relative to the previous room
+		out.writeVarint(rooms.size());
+		int prevX = 0, prevY = 0;
+		for (Room room : rooms) {
+			Point topLeft = room.getTopLeftPos(), botRight = room.getBotRightPos();
+			out.writeZigzag(topLeft.x - prevX);
+			out.writeZigzag(topLeft.y - prevY);
+			out.writeVarint(botRight.x - topLeft.x);
+			out.writeVarint(botRight.y - topLeft.y);
+			out.writeVarint(colorIndices.get(room.getColor().getRGB()));
+			prevX = topLeft.x;
+			prevY = topLeft.y;
+		}
+
+		out.writeVarint(map.getStartRoom() == null ? 0 : map.getStartRoom().getId() + 1);
+		out.writeVarint(map.getGoalRoom() == null ? 0 : map.getGoalRoom().getId() + 1);
+
+		for (Room room : rooms) {
+			out.writeVarint(room.getDoors().size());
+			for (Room.Doorway door : room.getDoors()) {
+				Room connecting = door.getConnectingRoom();
+				int code = doorCode(room, door.getEntrance(), door.directionFacing());
+
+				// the connecting room is only written if it cannot be found from the
+				// doorway's position
+				if (impliedRoom(map, room, door.getEntrance(), door.directionFacing()) == connecting) {
+					out.writeVarint(code << 1);
+				} else {
+					out.writeVarint(code << 1 | 1);
+					out.writeZigzag(connecting.getId() - room.getId());
+				}
+			}
+		}
+	}
+
+	private static GeneratedMap decode(Input in) throws IOException {
+		int version = in.read();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported map encoding version " + version);
+		}
+
+		long seed = in.readFixedLong();
+		int width = in.readVarint(), height = in.readVarint();
+		float percentEmpty = Float.intBitsToFloat(in.readFixedInt());
+		int maxEmptyWidth = in.readVarint(), maxEmptyHeight = in.readVarint();
+		int maxRoomWidth = in.readVarint(), maxRoomHeight = in.readVarint();
+
+		if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE || maxRoomWidth < 1
+				|| maxRoomHeight < 1) {
+			throw new IOException("Invalid map parameters");
+		}
+
+		// the runs are read before the cells are allocated, so a header claiming a
+		// huge map is rejected once the data runs out instead of after allocating it.
+		// Every run takes at least one byte, which bounds how many there can be
+		int cellCount = width * height;
+		int[] runs = new int[Math.min(cellCount, 256)];
+		int runCount = 0;
+		for (int start = 0; start < cellCount;) {
+			int run = in.readVarint();
+			int end = start + (run >>> 2) + 1;
+			if (end > cellCount || end <= start) {
+				throw new IOException("Cell runs overflow the map");
+			}
+
+			if (runCount == runs.length) {
+				runs = Arrays.copyOf(runs, runs.length * 2);
+			}
+			runs[runCount++] = run;
+			start = end;
+		}
+
+		byte[] cells = new byte[cellCount];
+		for (int r = 0, start = 0; r < runCount; r++) {
+			int end = start + (runs[r] >>> 2) + 1;
+			byte val = (byte) (runs[r] & 3);
+			while (start < end) {
+				cells[start++] = val;
+			}
+		}
+
+		// every color belongs to a room, each color takes 4 bytes and each room at
+		// least 5
+		int colorCount = in.readVarint();
+		if (colorCount > cells.length) {
+			throw new IOException("More colors than cells");
+		}
+		checkRemaining(in, colorCount * 4L, "colors");
+		int[] colors = new int[colorCount];
+		for (int c = 0; c < colors.length; c++) {
+			colors[c] = in.readFixedInt();
+		}
+
+		int roomCount = in.readVarint();
+		if (roomCount > cells.length) {
+			throw new IOException("More rooms than cells");
+		}
+		checkRemaining(in, roomCount * 5L, "rooms");
+
+		List<Room> rooms = new ArrayList<>(roomCount);
+		int x = 0, y = 0;
+		for (int r = 0; r < roomCount; r++) {
+			x += in.readZigzag();
+			y += in.readZigzag();
+			int roomWidth = in.readVarint() + 1, roomHeight = in.readVarint() + 1;
+			int color = in.readVarint();
+
+			if (x < 0 || y < 0 || roomWidth > width - x || roomHeight > height - y || roomWidth < 1
+					|| roomHeight < 1 || color >= colors.length) {
+				throw new IOException("Invalid room " + r);
+			}
+
+			rooms.add(new Room(r, new Point(x, y), new Point(x + roomWidth - 1, y + roomHeight - 1),
+					new Color(colors[color], true)));
+		}
+
+		int startRoom = in.readVarint() - 1, goalRoom = in.readVarint() - 1;
+		if (startRoom >= roomCount || goalRoom >= roomCount) {
+			throw new IOException("Invalid start or goal room");
+		}
+
+		// limits past the map size are cut down to it before they size anything
+		GeneratedMap map = new MapParameters(width, height, percentEmpty, maxEmptyWidth, maxEmptyHeight,
+				maxRoomWidth, maxRoomHeight).limitedToMap().createMap(seed);
+		map.restore(cells, rooms, startRoom, goalRoom);
+
+		for (Room room : rooms) {
+			Point topLeft = room.getTopLeftPos(), botRight = room.getBotRightPos();
+			int ringHeight = botRight.y - topLeft.y + 3;
+			int ringSize = (botRight.x - topLeft.x + 3) * ringHeight;
+			int doorCount = in.readVarint();
+
+			for (int d = 0; d < doorCount; d++) {
+				int code = in.readVarint();
+				boolean explicit = (code & 1) != 0;
+				code >>>= 1;
+				if (code >= ringSize * DIRECTIONS.length) {
+					throw new IOException("Invalid doorway in room " + room.getId());
+				}
+
+				int pos = code / DIRECTIONS.length;
+				Point entrance = new Point(topLeft.x - 1 + pos / ringHeight, topLeft.y - 1 + pos % ringHeight);
+				Direction dir = DIRECTIONS[code % DIRECTIONS.length];
+
+				Room connecting;
+				if (explicit) {
+					int connectingId = room.getId() + in.readZigzag();
+					connecting = connectingId < 0 || connectingId >= roomCount ? null : rooms.get(connectingId);
+				} else {
+					connecting = impliedRoom(map, room, entrance, dir);
+				}
+
+				// the connecting room is found from the entrance as written, which may be in
+				// the old form, before the entrance is moved into the room
+				Point cell = GeneratedMap.savedDoorwayCell(room, entrance, dir);
+				if (connecting == null || cell == null) {
+					throw new IOException("Invalid doorway in room " + room.getId());
+				}
+				room.addConnectedRoom(connecting, cell, dir);
+			}
+		}
+
+		return map;
+	}
+
+	/**
+	 * Fails if the input is known to hold fewer bytes than a part of the map needs,
+	 * before any space is allocated for that part
+	 *
+	 * @param in    The input being decoded
+	 * @param bytes Least number of bytes the part takes
+	 * @param part  Name of the part, for the error message
+	 */
+	private static void checkRemaining(Input in, long bytes, String part) throws EOFException {
+		int remaining = in.remaining();
+		if (remaining >= 0 && remaining < bytes) {
+			throw new EOFException("Encoded map is truncated in its " + part);
+		}
+	}
+
+	/**
+	 * Packs the position and direction of a doorway into one small number. The
+	 * entrance of a doorway is either in its room or right next to it, so its
+	 * position is numbered within the room grown by one cell on each side.
+	 *
+	 * @param room     Room the doorway belongs to
+	 * @param entrance The entrance of the doorway
+	 * @param dir      The direction the doorway faces
+	 * @return The packed doorway
+	 */
+	private static int doorCode(Room room, Point entrance, Direction dir) {
+		Point topLeft = room.getTopLeftPos(), botRight = room.getBotRightPos();
+		int dx = entrance.x - topLeft.x + 1, dy = entrance.y - topLeft.y + 1;
+		int ringWidth = botRight.x - topLeft.x + 3, ringHeight = botRight.y - topLeft.y + 3;
+
+		if (dx < 0 || dx >= ringWidth || dy < 0 || dy >= ringHeight) {
+			throw new IllegalArgumentException("Doorway of room " + room.getId() + " is not next to the room");
+		}
+		return (dx * ringHeight + dy) * DIRECTIONS.length + dir.ordinal();
+	}
+
+	/**
+	 * Finds the room a doorway leads to from its position alone: the room the
+	 * entrance is in if that is not the doorway's own room, otherwise the room one
+	 * step past the entrance in the direction the doorway faces
+	 *
+	 * @return The room, or null if the cell is outside the map or empty
+	 */
+	private static Room impliedRoom(GeneratedMap map, Room room, Point entrance, Direction dir) {
+		int x = entrance.x, y = entrance.y;
+		if (x < 0 || y < 0 || x >= map.getMapWidth() || y >= map.getMapHeight()) {
+			return null;
+		}
+
+		Room entranceRoom = map.getRoomAt(x, y);
+		if (entranceRoom != room) {
+			return entranceRoom;
+		}
+
+		switch (dir) {
+		case UP:
+			y--;
+			break;
+		case DOWN:
+			y++;
+			break;
+		case LEFT:
+			x--;
+			break;
+		default:
+			x++;
+			break;
+		}
+
+		if (x < 0 || y < 0 || x >= map.getMapWidth() || y >= map.getMapHeight()) {
+			return null;
+		}
+		return map.getRoomAt(x, y);
+	}
+
+	/**
+	 * Destination of encoded bytes, with helpers for the multi-byte values
+	 */
+	private static abstract class Output {
+
+		abstract void write(int b) throws IOException;
+
+		void writeVarint(int value) throws IOException {
+			while ((value & ~0x7F) != 0) {
+				write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			write(value);
+		}
+
+		void writeZigzag(int value) throws IOException {
+			writeVarint((value << 1) ^ (value >> 31));
+		}
+
+		void writeFixedInt(int value) throws IOException {
+			for (int shift = 0; shift < 32; shift += 8) {
+				write(value >>> shift);
+			}
+		}
+
+		void writeFixedLong(long value) throws IOException {
+			writeFixedInt((int) value);
+			writeFixedInt((int) (value >>> 32));
+		}
+	}
+
+	/**
+	 * Writes to a stream through a small buffer, so the stream is not called once
+	 * per byte
+	 */
+	private static final class StreamOutput extends Output {
+
+		private final OutputStream out;
+		private final byte[] buf = new byte[4096];
+		private int count;
+
+		StreamOutput(OutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		void write(int b) throws IOException {
+			if (count == buf.length) {
+				flush();
+			}
+			buf[count++] = (byte) b;
+		}
+
+		void flush() throws IOException {
+			out.write(buf, 0, count);
+			count = 0;
+		}
+	}
+
+	private static final class CountingOutput extends Output {
+
+		private int count;
+
+		@Override
+		void write(int b) {
+			count++;
+		}
+	}
+
+	/**
+	 * Source of encoded bytes, with helpers for the multi-byte values
+	 */
+	private static abstract class Input {
+
+		/**
+		 * @return The next byte as a value from 0 to 255
+		 */
+		abstract int read() throws IOException;
+
+		/**
+		 * @return The number of bytes left, or -1 if it is not known
+		 */
+		int remaining() {
+			return -1;
+		}
+
+		int readVarint() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int b = read();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					if (value < 0) {
+						break;
+					}
+					return value;
+				}
+			}
+			throw new IOException("Malformed varint");
+		}
+
+		int readZigzag() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int b = read();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return (value >>> 1) ^ -(value & 1);
+				}
+			}
+			throw new IOException("Malformed varint");
+		}
+
+		int readFixedInt() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 32; shift += 8) {
+				value |= read() << shift;
+			}
+			return value;
+		}
+
+		long readFixedLong() throws IOException {
+			long low = readFixedInt() & 0xFFFFFFFFL;
+			return low | ((long) readFixedInt() << 32);
+		}
+	}
+
+	private static final class StreamInput extends Input {
+
+		private final InputStream in;
+
+		StreamInput(InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		int read() throws IOException {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Encoded map is truncated");
+			}
+			return b;
+		}
+	}
+}
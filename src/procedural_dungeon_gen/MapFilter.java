@@ -0,0 +1,86 @@
+package procedural_dungeon_gen;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Immutable set of quality checks a map must pass to be kept, each attached to
+ * the end of a phase of generation. GeneratedMap.generateMap(MapFilter) runs a
+ * phase's checks as soon as the phase finishes and stops generating once one
+ * fails, so a map rejected for its empty cells never gets rooms. A check sees
+ * the map as it is at the end of its phase: after EMPTY_CELLS only the empty
+ * cells are placed, after ROOMS the rooms and doorways are too, and after
+ * ENDPOINTS the map is complete.
+ *
+ * Checks of a map being generated run on the thread generating it, so checks
+ * of a filter shared between threads must be thread safe.
+ */
+public final class MapFilter {
+
+	/**
+	 * Filter that keeps every map
+	 */
+	public static final MapFilter ACCEPT_ALL = new MapFilter(new EnumMap<>(GenerationPhase.class));
+
+	// checks run at the end of each phase, or none for phases without checks
+	private final Map<GenerationPhase, Predicate<? super GeneratedMap>> checks;
+
+	private MapFilter(Map<GenerationPhase, Predicate<? super GeneratedMap>> checks) {
+		this.checks = checks;
+	}
+
+	/**
+	 * Creates a filter with a single check
+	 *
+	 * @param phase Phase at the end of which the check runs
+	 * @param check Returns true to keep generating the map
+	 * @return A new filter
+	 */
+	public static MapFilter after(GenerationPhase phase, Predicate<? super GeneratedMap> check) {
+		return ACCEPT_ALL.and(phase, check);
+	}
+
+	/**
+	 * Creates a filter with this filter's checks and one more. Checks of the same
+	 * phase run in the order they were added.
+	 *
+	 * @param phase Phase at the end of which the check runs
+	 * @param check Returns true to keep generating the map
+	 * @return A new filter
+	 */
+	public MapFilter and(GenerationPhase phase, Predicate<? super GeneratedMap> check) {
+		if (phase == null || check == null) {
+			throw new IllegalArgumentException("Phase and check must not be null");
+		}
+
+		Map<GenerationPhase, Predicate<? super GeneratedMap>> combined = new EnumMap<>(checks);
+		Predicate<? super GeneratedMap> existing = checks.get(phase);
+		if (existing == null) {
+			combined.put(phase, check);
+		} else {
+			combined.put(phase, (GeneratedMap map) -> existing.test(map) && check.test(map));
+		}
+		return new MapFilter(combined);
+	}
+
+	/**
+	 * Runs the checks of a phase on a map
+	 *
+	 * @param phase Phase that just finished
+	 * @param map   The map being generated
+	 * @return True if the map passes every check of the phase
+	 */
+	public boolean accepts(GenerationPhase phase, GeneratedMap map) {
+		Predicate<? super GeneratedMap> check = checks.get(phase);
+		return check == null || check.test(map);
+	}
+
+	/**
+	 * @param phase A phase of generation
+	 * @return True if the filter has checks at the end of the phase
+	 */
+	public boolean hasChecks(GenerationPhase phase) {
+		return checks.containsKey(phase);
+	}
+}
@@ -0,0 +1,45 @@
+package procedural_dungeon_gen;
+
+/**
+ * Thrown when a generation with a GenerationBudget cannot finish, either
+ * because a limit was reached with the FAIL fallback policy or because its
+ * thread was interrupted. The map is left partially generated and must be
+ * generated again before it is used.
+ */
+public class MapGenerationException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Why generation stopped
+	 */
+	public static enum Reason {
+		// the budget's timeout passed
+		DEADLINE_EXCEEDED,
+		// a loop used up its attempts
+		ATTEMPTS_EXHAUSTED,
+		// the generating thread was interrupted
+		INTERRUPTED
+	}
+
+	private final Reason reason;
+	private final GenerationPhase phase;
+
+	/**
+	 * @param reason Why generation stopped
+	 * @param phase  Phase that was running
+	 */
+	public MapGenerationException(Reason reason, GenerationPhase phase) {
+		super("Map generation stopped during " + phase + ": " + reason);
+		this.reason = reason;
+		this.phase = phase;
+	}
+
+	public Reason getReason() {
+		return reason;
+	}
+
+	public GenerationPhase getPhase() {
+		return phase;
+	}
+}
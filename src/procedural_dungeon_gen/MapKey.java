@@ -0,0 +1,64 @@
+package procedural_dungeon_gen;
+
+/**
+ * Immutable pair of map parameters and a seed. Since generation is
+ * deterministic, equal keys always stand for identical layouts, so a key can be
+ * used to look up a map that was generated before.
+ */
+public final class MapKey {
+
+	private final MapParameters params;
+	private final long seed;
+
+	/**
+	 * Creates a new map key.
+	 *
+	 * @param params Parameters of the map
+	 * @param seed   Seed of the map's random stream
+	 */
+	public MapKey(MapParameters params, long seed) {
+		if (params == null) {
+			throw new IllegalArgumentException("Map parameters must not be null");
+		}
+		this.params = params;
+		this.seed = seed;
+	}
+
+	/**
+	 * Creates a new, unprocessed generated map for this key
+	 *
+	 * @return A new GeneratedMap that has not been generated yet
+	 */
+	public GeneratedMap createMap() {
+		return params.createMap(seed);
+	}
+
+	public MapParameters getParameters() {
+		return params;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof MapKey))
+			return false;
+
+		MapKey other = (MapKey) obj;
+		return seed == other.seed && params.equals(other.params);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * params.hashCode() + Long.hashCode(seed);
+	}
+
+	@Override
+	public String toString() {
+		return "MapKey[seed=" + seed + ", " + params + "]";
+	}
+}
@@ -0,0 +1,138 @@
+package procedural_dungeon_gen;
+
+/**
+ * Immutable set of the parameters used to construct a GeneratedMap. Two maps
+ * created from equal parameters and the same seed generate identical layouts,
+ * which makes this class usable as part of a lookup key.
+ */
+public final class MapParameters {
+
+	private final int mapWidth, mapHeight;
+
+	// the percent of the map that should be empty
+	private final float percentEmpty;
+
+	// max width and height of empty spaces and rooms that can be generated
+	private final int maxEmptyWidth, maxEmptyHeight, maxRoomWidth, maxRoomHeight;
+
+	/**
+	 * Creates a new set of map parameters, using the same defaults as
+	 * GeneratedMap(int, int).
+	 *
+	 * @param mapWidth  Width of the generated map
+	 * @param mapHeight Height of the generated map
+	 */
+	public MapParameters(int mapWidth, int mapHeight) {
+		this(mapWidth, mapHeight, 0.25f, 3, 2, 3, 3);
+	}
+
+	/**
+	 * Creates a new set of map parameters.
+	 *
+	 * @param mapWidth       Width of the generated map
+	 * @param mapHeight      Height of the generated map
+	 * @param percentEmpty   Percent of map that should be empty cells
+	 * @param maxEmptyWidth  Max width of empty cell rectangle
+	 * @param maxEmptyHeight Max height of empty cell rectangle
+	 * @param maxRoomWidth   Max width of a room
+	 * @param maxRoomHeight  Max height of a room
+	 */
+	public MapParameters(int mapWidth, int mapHeight, float percentEmpty, int maxEmptyWidth, int maxEmptyHeight,
+			int maxRoomWidth, int maxRoomHeight) {
+		this.mapWidth = mapWidth;
+		this.mapHeight = mapHeight;
+		this.percentEmpty = percentEmpty;
+		this.maxEmptyWidth = maxEmptyWidth;
+		this.maxEmptyHeight = maxEmptyHeight;
+		this.maxRoomWidth = maxRoomWidth;
+		this.maxRoomHeight = maxRoomHeight;
+	}
+
+	/**
+	 * Creates a new, unprocessed generated map using these parameters and a fixed
+	 * seed.
+	 *
+	 * @param seed Seed of the map's random stream
+	 * @return A new GeneratedMap that has not been generated yet
+	 */
+	public GeneratedMap createMap(long seed) {
+		return new GeneratedMap(this, seed);
+	}
+
+	/**
+	 * Limits the max empty and room sizes to the size of the map, as no empty
+	 * rectangle or room can be larger than the map. Used on parameters read from
+	 * untrusted data, so a small map cannot ask for huge limits.
+	 *
+	 * @return These parameters, or a copy with the limits reduced to the map size
+	 */
+	MapParameters limitedToMap() {
+		if (maxEmptyWidth <= mapWidth && maxEmptyHeight <= mapHeight && maxRoomWidth <= mapWidth
+				&& maxRoomHeight <= mapHeight) {
+			return this;
+		}
+		return new MapParameters(mapWidth, mapHeight, percentEmpty, Math.min(maxEmptyWidth, mapWidth),
+				Math.min(maxEmptyHeight, mapHeight), Math.min(maxRoomWidth, mapWidth),
+				Math.min(maxRoomHeight, mapHeight));
+	}
+
+	public int getMapWidth() {
+		return mapWidth;
+	}
+
+	public int getMapHeight() {
+		return mapHeight;
+	}
+
+	public float getPercentEmpty() {
+		return percentEmpty;
+	}
+
+	public int getMaxEmptyWidth() {
+		return maxEmptyWidth;
+	}
+
+	public int getMaxEmptyHeight() {
+		return maxEmptyHeight;
+	}
+
+	public int getMaxRoomWidth() {
+		return maxRoomWidth;
+	}
+
+	public int getMaxRoomHeight() {
+		return maxRoomHeight;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof MapParameters))
+			return false;
+
+		MapParameters other = (MapParameters) obj;
+		return mapWidth == other.mapWidth && mapHeight == other.mapHeight
+				&& Float.floatToIntBits(percentEmpty) == Float.floatToIntBits(other.percentEmpty)
+				&& maxEmptyWidth == other.maxEmptyWidth && maxEmptyHeight == other.maxEmptyHeight
+				&& maxRoomWidth == other.maxRoomWidth && maxRoomHeight == other.maxRoomHeight;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = mapWidth;
+		hash = 31 * hash + mapHeight;
+		hash = 31 * hash + Float.floatToIntBits(percentEmpty);
+		hash = 31 * hash + maxEmptyWidth;
+		hash = 31 * hash + maxEmptyHeight;
+		hash = 31 * hash + maxRoomWidth;
+		hash = 31 * hash + maxRoomHeight;
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return "MapParameters[" + mapWidth + "x" + mapHeight + ", percentEmpty=" + percentEmpty + ", maxEmpty="
+				+ maxEmptyWidth + "x" + maxEmptyHeight + ", maxRoom=" + maxRoomWidth + "x" + maxRoomHeight + "]";
+	}
+}
@@ -0,0 +1,265 @@
+package procedural_dungeon_gen;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Draws generated maps straight into an array of RGB pixels without any window,
+ * so it works on headless machines. Maps are drawn the same way as
+ * GeneratedMap.displayMapImage(): each cell is a tile, each room is a
+ * rectangle of its color inset by one pixel from the edges of its tiles, and
+ * each doorway is a magenta pixel on the edge of its room, on a white
+ * background.
+ *
+ * The image is split into bands of tile rows that are drawn in parallel on a
+ * fork-join pool. Every band only writes its own pixels, so the bands need no
+ * synchronization. Small maps fit in a single band, so when drawing many small
+ * maps, such as thumbnails, draw several maps at once instead. A renderer holds
+ * no state of its own and can be shared between threads.
+ */
+public class MapRenderer {
+
+	private static final int WHITE = Color.WHITE.getRGB();
+	private static final int MAGENTA = Color.MAGENTA.getRGB();
+
+	// min number of pixels a band covers before it is drawn directly instead of
+	// being split further
+	private static final int BAND_PIXELS = 1 << 16;
+
+	private final int tileWidth, tileHeight, pixelSize;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates a renderer that draws bands on the common fork-join pool
+	 *
+	 * @param tileWidth  Width of the tile in pixels
+	 * @param tileHeight Height of the tile in pixels
+	 * @param pixelSize  Scale of the pixel size
+	 */
+	public MapRenderer(int tileWidth, int tileHeight, int pixelSize) {
+		this(tileWidth, tileHeight, pixelSize, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a renderer that draws bands on the given fork-join pool
+	 *
+	 * @param tileWidth  Width of the tile in pixels
+	 * @param tileHeight Height of the tile in pixels
+	 * @param pixelSize  Scale of the pixel size
+	 * @param pool       Pool that bands are drawn on
+	 */
+	public MapRenderer(int tileWidth, int tileHeight, int pixelSize, ForkJoinPool pool) {
+		if (tileWidth < 1 || tileHeight < 1 || pixelSize < 1) {
+			throw new IllegalArgumentException("Tile and pixel sizes must be positive");
+		}
+
+		this.tileWidth = tileWidth * pixelSize;
+		this.tileHeight = tileHeight * pixelSize;
+		this.pixelSize = pixelSize;
+		this.pool = pool;
+	}
+
+	/**
+	 * @param map The generated map
+	 * @return Width of the map's image in pixels
+	 */
+	public int getImageWidth(GeneratedMap map) {
+		return tileWidth * map.getMapWidth();
+	}
+
+	/**
+	 * @param map The generated map
+	 * @return Height of the map's image in pixels
+	 */
+	public int getImageHeight(GeneratedMap map) {
+		return tileHeight * map.getMapHeight();
+	}
+
+	/**
+	 * Draws a map into a new image
+	 *
+	 * @param map The generated map
+	 * @return An RGB image of the map
+	 */
+	public BufferedImage render(GeneratedMap map) {
+		BufferedImage image = new BufferedImage(getImageWidth(map), getImageHeight(map), BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		render(map, pixels, 0, image.getWidth());
+		return image;
+	}
+
+	/**
+	 * Draws a map into an array of pixels
+	 *
+	 * @param map      The generated map
+	 * @param pixels   Pixels to draw into as RGB values, where the pixel at (x,y)
+	 *                 is at offset + y * scanline + x
+	 * @param offset   Index of the top left pixel
+	 * @param scanline Distance between the starts of two rows of pixels, at least
+	 *                 getImageWidth(map)
+	 */
+	public void render(GeneratedMap map, int[] pixels, int offset, int scanline) {
+		if (scanline < getImageWidth(map)
+				|| offset + (long) (getImageHeight(map) - 1) * scanline + getImageWidth(map) > pixels.length) {
+			throw new IllegalArgumentException("Pixel array is too small for the map");
+		}
+
+		BandTask task = new BandTask(map, pixels, offset, scanline, 0, map.getMapHeight());
+		if (ForkJoinTask.getPool() == pool) {
+			task.invoke();
+		} else {
+			pool.invoke(task);
+		}
+	}
+
+	/**
+	 * Draws a map and writes it to a PNG file
+	 *
+	 * @param map  The generated map
+	 * @param path Path of the PNG file
+	 * @throws IOException If the file cannot be written
+	 */
+	public void writePng(GeneratedMap map, Path path) throws IOException {
+		if (!ImageIO.write(render(map), "png", path.toFile())) {
+			throw new IOException("No PNG writer available");
+		}
+	}
+
+	/**
+	 * Draws the rows of tiles from fromRow up to but not including toRow, clipping
+	 * rooms and doorways to the pixel rows of those tiles
+	 */
+	private void renderBand(GeneratedMap map, int[] pixels, int offset, int scanline, int fromRow, int toRow) {
+		int imageWidth = getImageWidth(map);
+		int clipTop = fromRow * tileHeight, clipBottom = toRow * tileHeight;
+
+		for (int py = clipTop; py < clipBottom; py++) {
+			int rowStart = offset + py * scanline;
+			fill(pixels, rowStart, rowStart + imageWidth, WHITE);
+		}
+
+		// draws every room that has cells in the band once, from its top left cell or
+		// its top row within the band
+		for (int y = fromRow; y < toRow; y++) {
+			for (int x = 0; x < map.getMapWidth(); x++) {
+				Room room = map.getRoomAt(x, y);
+				if (room == null) {
+					continue;
+				}
+
+				Point topLeft = room.getTopLeftPos();
+				if (topLeft.x == x && (topLeft.y == y || y == fromRow)) {
+					renderRoom(room, pixels, offset, scanline, clipTop, clipBottom);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draws a room and its doorways, clipped to a range of pixel rows
+	 */
+	private void renderRoom(Room room, int[] pixels, int offset, int scanline, int clipTop, int clipBottom) {
+		Point topLeft = room.getTopLeftPos();
+		Point botRight = room.getBotRightPos();
+
+		int roomWidth = botRight.x - topLeft.x + 1;
+		int roomHeight = botRight.y - topLeft.y + 1;
+
+		fillRect(pixels, offset, scanline, clipTop, clipBottom, room.getColor().getRGB(),
+				topLeft.x * tileWidth + pixelSize, topLeft.y * tileHeight + pixelSize,
+				roomWidth * tileWidth - 2 * pixelSize, roomHeight * tileHeight - 2 * pixelSize);
+
+		for (Room.Doorway door : room.getDoors()) {
+			Point entrance = door.getEntrance();
+			int doorX, doorY;
+
+			switch (door.directionFacing()) {
+			case UP:
+				doorX = entrance.x * tileWidth + tileWidth / 2 - pixelSize / 2;
+				doorY = topLeft.y * tileHeight;
+				break;
+			case DOWN:
+				doorX = entrance.x * tileWidth + tileWidth / 2 - pixelSize / 2;
+				doorY = (topLeft.y + roomHeight) * tileHeight - pixelSize;
+				break;
+			case LEFT:
+				doorX = topLeft.x * tileWidth;
+				doorY = entrance.y * tileHeight + tileHeight / 2 - pixelSize / 2;
+				break;
+			default:
+				doorX = (botRight.x + 1) * tileWidth - pixelSize;
+				doorY = entrance.y * tileHeight + tileHeight / 2 - pixelSize / 2;
+				break;
+			}
+
+			fillRect(pixels, offset, scanline, clipTop, clipBottom, MAGENTA, doorX, doorY, pixelSize, pixelSize);
+		}
+	}
+
+	/**
+	 * Fills a rectangle of pixels, clipped to a range of pixel rows
+	 */
+	private static void fillRect(int[] pixels, int offset, int scanline, int clipTop, int clipBottom, int rgb,
+			int x, int y, int width, int height) {
+		if (width <= 0) {
+			return;
+		}
+
+		int top = Math.max(y, clipTop), bottom = Math.min(y + height, clipBottom);
+		for (int py = top; py < bottom; py++) {
+			int rowStart = offset + py * scanline + x;
+			fill(pixels, rowStart, rowStart + width, rgb);
+		}
+	}
+
+	private static void fill(int[] pixels, int from, int to, int rgb) {
+		for (int i = from; i < to; i++) {
+			pixels[i] = rgb;
+		}
+	}
+
+	/**
+	 * Draws the tile rows in [fromRow, toRow), splitting the range in half until it
+	 * covers few enough pixels to draw directly.
+	 */
+	private class BandTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final GeneratedMap map;
+		private final int[] pixels;
+		private final int offset, scanline;
+		private final int fromRow, toRow;
+
+		private BandTask(GeneratedMap map, int[] pixels, int offset, int scanline, int fromRow, int toRow) {
+			this.map = map;
+			this.pixels = pixels;
+			this.offset = offset;
+			this.scanline = scanline;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+		}
+
+		@Override
+		protected void compute() {
+			long bandPixels = (long) (toRow - fromRow) * tileHeight * getImageWidth(map);
+			if (toRow - fromRow <= 1 || bandPixels <= BAND_PIXELS) {
+				renderBand(map, pixels, offset, scanline, fromRow, toRow);
+
+			} else {
+				int mid = (fromRow + toRow) >>> 1;
+				invokeAll(new BandTask(map, pixels, offset, scanline, fromRow, mid),
+						new BandTask(map, pixels, offset, scanline, mid, toRow));
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package procedural_dungeon_gen;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily generates the maps of a range of seeds that pass a MapFilter, one seed
+ * at a time as they are consumed. Each map is generated with
+ * generateMap(MapFilter), so a candidate is dropped at the first phase whose
+ * checks it fails instead of after a full generation. The map of a seed is
+ * always the same, so the maps produced for a range only depend on the
+ * parameters and the filter.
+ *
+ * Splits by halving its remaining seed range, which lets a parallel stream
+ * generate maps on every core. The number of maps is not known ahead of time,
+ * so the estimated size is the number of seeds left.
+ */
+public final class MapSeedSpliterator implements Spliterator<GeneratedMap> {
+
+	private final MapParameters params;
+	private final MapFilter filter;
+
+	// next seed to generate, and one past the last seed of the range
+	private long nextSeed;
+	private final long endSeed;
+
+	/**
+	 * Creates a spliterator over the seeds in [fromSeed, toSeed)
+	 *
+	 * @param params   Parameters of every map
+	 * @param fromSeed First seed of the range
+	 * @param toSeed   One past the last seed of the range
+	 * @param filter   Checks a map must pass to be produced
+	 */
+	public MapSeedSpliterator(MapParameters params, long fromSeed, long toSeed, MapFilter filter) {
+		// the second check catches ranges too long to count in a long
+		if (toSeed < fromSeed || toSeed - fromSeed < 0) {
+			throw new IllegalArgumentException("Invalid seed range [" + fromSeed + ", " + toSeed + ")");
+		}
+
+		this.params = params;
+		this.filter = filter;
+		this.nextSeed = fromSeed;
+		this.endSeed = toSeed;
+	}
+
+	/**
+	 * Creates a stream of the maps of a range of seeds that pass a filter. Maps are
+	 * produced in seed order, unless the stream is parallel and unordered.
+	 *
+	 * @param params   Parameters of every map
+	 * @param fromSeed First seed of the range
+	 * @param toSeed   One past the last seed of the range
+	 * @param filter   Checks a map must pass to be produced
+	 * @param parallel Whether the stream generates maps on several cores
+	 * @return A lazy stream of generated maps
+	 */
+	public static Stream<GeneratedMap> stream(MapParameters params, long fromSeed, long toSeed, MapFilter filter,
+			boolean parallel) {
+		return StreamSupport.stream(new MapSeedSpliterator(params, fromSeed, toSeed, filter), parallel);
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super GeneratedMap> action) {
+		while (nextSeed < endSeed) {
+			GeneratedMap map = params.createMap(nextSeed++);
+			if (map.generateMap(filter)) {
+				action.accept(map);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Spliterator<GeneratedMap> trySplit() {
+		long remaining = endSeed - nextSeed;
+		if (remaining < 2) {
+			return null;
+		}
+
+		// hands the first half of the seeds to the new spliterator, keeping the order
+		long mid = nextSeed + remaining / 2;
+		MapSeedSpliterator prefix = new MapSeedSpliterator(params, nextSeed, mid, filter);
+		nextSeed = mid;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return endSeed - nextSeed;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL | IMMUTABLE;
+	}
+}
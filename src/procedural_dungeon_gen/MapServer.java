@@ -0,0 +1,385 @@
+package procedural_dungeon_gen;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Small HTTP server that generates maps on request, so several processes on one
+ * machine can share the cost of generating the same maps. It only listens on
+ * the loopback address by default and needs nothing but the JDK.
+ *
+ * A map is requested with GET /map and the query parameters seed, width and
+ * height, and optionally percentEmpty, maxEmptyWidth, maxEmptyHeight,
+ * maxRoomWidth and maxRoomHeight, which default to the values of
+ * MapParameters(int, int) and are clamped to the size of the map. The response
+ * is the map encoded by MapCodec.
+ *
+ * Each request is handled on its own virtual thread when the JVM has them, or
+ * on a cached thread pool otherwise. Identical requests that arrive while their
+ * map is being generated wait for that generation instead of starting their
+ * own, and the encodings of the most recently requested maps are kept in a
+ * cache. At most one map per core is generated at a time, so thousands of
+ * waiting requests cost little more than their connections.
+ */
+public class MapServer {
+
+	// max width and height of a requested map. Maps this size fit in a few
+	// megabytes, and the budget stops those that would take too long, such as
+	// crowded maps restarting the placement of their empty cells
+	private static final int MAX_MAP_SIDE = 1024;
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	// limits every generation, or null to let generations run to completion
+	private final GenerationBudget budget;
+
+	// futures of the maps being generated, which identical requests wait for
+	private final Map<MapKey, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+	// encodings of recently requested maps, least recently used first
+	private final Map<MapKey, byte[]> cache;
+
+	// permits to generate a map, one per core
+	private final Semaphore generators = new Semaphore(Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Creates a server on a loopback port. Generations that take longer than ten
+	 * seconds fail instead of tying up a core.
+	 *
+	 * @param port      Port to listen on, or 0 for any free port
+	 * @param cacheSize Max number of encoded maps kept in the cache
+	 * @throws IOException If the port cannot be bound
+	 */
+	public MapServer(int port, int cacheSize) throws IOException {
+		this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), cacheSize,
+				new GenerationBudget(10, TimeUnit.SECONDS, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+						GenerationBudget.Fallback.FAIL));
+	}
+
+	/**
+	 * Creates a server. Budgets should use the FAIL policy, as the layouts of
+	 * best-effort generations depend on timing and would be cached.
+	 *
+	 * @param address   Address to listen on
+	 * @param cacheSize Max number of encoded maps kept in the cache
+	 * @param budget    Limits of every generation, or null to let generations run
+	 *                  to completion
+	 * @throws IOException If the address cannot be bound
+	 */
+	public MapServer(InetSocketAddress address, final int cacheSize, GenerationBudget budget) throws IOException {
+		if (cacheSize < 0) {
+			throw new IllegalArgumentException("Cache size must not be negative");
+		}
+
+		this.budget = budget;
+		this.cache = new LinkedHashMap<MapKey, byte[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<MapKey, byte[]> eldest) {
+				return size() > cacheSize;
+			}
+		};
+
+		this.executor = newRequestExecutor();
+		this.server = HttpServer.create(address, 1024);
+		server.createContext("/map", this::handleMapRequest);
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * Starts accepting requests
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests and interrupts the ones being handled
+	 */
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @return The port the server listens on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Gets the encoding of a map, from the cache, from a generation already in
+	 * progress for the same key, or by generating it
+	 *
+	 * @param key Parameters and seed of the map
+	 * @return The map encoded by MapCodec, which is shared and must not be changed
+	 * @throws MapGenerationException If the generation ran out of budget or was
+	 *                                interrupted
+	 */
+	public byte[] getEncodedMap(MapKey key) {
+		byte[] encoded = getCached(key);
+		if (encoded != null) {
+			return encoded;
+		}
+
+		CompletableFuture<byte[]> future = new CompletableFuture<>();
+		CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			try {
+				return existing.join();
+			} catch (CompletionException e) {
+				throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+			}
+		}
+
+		try {
+			// the map may have been cached between the lookup and claiming the key
+			encoded = getCached(key);
+			if (encoded == null) {
+				encoded = generate(key);
+				synchronized (cache) {
+					cache.put(key, encoded);
+				}
+			}
+			future.complete(encoded);
+			return encoded;
+		} catch (RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			// removed after caching, so later requests find the map in one or the other
+			inFlight.remove(key, future);
+		}
+	}
+
+	private byte[] getCached(MapKey key) {
+		synchronized (cache) {
+			return cache.get(key);
+		}
+	}
+
+	/**
+	 * Generates and encodes a map once a core is free
+	 */
+	private byte[] generate(MapKey key) {
+		try {
+			generators.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MapGenerationException(MapGenerationException.Reason.INTERRUPTED, GenerationPhase.EMPTY_CELLS);
+		}
+
+		try {
+			GeneratedMap map = key.createMap();
+			if (budget == null) {
+				map.generateMap();
+			} else {
+				map.generateMap(budget);
+			}
+
+			byte[] encoded = new byte[MapCodec.encodedSize(map)];
+			MapCodec.encode(map, ByteBuffer.wrap(encoded));
+			return encoded;
+		} finally {
+			generators.release();
+		}
+	}
+
+	private void handleMapRequest(HttpExchange exchange) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				exchange.getResponseHeaders().set("Allow", "GET");
+				sendText(exchange, 405, "Only GET is supported");
+				return;
+			}
+
+			MapKey key;
+			try {
+				key = parseKey(exchange.getRequestURI().getRawQuery());
+			} catch (IllegalArgumentException e) {
+				sendText(exchange, 400, e.getMessage());
+				return;
+			}
+
+			byte[] encoded;
+			try {
+				encoded = getEncodedMap(key);
+			} catch (MapGenerationException e) {
+				sendText(exchange, 503, e.getMessage());
+				return;
+			} catch (RuntimeException | Error e) {
+				// such as running out of memory, which would otherwise close the
+				// connection without a response
+				sendText(exchange, 500, "Map generation failed");
+				return;
+			}
+
+			exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+			exchange.sendResponseHeaders(200, encoded.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(encoded);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * Reads the map key of a request from its query string
+	 *
+	 * @param query The raw query string, or null if there is none
+	 * @return The requested parameters and seed
+	 * @throws IllegalArgumentException If a parameter is missing, malformed or out
+	 *                                  of range
+	 */
+	static MapKey parseKey(String query) {
+		Map<String, String> values = new HashMap<>();
+		if (query != null) {
+			for (String pair : query.split("&")) {
+				int split = pair.indexOf('=');
+				if (split > 0) {
+					values.put(decode(pair.substring(0, split)), decode(pair.substring(split + 1)));
+				}
+			}
+		}
+
+		long seed;
+		try {
+			seed = Long.parseLong(required(values, "seed"));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("seed must be a long");
+		}
+
+		MapParameters defaults = new MapParameters(1, 1);
+		int width = intValue(values, "width", -1, 1, MAX_MAP_SIDE);
+		int height = intValue(values, "height", -1, 1, MAX_MAP_SIDE);
+
+		// rooms and empty rectangles never grow past the map, and the room size
+		// distribution allocates a weight per size up to the max, so larger values
+		// are clamped to the map's size
+		int maxEmptyWidth = Math.min(
+				intValue(values, "maxEmptyWidth", defaults.getMaxEmptyWidth(), 1, Integer.MAX_VALUE), width);
+		int maxEmptyHeight = Math.min(
+				intValue(values, "maxEmptyHeight", defaults.getMaxEmptyHeight(), 1, Integer.MAX_VALUE), height);
+		int maxRoomWidth = Math.min(
+				intValue(values, "maxRoomWidth", defaults.getMaxRoomWidth(), 1, Integer.MAX_VALUE), width);
+		int maxRoomHeight = Math.min(
+				intValue(values, "maxRoomHeight", defaults.getMaxRoomHeight(), 1, Integer.MAX_VALUE), height);
+
+		float percentEmpty = defaults.getPercentEmpty();
+		if (values.containsKey("percentEmpty")) {
+			try {
+				percentEmpty = Float.parseFloat(values.get("percentEmpty"));
+			} catch (NumberFormatException e) {
+				percentEmpty = Float.NaN;
+			}
+			if (!(percentEmpty >= 0 && percentEmpty < 1)) {
+				throw new IllegalArgumentException("percentEmpty must be at least 0 and less than 1");
+			}
+		}
+
+		return new MapKey(new MapParameters(width, height, percentEmpty, maxEmptyWidth, maxEmptyHeight,
+				maxRoomWidth, maxRoomHeight), seed);
+	}
+
+	private static String required(Map<String, String> values, String name) {
+		String value = values.get(name);
+		if (value == null) {
+			throw new IllegalArgumentException(name + " is required");
+		}
+		return value;
+	}
+
+	/**
+	 * @param defaultValue Value of a missing parameter, or -1 if it is required
+	 */
+	private static int intValue(Map<String, String> values, String name, int defaultValue, int min, int max) {
+		if (defaultValue < 0) {
+			required(values, name);
+		} else if (!values.containsKey(name)) {
+			return defaultValue;
+		}
+
+		int value;
+		try {
+			value = Integer.parseInt(values.get(name));
+		} catch (NumberFormatException e) {
+			value = min - 1;
+		}
+		if (value < min || value > max) {
+			throw new IllegalArgumentException(name + " must be an integer from " + min + " to " + max);
+		}
+		return value;
+	}
+
+	private static String decode(String s) {
+		try {
+			return URLDecoder.decode(s, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// every JVM supports UTF-8
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Creates the executor requests are handled on, which starts a virtual thread
+	 * per request when the JVM supports them. Looked up by reflection so the
+	 * generator still runs on older JVMs.
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Runs a server until the process is stopped
+	 *
+	 * @param args Port to listen on and max number of cached maps, which default to
+	 *             8080 and 1024
+	 * @throws IOException If the port cannot be bound
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+		int cacheSize = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+
+		MapServer server = new MapServer(port, cacheSize);
+		server.start();
+		System.out.println("Serving maps on http://localhost:" + server.getPort() + "/map");
+	}
+}
@@ -0,0 +1,557 @@
+package procedural_dungeon_gen;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import procedural_dungeon_gen.Room.Direction;
+
+/**
+ * On-disk store of generated maps. A store file holds any number of maps in a
+ * fixed, versioned little-endian layout and is opened with FileChannel.map, so
+ * maps can be read in place through a MapView without parsing the file or
+ * allocating an object per room, or loaded back into a GeneratedMap.
+ *
+ * File layout:
+ *
+ * <pre>
+ * header   magic, version, map count, reserved (int), index offset (long)
+ * blocks   one per map:
+ *            width, height, room count, door count, start room, goal room,
+ *            2 reserved ints
+ *            rooms: top left x, top left y, bottom right x, bottom right y,
+ *                   color (ARGB), index of first door (6 ints each)
+ *            doors: connecting room, x, y, direction (4 ints each)
+ *            cells: width * height bytes, padded to a multiple of 8
+ * index    one entry per map, sorted by seed:
+ *            seed (long), width, height, percentEmpty (float), max empty width,
+ *            max empty height, max room width, max room height, reserved (ints),
+ *            block offset (long)
+ * </pre>
+ */
+public class MapStore implements Closeable {
+
+	static final int MAGIC = 0x4D474450; // "PDGM" in little-endian
+	static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 24;
+	private static final int INDEX_ENTRY_SIZE = 48;
+	private static final int BLOCK_HEADER_SIZE = 32;
+	private static final int ROOM_SIZE = 24;
+	private static final int DOOR_SIZE = 16;
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int mapCount;
+	private final int indexOffset;
+
+	private MapStore(FileChannel channel, ByteBuffer buffer) throws IOException {
+		this.channel = channel;
+		this.buffer = buffer;
+
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a map store file");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported map store version " + buffer.getInt(4));
+		}
+
+		this.mapCount = buffer.getInt(8);
+		long offset = buffer.getLong(16);
+		if (mapCount < 0 || offset < HEADER_SIZE || offset > buffer.limit()
+				|| offset + (long) mapCount * INDEX_ENTRY_SIZE > buffer.limit()) {
+			throw new IOException("Corrupt map store index");
+		}
+		this.indexOffset = (int) offset;
+	}
+
+	/**
+	 * Opens a store file by mapping it into memory
+	 *
+	 * @param path Path of the store file
+	 * @return The opened store, which must be closed when no longer needed
+	 * @throws IOException If the file cannot be read or is not a valid store
+	 */
+	public static MapStore open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Map store files larger than 2GB are not supported");
+			}
+
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			return new MapStore(channel, buffer);
+
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes maps to a new store file, replacing any existing file
+	 *
+	 * @param path Path of the store file
+	 * @param maps Generated maps to store
+	 * @throws IOException If the file cannot be written
+	 */
+	public static void write(Path path, List<GeneratedMap> maps) throws IOException {
+		try (Writer writer = new Writer(path)) {
+			for (GeneratedMap map : maps) {
+				writer.add(map);
+			}
+		}
+	}
+
+	public int getMapCount() {
+		return mapCount;
+	}
+
+	/**
+	 * Finds a map by the seed and parameters it was generated with, using a binary
+	 * search over the index
+	 *
+	 * @param params Parameters of the map
+	 * @param seed   Seed of the map
+	 * @return The index of the map, or -1 if the store does not hold it
+	 */
+	public int find(MapParameters params, long seed) {
+		int low = 0, high = mapCount - 1;
+
+		// finds the first entry with the seed
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (buffer.getLong(indexEntry(mid)) < seed) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		// stored parameters are read back limited to the map size, so the ones looked
+		// for are compared the same way
+		MapParameters limited = params.limitedToMap();
+		for (int map = low; map < mapCount && buffer.getLong(indexEntry(map)) == seed; map++) {
+			if (getParameters(map).equals(limited)) {
+				return map;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @param map Index of the map in the store
+	 * @return The seed the map was generated with
+	 */
+	public long getSeed(int map) {
+		return buffer.getLong(indexEntry(map));
+	}
+
+	/**
+	 * @param map Index of the map in the store
+	 * @return The parameters the map was generated with, with the max empty and
+	 *         room sizes limited to the size of the map
+	 */
+	public MapParameters getParameters(int map) {
+		int entry = indexEntry(map);
+		return new MapParameters(buffer.getInt(entry + 8), buffer.getInt(entry + 12), buffer.getFloat(entry + 16),
+				buffer.getInt(entry + 20), buffer.getInt(entry + 24), buffer.getInt(entry + 28),
+				buffer.getInt(entry + 32)).limitedToMap();
+	}
+
+	/**
+	 * Gets a view that reads a map directly from the mapped file. The sizes of the
+	 * map's block are checked against the file, so reading a valid room, doorway
+	 * or cell never goes past its end.
+	 *
+	 * @param map Index of the map in the store
+	 * @return A view of the stored map
+	 * @throws IOException If the map's block does not fit in the file
+	 */
+	public MapView view(int map) throws IOException {
+		long block = buffer.getLong(indexEntry(map) + 40);
+		if (block < HEADER_SIZE || block > buffer.limit() - BLOCK_HEADER_SIZE) {
+			throw new IOException("Corrupt block offset of map " + map);
+		}
+		return new MapView(buffer, (int) block);
+	}
+
+	/**
+	 * Loads a stored map back into a GeneratedMap, rebuilding its rooms and
+	 * doorways
+	 *
+	 * @param map Index of the map in the store
+	 * @return A new GeneratedMap with the stored layout
+	 * @throws IOException If the stored map is truncated or corrupt
+	 */
+	public GeneratedMap load(int map) throws IOException {
+		MapView view = view(map);
+		MapParameters params = getParameters(map);
+		int width = view.getWidth(), height = view.getHeight(), roomCount = view.getRoomCount();
+		if (params.getMapWidth() != width || params.getMapHeight() != height) {
+			throw new IOException("Size of map " + map + " does not match its index entry");
+		}
+		if (params.getMaxRoomWidth() < 1 || params.getMaxRoomHeight() < 1) {
+			throw new IOException("Invalid room size limits of map " + map);
+		}
+
+		List<Room> rooms = new ArrayList<>(roomCount);
+		for (int r = 0; r < roomCount; r++) {
+			int left = view.getRoomLeft(r), top = view.getRoomTop(r);
+			int right = view.getRoomRight(r), bottom = view.getRoomBottom(r);
+			if (left < 0 || top < 0 || right < left || bottom < top || right >= width || bottom >= height) {
+				throw new IOException("Invalid room " + r + " of map " + map);
+			}
+			rooms.add(new Room(r, new Point(left, top), new Point(right, bottom),
+					new Color(view.getRoomColor(r), true)));
+		}
+
+		for (int r = 0; r < roomCount; r++) {
+			int start = view.getDoorStart(r), end = view.getDoorEnd(r);
+			if (start < 0 || start > end || end > view.getDoorCount()) {
+				throw new IOException("Invalid doorways of room " + r + " of map " + map);
+			}
+
+			for (int door = start; door < end; door++) {
+				int connecting = view.getDoorRoom(door), direction = view.getDoorDirectionOrdinal(door);
+				if (connecting < 0 || connecting >= roomCount || direction < 0 || direction >= DIRECTIONS.length) {
+					throw new IOException("Invalid doorway " + door + " of map " + map);
+				}
+
+				// entrances of maps saved before the vertical doorway fix are moved into
+				// their room once here
+				Point cell = GeneratedMap.savedDoorwayCell(rooms.get(r),
+						new Point(view.getDoorX(door), view.getDoorY(door)), DIRECTIONS[direction]);
+				if (cell == null) {
+					throw new IOException("Invalid doorway " + door + " of map " + map);
+				}
+				rooms.get(r).addConnectedRoom(rooms.get(connecting), cell, DIRECTIONS[direction]);
+			}
+		}
+
+		int startRoom = view.getStartRoom(), goalRoom = view.getGoalRoom();
+		if (startRoom < -1 || startRoom >= roomCount || goalRoom < -1 || goalRoom >= roomCount) {
+			throw new IOException("Invalid start or goal room of map " + map);
+		}
+
+		// the view checked that the cells fit in the file, which bounds this array
+		byte[] cells = new byte[width * height];
+		view.copyCells(cells);
+
+		GeneratedMap generatedMap = params.createMap(getSeed(map));
+		generatedMap.restore(cells, rooms, startRoom, goalRoom);
+		return generatedMap;
+	}
+
+	/**
+	 * Closes the file channel. The mapped memory itself is released once the store
+	 * and its views are no longer referenced.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private int indexEntry(int map) {
+		if (map < 0 || map >= mapCount) {
+			throw new IndexOutOfBoundsException("Map " + map + " of " + mapCount);
+		}
+		return indexOffset + map * INDEX_ENTRY_SIZE;
+	}
+
+	/**
+	 * Read-only view of one map in a store, reading every value directly from the
+	 * mapped file. Rooms are identified by their ID, and the doorways of room r are
+	 * numbered from getDoorStart(r) up to but not including getDoorEnd(r). Rooms,
+	 * doorways and cells outside the map throw IndexOutOfBoundsException.
+	 */
+	public static final class MapView {
+
+		private final ByteBuffer buffer;
+		private final int block;
+		private final int width, height, roomCount, doorCount;
+		private final int roomsOffset, doorsOffset, cellsOffset;
+
+		private MapView(ByteBuffer buffer, int block) throws IOException {
+			this.buffer = buffer;
+			this.block = block;
+			this.width = buffer.getInt(block);
+			this.height = buffer.getInt(block + 4);
+			this.roomCount = buffer.getInt(block + 8);
+			this.doorCount = buffer.getInt(block + 12);
+
+			// sizes are summed as longs, so huge counts cannot wrap around to fit
+			long doors = (long) block + BLOCK_HEADER_SIZE + (long) roomCount * ROOM_SIZE;
+			long cells = doors + (long) doorCount * DOOR_SIZE;
+			if (width < 1 || height < 1 || roomCount < 0 || doorCount < 0
+					|| cells + (long) width * height > buffer.limit()) {
+				throw new IOException("Corrupt map block at " + block);
+			}
+
+			this.roomsOffset = block + BLOCK_HEADER_SIZE;
+			this.doorsOffset = (int) doors;
+			this.cellsOffset = (int) cells;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		public int getRoomCount() {
+			return roomCount;
+		}
+
+		/**
+		 * @return Total number of doorways, counting each side of a connection
+		 *         separately
+		 */
+		public int getDoorCount() {
+			return doorCount;
+		}
+
+		/**
+		 * @return ID of the start room, or -1 if there is none
+		 */
+		public int getStartRoom() {
+			return buffer.getInt(block + 16);
+		}
+
+		/**
+		 * @return ID of the goal room, or -1 if there is none
+		 */
+		public int getGoalRoom() {
+			return buffer.getInt(block + 20);
+		}
+
+		/**
+		 * @param x The x position of the cell
+		 * @param y The y position of the cell
+		 * @return The value of the cell, as stored by GeneratedMap
+		 */
+		public byte getCell(int x, int y) {
+			if (x < 0 || x >= width || y < 0 || y >= height) {
+				throw new IndexOutOfBoundsException("Cell " + x + "," + y + " of " + width + "x" + height);
+			}
+			return buffer.get(cellsOffset + y * width + x);
+		}
+
+		/**
+		 * Copies all cell values, stored row by row
+		 *
+		 * @param cells Array of at least width * height values
+		 */
+		public void copyCells(byte[] cells) {
+			ByteBuffer source = buffer.duplicate();
+			source.position(cellsOffset);
+			source.get(cells, 0, width * height);
+		}
+
+		public int getRoomLeft(int room) {
+			return buffer.getInt(roomEntry(room));
+		}
+
+		public int getRoomTop(int room) {
+			return buffer.getInt(roomEntry(room) + 4);
+		}
+
+		public int getRoomRight(int room) {
+			return buffer.getInt(roomEntry(room) + 8);
+		}
+
+		public int getRoomBottom(int room) {
+			return buffer.getInt(roomEntry(room) + 12);
+		}
+
+		/**
+		 * @param room ID of the room
+		 * @return The color of the room as an ARGB value
+		 */
+		public int getRoomColor(int room) {
+			return buffer.getInt(roomEntry(room) + 16);
+		}
+
+		public int getDoorStart(int room) {
+			return buffer.getInt(roomEntry(room) + 20);
+		}
+
+		public int getDoorEnd(int room) {
+			int entry = roomEntry(room);
+			return room + 1 < roomCount ? buffer.getInt(entry + ROOM_SIZE + 20) : doorCount;
+		}
+
+		/**
+		 * @param door Index of the doorway
+		 * @return ID of the room the doorway leads to
+		 */
+		public int getDoorRoom(int door) {
+			return buffer.getInt(doorEntry(door));
+		}
+
+		public int getDoorX(int door) {
+			return buffer.getInt(doorEntry(door) + 4);
+		}
+
+		public int getDoorY(int door) {
+			return buffer.getInt(doorEntry(door) + 8);
+		}
+
+		public Direction getDoorDirection(int door) {
+			return DIRECTIONS[getDoorDirectionOrdinal(door)];
+		}
+
+		private int getDoorDirectionOrdinal(int door) {
+			return buffer.getInt(doorEntry(door) + 12);
+		}
+
+		private int roomEntry(int room) {
+			if (room < 0 || room >= roomCount) {
+				throw new IndexOutOfBoundsException("Room " + room + " of " + roomCount);
+			}
+			return roomsOffset + room * ROOM_SIZE;
+		}
+
+		private int doorEntry(int door) {
+			if (door < 0 || door >= doorCount) {
+				throw new IndexOutOfBoundsException("Doorway " + door + " of " + doorCount);
+			}
+			return doorsOffset + door * DOOR_SIZE;
+		}
+	}
+
+	/**
+	 * Writes maps to a store file one at a time. Map blocks are written as they are
+	 * added, and the index and header are written when the writer is closed.
+	 */
+	public static class Writer implements Closeable {
+
+		private final FileChannel channel;
+		private final List<long[]> entries = new ArrayList<>();
+		private final List<MapParameters> entryParams = new ArrayList<>();
+		private long position = HEADER_SIZE;
+
+		/**
+		 * Creates a new store file, replacing any existing file
+		 *
+		 * @param path Path of the store file
+		 * @throws IOException If the file cannot be created
+		 */
+		public Writer(Path path) throws IOException {
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		/**
+		 * Writes a generated map to the store
+		 *
+		 * @param map The generated map
+		 * @throws IOException If the map cannot be written
+		 */
+		public void add(GeneratedMap map) throws IOException {
+			List<Room> rooms = map.getRooms();
+			int doorCount = 0;
+			for (Room room : rooms) {
+				doorCount += room.getDoors().size();
+			}
+
+			int cellCount = map.getMapWidth() * map.getMapHeight();
+			long blockSize = BLOCK_HEADER_SIZE + (long) rooms.size() * ROOM_SIZE + (long) doorCount * DOOR_SIZE
+					+ ((cellCount + 7) & ~7);
+			if (position + blockSize > Integer.MAX_VALUE) {
+				throw new IOException("Map store files larger than 2GB are not supported");
+			}
+
+			ByteBuffer block = ByteBuffer.allocate((int) blockSize).order(ByteOrder.LITTLE_ENDIAN);
+			block.putInt(map.getMapWidth()).putInt(map.getMapHeight()).putInt(rooms.size()).putInt(doorCount);
+			block.putInt(map.getStartRoom() == null ? -1 : map.getStartRoom().getId());
+			block.putInt(map.getGoalRoom() == null ? -1 : map.getGoalRoom().getId());
+			block.putInt(0).putInt(0);
+
+			int doorStart = 0;
+			for (Room room : rooms) {
+				Point topLeft = room.getTopLeftPos(), botRight = room.getBotRightPos();
+				block.putInt(topLeft.x).putInt(topLeft.y).putInt(botRight.x).putInt(botRight.y);
+				block.putInt(room.getColor().getRGB()).putInt(doorStart);
+				doorStart += room.getDoors().size();
+			}
+
+			for (Room room : rooms) {
+				for (Room.Doorway door : room.getDoors()) {
+					Point entrance = door.getEntrance();
+					block.putInt(door.getConnectingRoom().getId()).putInt(entrance.x).putInt(entrance.y)
+							.putInt(door.directionFacing().ordinal());
+				}
+			}
+
+			block.put(map.getCells(), 0, cellCount);
+			block.clear();
+			writeFully(block, position);
+
+			MapParameters params = map.getParameters();
+			entries.add(new long[] { map.getSeed(), position });
+			entryParams.add(params);
+			position += blockSize;
+		}
+
+		/**
+		 * Writes the index and header, then closes the file
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				// sorts the index by seed so maps can be found with a binary search
+				Integer[] order = new Integer[entries.size()];
+				for (int i = 0; i < order.length; i++) {
+					order[i] = i;
+				}
+				Arrays.sort(order, Comparator.comparingLong(i -> entries.get(i)[0]));
+
+				ByteBuffer index = ByteBuffer.allocate(order.length * INDEX_ENTRY_SIZE)
+						.order(ByteOrder.LITTLE_ENDIAN);
+				for (int i : order) {
+					MapParameters params = entryParams.get(i);
+					index.putLong(entries.get(i)[0]);
+					index.putInt(params.getMapWidth()).putInt(params.getMapHeight());
+					index.putFloat(params.getPercentEmpty());
+					index.putInt(params.getMaxEmptyWidth()).putInt(params.getMaxEmptyHeight());
+					index.putInt(params.getMaxRoomWidth()).putInt(params.getMaxRoomHeight());
+					index.putInt(0);
+					index.putLong(entries.get(i)[1]);
+				}
+				index.flip();
+				writeFully(index, position);
+
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(MAGIC).putInt(VERSION).putInt(order.length).putInt(0).putLong(position);
+				header.flip();
+				writeFully(header, 0);
+
+			} finally {
+				channel.close();
+			}
+		}
+
+		private void writeFully(ByteBuffer data, long offset) throws IOException {
+			while (data.hasRemaining()) {
+				offset += channel.write(data, offset);
+			}
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package procedural_dungeon_gen;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * Draws generated maps as text, one character per cell and one line per row of
+ * cells. Each row is built in a single buffer and written with one call, so
+ * even very large maps are written quickly, and a region of a map can be
+ * written without building the text of the whole map.
+ *
+ * By default cells are drawn the same way as GeneratedMap.drawInConsole(): '~'
+ * for unprocessed cells, 'O' for processed cells, 'X' for empty cells and 'R'
+ * for room cells. Room cells can instead show their room's ID, and the cells
+ * holding a doorway's entrance can be marked with their own glyph.
+ */
+public class MapTextRenderer {
+
+	private char unprocessedGlyph = '~', processedGlyph = 'O', emptyGlyph = 'X', roomGlyph = 'R';
+
+	// glyphs room cells are drawn with by room ID, or null to use roomGlyph
+	private String roomIdGlyphs;
+
+	// glyph of cells holding a doorway's entrance, or 0 to not mark doorways
+	private char doorGlyph;
+
+	private String lineSeparator = System.lineSeparator();
+
+	/**
+	 * Sets the glyph each kind of cell is drawn with
+	 *
+	 * @param unprocessed Glyph of unprocessed cells
+	 * @param processed   Glyph of processed cells
+	 * @param empty       Glyph of empty cells
+	 * @param room        Glyph of room cells
+	 */
+	public void setGlyphs(char unprocessed, char processed, char empty, char room) {
+		this.unprocessedGlyph = unprocessed;
+		this.processedGlyph = processed;
+		this.emptyGlyph = empty;
+		this.roomGlyph = room;
+	}
+
+	/**
+	 * Makes room cells show the ID of their room. A room with ID n is drawn with
+	 * the glyph at index n % glyphs.length(), so with the default of the 36
+	 * digits and letters, rooms next to each other almost always look different.
+	 *
+	 * @param glyphs Glyphs of the room IDs, or null to draw all room cells with the
+	 *               room glyph
+	 */
+	public void setRoomIdGlyphs(String glyphs) {
+		if (glyphs != null && glyphs.isEmpty()) {
+			throw new IllegalArgumentException("Room ID glyphs must not be empty");
+		}
+		this.roomIdGlyphs = glyphs;
+	}
+
+	/**
+	 * Makes room cells show the last digit of their room's ID in base 36
+	 */
+	public void showRoomIds() {
+		setRoomIdGlyphs("0123456789abcdefghijklmnopqrstuvwxyz");
+	}
+
+	/**
+	 * Sets the glyph of cells holding the entrance of a doorway, which is drawn in
+	 * place of the cell's own glyph
+	 *
+	 * @param glyph Glyph of doorway cells, or 0 to not mark doorways
+	 */
+	public void setDoorGlyph(char glyph) {
+		this.doorGlyph = glyph;
+	}
+
+	/**
+	 * @param lineSeparator Text written after each row, the system line separator
+	 *                      by default
+	 */
+	public void setLineSeparator(String lineSeparator) {
+		this.lineSeparator = lineSeparator;
+	}
+
+	/**
+	 * Writes a whole map
+	 *
+	 * @param map The generated map
+	 * @param out Destination of the text, such as a Writer, StringBuilder or
+	 *            PrintStream
+	 * @throws IOException If the text cannot be written
+	 */
+	public void render(GeneratedMap map, Appendable out) throws IOException {
+		render(map, 0, 0, map.getMapWidth(), map.getMapHeight(), out);
+	}
+
+	/**
+	 * Writes a whole map to a stream as UTF-8. The stream is flushed but not
+	 * closed.
+	 *
+	 * @param map The generated map
+	 * @param out Stream to write to
+	 * @throws IOException If the stream cannot be written
+	 */
+	public void render(GeneratedMap map, OutputStream out) throws IOException {
+		render(map, 0, 0, map.getMapWidth(), map.getMapHeight(), out, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a rectangular region of a map to a stream. The stream is flushed but
+	 * not closed.
+	 *
+	 * @param map     The generated map
+	 * @param x       The x position of the region's top left cell
+	 * @param y       The y position of the region's top left cell
+	 * @param width   Width of the region in cells
+	 * @param height  Height of the region in cells
+	 * @param out     Stream to write to
+	 * @param charset Encoding of the text
+	 * @throws IOException If the stream cannot be written
+	 */
+	public void render(GeneratedMap map, int x, int y, int width, int height, OutputStream out, Charset charset)
+			throws IOException {
+		Writer writer = new OutputStreamWriter(out, charset);
+		render(map, x, y, width, height, writer);
+		writer.flush();
+	}
+
+	/**
+	 * Writes a rectangular region of a map, one row at a time
+	 *
+	 * @param map    The generated map
+	 * @param x      The x position of the region's top left cell
+	 * @param y      The y position of the region's top left cell
+	 * @param width  Width of the region in cells
+	 * @param height Height of the region in cells
+	 * @param out    Destination of the text, such as a Writer, StringBuilder or
+	 *               PrintStream
+	 * @throws IOException If the text cannot be written
+	 */
+	public void render(GeneratedMap map, int x, int y, int width, int height, Appendable out) throws IOException {
+		if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > map.getMapWidth()
+				|| y + height > map.getMapHeight()) {
+			throw new IndexOutOfBoundsException("Region is outside the map");
+		}
+
+		BitSet doorCells = doorGlyph == 0 ? null : findDoorCells(map, x, y, width, height);
+		byte[] cells = map.getCells();
+		int mapWidth = map.getMapWidth();
+
+		// one row of glyphs followed by the line separator, reused for every row
+		char[] line = new char[width + lineSeparator.length()];
+		lineSeparator.getChars(0, lineSeparator.length(), line, width);
+		CharBuffer lineBuffer = CharBuffer.wrap(line);
+		Writer writer = out instanceof Writer ? (Writer) out : null;
+
+		for (int row = 0; row < height; row++) {
+			int cellRow = (y + row) * mapWidth + x;
+
+			for (int col = 0; col < width; col++) {
+				if (doorCells != null && doorCells.get(row * width + col)) {
+					line[col] = doorGlyph;
+				} else {
+					line[col] = glyph(map, cells[cellRow + col], x + col, y + row);
+				}
+			}
+
+			if (writer != null) {
+				writer.write(line, 0, line.length);
+			} else {
+				lineBuffer.clear();
+				out.append(lineBuffer);
+			}
+		}
+	}
+
+	private char glyph(GeneratedMap map, byte cell, int x, int y) {
+		switch (cell) {
+		case GeneratedMap.UNPROCESSED:
+			return unprocessedGlyph;
+		case GeneratedMap.PROCESSED:
+			return processedGlyph;
+		case GeneratedMap.EMPTY:
+			return emptyGlyph;
+		default:
+			if (roomIdGlyphs != null) {
+				Room room = map.getRoomAt(x, y);
+				if (room != null) {
+					return roomIdGlyphs.charAt(room.getId() % roomIdGlyphs.length());
+				}
+			}
+			return roomGlyph;
+		}
+	}
+
+	/**
+	 * Finds the cells of a region that hold the entrance of a doorway
+	 *
+	 * @return A set with bit row * width + col set for each doorway cell
+	 */
+	private static BitSet findDoorCells(GeneratedMap map, int x, int y, int width, int height) {
+		BitSet doorCells = new BitSet();
+		for (Room room : map.getRooms()) {
+			for (Room.Doorway door : room.getDoors()) {
+				int col = door.getEntrance().x - x, row = door.getEntrance().y - y;
+				if (col >= 0 && col < width && row >= 0 && row < height) {
+					doorCells.set(row * width + col);
+				}
+			}
+		}
+		return doorCells;
+	}
+}
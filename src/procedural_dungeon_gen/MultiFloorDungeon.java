@@ -0,0 +1,396 @@
+package procedural_dungeon_gen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A dungeon of several floors stacked on top of each other, each of which is a
+ * GeneratedMap of the same size, joined by staircases between neighboring
+ * floors. Every floor gets its own seed, split from the dungeon seed the same
+ * way MapBatchGenerator splits a batch seed, and the staircase cells are drawn
+ * from one more stream before any floor is generated. Staircase cells are
+ * reserved on both floors they join, so they always end up in rooms, and the
+ * floors are then generated and frozen in parallel, each on its own fork-join
+ * task. The dungeon is identical for the same seed no matter how many threads
+ * generate it.
+ *
+ * Every floor is connected, and neighboring floors share at least one
+ * staircase, so every room of the dungeon can be reached from every other one.
+ * Distances between rooms count both the doorways and the staircases passed
+ * through, and MultiFloorPathfinder finds cell paths between floors.
+ */
+public class MultiFloorDungeon {
+
+	// default number of staircases between each pair of neighboring floors
+	private static final int DEFAULT_STAIRS_PER_FLOOR = 2;
+
+	private final MapParameters params;
+	private final int floorCount;
+	private final long seed;
+	private final int stairsPerFloor;
+	private final ForkJoinPool pool;
+
+	private GeneratedMap[] floors;
+	private List<Staircase> staircases;
+
+	// rooms are numbered across floors, where room r of floor f is number
+	// roomOffsets[f] + r
+	private int[] roomOffsets;
+	private int[] roomFloors;
+
+	// staircases of each numbered room are at indices stairOffsets[room] to
+	// stairOffsets[room + 1] - 1, with the number of the room at the other end
+	private int[] stairOffsets;
+	private int[] stairRooms;
+	private int[] stairIndices;
+
+	// scratch buffers of findShortestDistance(), where a room counts as visited if
+	// its stamp equals the current stamp
+	private int[] queue;
+	private int[] stamps;
+	private int[] depths;
+	private int stamp;
+
+	/**
+	 * Creates a dungeon with two staircases between neighboring floors, generated
+	 * on the common fork-join pool
+	 *
+	 * @param params     Parameters of every floor
+	 * @param floorCount Number of floors
+	 * @param seed       Seed of the dungeon
+	 */
+	public MultiFloorDungeon(MapParameters params, int floorCount, long seed) {
+		this(params, floorCount, seed, DEFAULT_STAIRS_PER_FLOOR, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a new dungeon. No floors are generated until generate() is called.
+	 *
+	 * @param params         Parameters of every floor
+	 * @param floorCount     Number of floors, where all floors together hold at
+	 *                       most Integer.MAX_VALUE cells
+	 * @param seed           Seed of the dungeon
+	 * @param stairsPerFloor Number of staircases between each pair of neighboring
+	 *                       floors
+	 * @param pool           Pool that floors are generated on
+	 */
+	public MultiFloorDungeon(MapParameters params, int floorCount, long seed, int stairsPerFloor,
+			ForkJoinPool pool) {
+		if (floorCount < 1) {
+			throw new IllegalArgumentException("Dungeon must have at least one floor");
+		}
+		if (stairsPerFloor < 1) {
+			throw new IllegalArgumentException("Neighboring floors must share at least one staircase");
+		}
+		// a floor holds the staircases up and the staircases down on separate cells
+		if ((long) stairsPerFloor * 2 > (long) params.getMapWidth() * params.getMapHeight()) {
+			throw new IllegalArgumentException("Floors are too small for " + stairsPerFloor + " staircases");
+		}
+		// pathfinders number the cells of every floor together as ints
+		if ((long) floorCount * params.getMapWidth() * params.getMapHeight() > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Dungeon has too many cells across its floors");
+		}
+
+		this.params = params;
+		this.floorCount = floorCount;
+		this.seed = seed;
+		this.stairsPerFloor = stairsPerFloor;
+		this.pool = pool;
+	}
+
+	/**
+	 * Generates every floor and places the staircases between them
+	 */
+	public synchronized void generate() {
+		int mapWidth = params.getMapWidth(), mapHeight = params.getMapHeight();
+		long[] seeds = MapBatchGenerator.mapSeeds(seed, floorCount + 1);
+
+		GeneratedMap[] floors = new GeneratedMap[floorCount];
+		for (int f = 0; f < floorCount; f++) {
+			floors[f] = params.createMap(seeds[f]);
+		}
+
+		// picks the staircase cells, never putting two staircases on one cell of a
+		// floor, and reserves them on both of their floors
+		SplittableRandom stairRandom = new SplittableRandom(seeds[floorCount]);
+		int[] stairCells = new int[(floorCount - 1) * stairsPerFloor];
+		BitSet lowerCells = new BitSet(), upperCells = new BitSet();
+
+		for (int f = 0; f < floorCount - 1; f++) {
+			BitSet swap = lowerCells;
+			lowerCells = upperCells;
+			upperCells = swap;
+			upperCells.clear();
+
+			for (int i = 0; i < stairsPerFloor; i++) {
+				int cell;
+				do {
+					cell = stairRandom.nextInt(mapWidth * mapHeight);
+				} while (lowerCells.get(cell) || upperCells.get(cell));
+
+				lowerCells.set(cell);
+				upperCells.set(cell);
+				stairCells[f * stairsPerFloor + i] = cell;
+				floors[f].reserveCell(cell % mapWidth, cell / mapWidth);
+				floors[f + 1].reserveCell(cell % mapWidth, cell / mapWidth);
+			}
+		}
+
+		pool.invoke(new FloorTask(floors, 0, floorCount));
+
+		List<Staircase> staircases = new ArrayList<>(stairCells.length);
+		for (int s = 0; s < stairCells.length; s++) {
+			int f = s / stairsPerFloor, x = stairCells[s] % mapWidth, y = stairCells[s] / mapWidth;
+			staircases.add(new Staircase(f, x, y, floors[f].getRoomAt(x, y), floors[f + 1].getRoomAt(x, y)));
+		}
+
+		this.floors = floors;
+		this.staircases = Collections.unmodifiableList(staircases);
+		buildRoomLinks();
+	}
+
+	/**
+	 * Numbers the rooms across floors and lists the staircases of each room in
+	 * compressed sparse row form
+	 */
+	private void buildRoomLinks() {
+		roomOffsets = new int[floorCount + 1];
+		for (int f = 0; f < floorCount; f++) {
+			roomOffsets[f + 1] = roomOffsets[f] + floors[f].getRooms().size();
+		}
+
+		int roomCount = roomOffsets[floorCount];
+		roomFloors = new int[roomCount];
+		for (int f = 0; f < floorCount; f++) {
+			Arrays.fill(roomFloors, roomOffsets[f], roomOffsets[f + 1], f);
+		}
+
+		stairOffsets = new int[roomCount + 1];
+		for (Staircase stairs : staircases) {
+			stairOffsets[getRoomNumber(stairs.getLowerFloor(), stairs.getLowerRoom()) + 1]++;
+			stairOffsets[getRoomNumber(stairs.getUpperFloor(), stairs.getUpperRoom()) + 1]++;
+		}
+		for (int room = 0; room < roomCount; room++) {
+			stairOffsets[room + 1] += stairOffsets[room];
+		}
+
+		stairRooms = new int[staircases.size() * 2];
+		stairIndices = new int[staircases.size() * 2];
+		int[] next = Arrays.copyOf(stairOffsets, roomCount);
+		for (int s = 0; s < staircases.size(); s++) {
+			Staircase stairs = staircases.get(s);
+			int lower = getRoomNumber(stairs.getLowerFloor(), stairs.getLowerRoom());
+			int upper = getRoomNumber(stairs.getUpperFloor(), stairs.getUpperRoom());
+
+			stairRooms[next[lower]] = upper;
+			stairIndices[next[lower]++] = s;
+			stairRooms[next[upper]] = lower;
+			stairIndices[next[upper]++] = s;
+		}
+
+		queue = new int[roomCount];
+		stamps = new int[roomCount];
+		depths = new int[roomCount];
+		stamp = 0;
+	}
+
+	/**
+	 * Finds the number of doorways and staircases that must be passed through to
+	 * get from one room to another, which may be on different floors
+	 *
+	 * @param floor      Floor of the first room
+	 * @param room       A room of that floor
+	 * @param otherFloor Floor of the second room
+	 * @param otherRoom  A room of that floor
+	 * @return The distance between the rooms, or -1 if there is no path between
+	 *         them
+	 */
+	public synchronized int findShortestDistance(int floor, Room room, int otherFloor, Room otherRoom) {
+		int source = getRoomNumber(floor, room), target = getRoomNumber(otherFloor, otherRoom);
+		if (source == target) {
+			return 0;
+		}
+
+		if (++stamp == 0) {
+			Arrays.fill(stamps, 0);
+			stamp = 1;
+		}
+
+		int head = 0, tail = 0;
+		queue[tail++] = source;
+		stamps[source] = stamp;
+		depths[source] = 0;
+
+		while (head < tail) {
+			int current = queue[head++];
+			int f = roomFloors[current], offset = roomOffsets[f];
+			RoomGraph graph = floors[f].getRoomGraph();
+
+			for (int e = graph.getEdgeStart(current - offset); e < graph.getEdgeEnd(current - offset); e++) {
+				int next = offset + graph.getNeighbor(e);
+				if (stamps[next] != stamp) {
+					if (next == target) {
+						return depths[current] + 1;
+					}
+					stamps[next] = stamp;
+					depths[next] = depths[current] + 1;
+					queue[tail++] = next;
+				}
+			}
+
+			for (int e = stairOffsets[current]; e < stairOffsets[current + 1]; e++) {
+				int next = stairRooms[e];
+				if (stamps[next] != stamp) {
+					if (next == target) {
+						return depths[current] + 1;
+					}
+					stamps[next] = stamp;
+					depths[next] = depths[current] + 1;
+					queue[tail++] = next;
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Gets the number of a room across all floors, which is its ID plus the number
+	 * of rooms on the floors below it
+	 *
+	 * @param floor Floor of the room
+	 * @param room  A room of that floor
+	 * @return The number of the room
+	 */
+	public int getRoomNumber(int floor, Room room) {
+		checkGenerated();
+		if (floor < 0 || floor >= floorCount) {
+			throw new IllegalArgumentException("Floor " + floor + " does not exist");
+		}
+		return roomOffsets[floor] + room.getId();
+	}
+
+	private void checkGenerated() {
+		if (floors == null) {
+			throw new IllegalStateException("Dungeon has not been generated");
+		}
+	}
+
+	/**
+	 * @param floor Index of a floor, where floor 0 is the lowest
+	 * @return The generated and frozen map of the floor
+	 */
+	public GeneratedMap getFloor(int floor) {
+		checkGenerated();
+		return floors[floor];
+	}
+
+	/**
+	 * @return The generated and frozen maps of every floor, from the lowest up
+	 */
+	public List<GeneratedMap> getFloors() {
+		checkGenerated();
+		return Collections.unmodifiableList(Arrays.asList(floors));
+	}
+
+	/**
+	 * @return Every staircase, ordered by the floor they lead up from
+	 */
+	public List<Staircase> getStaircases() {
+		checkGenerated();
+		return staircases;
+	}
+
+	/**
+	 * @return Total number of rooms on all floors
+	 */
+	public int getRoomCount() {
+		checkGenerated();
+		return roomOffsets[floorCount];
+	}
+
+	public int getFloorCount() {
+		return floorCount;
+	}
+
+	public MapParameters getParameters() {
+		return params;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getStairsPerFloor() {
+		return stairsPerFloor;
+	}
+
+	/**
+	 * @param floor Index of a floor
+	 * @return Number of the floor's room with ID 0
+	 */
+	int getRoomOffset(int floor) {
+		return roomOffsets[floor];
+	}
+
+	/**
+	 * @param room Number of a room
+	 * @return Index of the first staircase entry of the room
+	 */
+	int getStairStart(int room) {
+		return stairOffsets[room];
+	}
+
+	/**
+	 * @param room Number of a room
+	 * @return One past the index of the last staircase entry of the room
+	 */
+	int getStairEnd(int room) {
+		return stairOffsets[room + 1];
+	}
+
+	/**
+	 * @param entry Index of a staircase entry
+	 * @return Index of the staircase in getStaircases()
+	 */
+	int getStairIndex(int entry) {
+		return stairIndices[entry];
+	}
+
+	/**
+	 * Generates and freezes the floors in the index range [from, to), splitting the
+	 * range in half until it holds a single floor. Floors take long enough to
+	 * generate that each is worth its own task.
+	 */
+	private static class FloorTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final GeneratedMap[] floors;
+		private final int from, to;
+
+		private FloorTask(GeneratedMap[] floors, int from, int to) {
+			this.floors = floors;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				floors[from].generateMap();
+				floors[from].freeze();
+
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new FloorTask(floors, from, mid), new FloorTask(floors, mid, to));
+			}
+		}
+	}
+}
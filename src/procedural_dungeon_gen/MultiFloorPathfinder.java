@@ -0,0 +1,265 @@
+package procedural_dungeon_gen;
+
+import java.util.List;
+
+/**
+ * Finds shortest cell paths between room cells of a MultiFloorDungeon, which
+ * may be on different floors. Works like RoomPathfinder, running an A* search
+ * over the portals of every floor's doorways, with both directions of each
+ * staircase added as two more portals: going up arrives on the staircase's cell
+ * of the upper floor and going down on its cell of the lower floor. Taking the
+ * stairs costs one step.
+ *
+ * The estimate of the remaining steps is the Manhattan distance to the goal
+ * cell plus the number of floors between, as every staircase crosses a single
+ * floor, so searches between floors stay consistent and only explore the
+ * floors they need.
+ *
+ * Cells of a path are written as (floor * mapHeight + y) * mapWidth + x. The
+ * search buffers are allocated once and reused by every query, so a pathfinder
+ * must not be shared between threads. Create one per thread; they can all share
+ * a generated dungeon.
+ */
+public final class MultiFloorPathfinder {
+
+	// results of findGoalNode() that are not nodes
+	private static final int NO_PATH = -1, SAME_ROOM = -2;
+
+	private final MultiFloorDungeon dungeon;
+	private final int mapWidth, mapHeight;
+	private final int floorCells;
+	private final GeneratedMap[] floors;
+	private final PortalGraph[] portals;
+
+	// nodes are the portals of every floor, numbered from portalOffsets[f] for
+	// floor f, followed by two nodes per staircase: 2s + stairNodes goes up
+	// staircase s and 2s + 1 + stairNodes goes down it
+	private final int[] portalOffsets;
+	private final int stairNodes;
+
+	// cell each node steps into, as (floor * mapHeight + y) * mapWidth + x, and the
+	// number of the room containing it
+	private final int[] arrivalCells;
+	private final int[] arrivalRooms;
+
+	// cell each node is taken from, in the same form
+	private final int[] departureCells;
+
+	// search over the nodes, where the cost of a node is the number of steps from
+	// the start cell to its arrival cell
+	private final PathSearch search;
+
+	/**
+	 * Creates a pathfinder over a generated dungeon. Must be created again after
+	 * the dungeon is generated again.
+	 *
+	 * @param dungeon The generated dungeon
+	 */
+	public MultiFloorPathfinder(MultiFloorDungeon dungeon) {
+		this.dungeon = dungeon;
+		this.mapWidth = dungeon.getParameters().getMapWidth();
+		this.mapHeight = dungeon.getParameters().getMapHeight();
+		this.floorCells = mapWidth * mapHeight;
+
+		int floorCount = dungeon.getFloorCount();
+		this.floors = dungeon.getFloors().toArray(new GeneratedMap[floorCount]);
+		this.portals = new PortalGraph[floorCount];
+		this.portalOffsets = new int[floorCount + 1];
+		for (int f = 0; f < floorCount; f++) {
+			portals[f] = floors[f].getPortalGraph();
+			portalOffsets[f + 1] = portalOffsets[f] + portals[f].getPortalCount();
+		}
+
+		List<Staircase> staircases = dungeon.getStaircases();
+		this.stairNodes = portalOffsets[floorCount];
+		int nodeCount = stairNodes + staircases.size() * 2;
+
+		this.arrivalCells = new int[nodeCount];
+		this.arrivalRooms = new int[nodeCount];
+		this.departureCells = new int[nodeCount];
+
+		for (int f = 0; f < floorCount; f++) {
+			RoomGraph graph = portals[f].getRoomGraph();
+			int cellOffset = f * floorCells;
+			for (int p = 0; p < portals[f].getPortalCount(); p++) {
+				int node = portalOffsets[f] + p;
+				arrivalCells[node] = cellOffset + portals[f].getOutsideCell(p);
+				arrivalRooms[node] = dungeon.getRoomOffset(f) + graph.getNeighbor(p);
+				departureCells[node] = cellOffset + portals[f].getInsideCell(p);
+			}
+		}
+
+		for (int s = 0; s < staircases.size(); s++) {
+			Staircase stairs = staircases.get(s);
+			int lowerCell = (stairs.getLowerFloor() * mapHeight + stairs.getY()) * mapWidth + stairs.getX();
+			int upperCell = lowerCell + floorCells;
+			int up = stairNodes + 2 * s, down = up + 1;
+
+			arrivalCells[up] = departureCells[down] = upperCell;
+			arrivalCells[down] = departureCells[up] = lowerCell;
+			arrivalRooms[up] = dungeon.getRoomNumber(stairs.getUpperFloor(), stairs.getUpperRoom());
+			arrivalRooms[down] = dungeon.getRoomNumber(stairs.getLowerFloor(), stairs.getLowerRoom());
+		}
+
+		this.search = new PathSearch(nodeCount);
+	}
+
+	/**
+	 * Finds the length of the shortest path between two cells
+	 *
+	 * @param fromFloor Floor of the start cell
+	 * @param fromX     The x position of the start cell
+	 * @param fromY     The y position of the start cell
+	 * @param toFloor   Floor of the goal cell
+	 * @param toX       The x position of the goal cell
+	 * @param toY       The y position of the goal cell
+	 * @return The number of steps of the shortest path, or -1 if either cell is not
+	 *         part of a room or the goal cannot be reached
+	 */
+	public int findDistance(int fromFloor, int fromX, int fromY, int toFloor, int toX, int toY) {
+		int goalNode = findGoalNode(fromFloor, fromX, fromY, toFloor, toX, toY);
+		if (goalNode == NO_PATH) {
+			return -1;
+		}
+		if (goalNode == SAME_ROOM) {
+			return Math.abs(toX - fromX) + Math.abs(toY - fromY);
+		}
+		return search.getCost(goalNode) + cellDistance(arrivalCells[goalNode], pack(toFloor, toX, toY));
+	}
+
+	/**
+	 * Finds the shortest path between two cells without allocating, writing its
+	 * cells as (floor * mapHeight + y) * mapWidth + x. If the array is too short,
+	 * only the first cells are written, so a caller can size it from the returned
+	 * length and try again.
+	 *
+	 * @param fromFloor Floor of the start cell
+	 * @param fromX     The x position of the start cell
+	 * @param fromY     The y position of the start cell
+	 * @param toFloor   Floor of the goal cell
+	 * @param toX       The x position of the goal cell
+	 * @param toY       The y position of the goal cell
+	 * @param cells     Filled with the cells of the path, including the start and
+	 *                  goal cells
+	 * @return The number of cells in the path, or -1 if either cell is not part of
+	 *         a room or the goal cannot be reached
+	 */
+	public int findPath(int fromFloor, int fromX, int fromY, int toFloor, int toX, int toY, int[] cells) {
+		int goalNode = findGoalNode(fromFloor, fromX, fromY, toFloor, toX, toY);
+		if (goalNode == NO_PATH) {
+			return -1;
+		}
+
+		int from = pack(fromFloor, fromX, fromY);
+		int length = PathSearch.put(cells, 0, from);
+
+		if (goalNode != SAME_ROOM) {
+			// the route lists the nodes from the goal back to the start
+			for (int i = search.listRoute(goalNode) - 1; i >= 0; i--) {
+				int node = search.getRouteNode(i);
+				length = PathSearch.walk(cells, length, from, departureCells[node], mapWidth);
+				from = arrivalCells[node];
+				length = PathSearch.put(cells, length, from);
+			}
+		}
+
+		return PathSearch.walk(cells, length, from, pack(toFloor, toX, toY), mapWidth);
+	}
+
+	/**
+	 * Runs an A* search over the portals and staircases from the start cell to the
+	 * goal cell
+	 *
+	 * @return The last node of the path, NO_PATH or SAME_ROOM
+	 */
+	private int findGoalNode(int fromFloor, int fromX, int fromY, int toFloor, int toX, int toY) {
+		if (!isInBounds(fromFloor, fromX, fromY) || !isInBounds(toFloor, toX, toY)) {
+			return NO_PATH;
+		}
+
+		Room startRoom = floors[fromFloor].getRoomAt(fromX, fromY);
+		Room goalRoom = floors[toFloor].getRoomAt(toX, toY);
+		if (startRoom == null || goalRoom == null) {
+			return NO_PATH;
+		}
+		if (fromFloor == toFloor && startRoom == goalRoom) {
+			return SAME_ROOM;
+		}
+
+		int goalRoomNumber = dungeon.getRoomNumber(toFloor, goalRoom);
+		int goal = pack(toFloor, toX, toY);
+		search.start();
+
+		expand(fromFloor, dungeon.getRoomNumber(fromFloor, startRoom), pack(fromFloor, fromX, fromY), 0, -1, goal);
+
+		while (!search.isEmpty()) {
+			int node = search.pop();
+			if (!search.close(node)) {
+				continue;
+			}
+
+			int room = arrivalRooms[node];
+			if (room == goalRoomNumber) {
+				return node;
+			}
+
+			expand(arrivalCells[node] / floorCells, room, arrivalCells[node], search.getCost(node), node, goal);
+		}
+
+		return NO_PATH;
+	}
+
+	/**
+	 * Reaches the portals and staircases of a room from a cell inside it
+	 */
+	private void expand(int floor, int room, int cell, int cost, int parent, int goal) {
+		int localRoom = room - dungeon.getRoomOffset(floor);
+		RoomGraph graph = portals[floor].getRoomGraph();
+
+		for (int p = graph.getEdgeStart(localRoom); p < graph.getEdgeEnd(localRoom); p++) {
+			int next = portalOffsets[floor] + p;
+			if (!search.isClosed(next)) {
+				reach(next, cost + cellDistance(cell, departureCells[next]) + 1, parent, goal);
+			}
+		}
+
+		for (int e = dungeon.getStairStart(room); e < dungeon.getStairEnd(room); e++) {
+			int next = stairNodes + 2 * dungeon.getStairIndex(e);
+			// goes down instead if the staircase leads up to this floor
+			if (departureCells[next] / floorCells != floor) {
+				next++;
+			}
+			if (!search.isClosed(next)) {
+				reach(next, cost + cellDistance(cell, departureCells[next]) + 1, parent, goal);
+			}
+		}
+	}
+
+	private boolean isInBounds(int floor, int x, int y) {
+		return floor >= 0 && floor < floors.length && x >= 0 && x < mapWidth && y >= 0 && y < mapHeight;
+	}
+
+	/**
+	 * Records a way to take a node if it is cheaper than any found so far
+	 */
+	private void reach(int node, int cost, int parent, int goal) {
+		if (search.reach(node, cost, parent)) {
+			search.push(node, cost + cellDistance(arrivalCells[node], goal));
+		}
+	}
+
+	private int pack(int floor, int x, int y) {
+		return (floor * mapHeight + y) * mapWidth + x;
+	}
+
+	/**
+	 * @return Manhattan distance between two cells plus the number of floors
+	 *         between them
+	 */
+	private int cellDistance(int cell, int otherCell) {
+		int x = cell % mapWidth, otherX = otherCell % mapWidth;
+		int row = cell / mapWidth, otherRow = otherCell / mapWidth;
+		int floor = row / mapHeight, otherFloor = otherRow / mapHeight;
+		return Math.abs(x - otherX) + Math.abs(row % mapHeight - otherRow % mapHeight) + Math.abs(floor - otherFloor);
+	}
+}
@@ -0,0 +1,208 @@
+package procedural_dungeon_gen;
+
+import java.util.Arrays;
+
+/**
+ * Reusable state of an A* search over numbered nodes, shared by RoomPathfinder
+ * and MultiFloorPathfinder: the cost and parent of each node reached, the
+ * closed set, the open heap and the route of the last path found, along with
+ * the walk that refines a route into cells. Nodes are cleared between queries
+ * by bumping a stamp instead of filling the arrays, so a query only touches the
+ * nodes it reaches.
+ *
+ * Like the pathfinders using it, a search must not be shared between threads.
+ */
+final class PathSearch {
+
+	// steps from the start cell to each node and the node it was reached from, or
+	// -1 for the nodes reached from the start. Only valid for nodes whose stamp
+	// equals the current stamp
+	private final int[] costs;
+	private final int[] parents;
+	private final int[] stamps;
+	private int stamp;
+
+	// marks nodes whose cost is final with the current stamp
+	private final int[] closed;
+
+	// binary min-heap of nodes ordered by estimated total cost, which may hold
+	// stale entries for nodes reached again more cheaply
+	private int[] heapNodes = new int[16];
+	private int[] heapKeys = new int[16];
+	private int heapSize;
+
+	// nodes of the last route listed, from the goal back to the start
+	private int[] route = new int[16];
+
+	/**
+	 * @param nodeCount Number of nodes the search runs over
+	 */
+	PathSearch(int nodeCount) {
+		this.costs = new int[nodeCount];
+		this.parents = new int[nodeCount];
+		this.stamps = new int[nodeCount];
+		this.closed = new int[nodeCount];
+	}
+
+	/**
+	 * Starts a new query, emptying the heap and clearing the stamps when the
+	 * counter wraps around
+	 */
+	void start() {
+		heapSize = 0;
+		if (++stamp == 0) {
+			Arrays.fill(stamps, 0);
+			Arrays.fill(closed, 0);
+			stamp = 1;
+		}
+	}
+
+	/**
+	 * Records a way to reach a node if it is cheaper than any found so far in this
+	 * query. The caller then pushes the node with its estimated total cost.
+	 *
+	 * @return True if the way was recorded
+	 */
+	boolean reach(int node, int cost, int parent) {
+		if (stamps[node] == stamp && costs[node] <= cost) {
+			return false;
+		}
+
+		stamps[node] = stamp;
+		costs[node] = cost;
+		parents[node] = parent;
+		return true;
+	}
+
+	int getCost(int node) {
+		return costs[node];
+	}
+
+	boolean isClosed(int node) {
+		return closed[node] == stamp;
+	}
+
+	/**
+	 * Marks a node's cost as final
+	 *
+	 * @return False if it already was, for a stale heap entry
+	 */
+	boolean close(int node) {
+		if (closed[node] == stamp) {
+			return false;
+		}
+		closed[node] = stamp;
+		return true;
+	}
+
+	boolean isEmpty() {
+		return heapSize == 0;
+	}
+
+	void push(int node, int key) {
+		if (heapSize == heapNodes.length) {
+			heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+			heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+		}
+
+		int i = heapSize++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (heapKeys[parent] <= key) {
+				break;
+			}
+			heapNodes[i] = heapNodes[parent];
+			heapKeys[i] = heapKeys[parent];
+			i = parent;
+		}
+		heapNodes[i] = node;
+		heapKeys[i] = key;
+	}
+
+	int pop() {
+		int top = heapNodes[0];
+		int node = heapNodes[--heapSize], key = heapKeys[heapSize];
+
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+				child++;
+			}
+			if (key <= heapKeys[child]) {
+				break;
+			}
+			heapNodes[i] = heapNodes[child];
+			heapKeys[i] = heapKeys[child];
+			i = child;
+		}
+		heapNodes[i] = node;
+		heapKeys[i] = key;
+
+		return top;
+	}
+
+	/**
+	 * Lists the nodes of the path ending at a node by following the parents back
+	 * to the start, read afterwards with getRouteNode()
+	 *
+	 * @param goalNode Last node of the path
+	 * @return The number of nodes in the path
+	 */
+	int listRoute(int goalNode) {
+		int routeLength = 0;
+		for (int node = goalNode; node >= 0; node = parents[node]) {
+			if (routeLength == route.length) {
+				route = Arrays.copyOf(route, routeLength * 2);
+			}
+			route[routeLength++] = node;
+		}
+		return routeLength;
+	}
+
+	/**
+	 * @param i Position in the last route listed, counting back from the goal
+	 * @return The node at that position
+	 */
+	int getRouteNode(int i) {
+		return route[i];
+	}
+
+	/**
+	 * Adds the cells after from up to and including to, moving along x first and
+	 * then along the rows. Both cells are in the same room, so the walk stays
+	 * inside it. Cells are numbered row by row, mapWidth to a row, so a row may
+	 * also stand for a row of a later floor.
+	 *
+	 * @return The new length of the path
+	 */
+	static int walk(int[] cells, int length, int from, int to, int mapWidth) {
+		int x = from % mapWidth, row = from / mapWidth;
+		int toX = to % mapWidth, toRow = to / mapWidth;
+
+		while (x != toX) {
+			x += x < toX ? 1 : -1;
+			length = put(cells, length, row * mapWidth + x);
+		}
+		while (row != toRow) {
+			row += row < toRow ? 1 : -1;
+			length = put(cells, length, row * mapWidth + x);
+		}
+		return length;
+	}
+
+	/**
+	 * Adds a cell to a path if the array has room for it
+	 *
+	 * @return The new length of the path
+	 */
+	static int put(int[] cells, int length, int cell) {
+		if (length < cells.length) {
+			cells[length] = cell;
+		}
+		return length + 1;
+	}
+}
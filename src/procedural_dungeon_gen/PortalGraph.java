@@ -0,0 +1,214 @@
+package procedural_dungeon_gen;
+
+import java.util.List;
+
+import procedural_dungeon_gen.Room.Direction;
+
+/**
+ * Immutable abstract layer of the hierarchical pathfinder. Each doorway is a
+ * portal: a cell inside its room and the cell next to it, across the wall, in
+ * the room it leads to. Portals use the doorway indices of the map's RoomGraph.
+ *
+ * After crossing portal p into room B, any portal q of B can be crossed next,
+ * at the cost of walking from p's outside cell to q's inside cell and stepping
+ * through q. These transition costs are computed once and stored in compressed
+ * sparse row form: the cost of moving on from p to the k-th portal of B is at
+ * getTransitionStart(p) + k. Rooms are solid rectangles, so the walk between two
+ * cells of a room is their Manhattan distance.
+ */
+final class PortalGraph {
+
+	private final RoomGraph graph;
+	private final int mapWidth;
+
+	// cell of each portal inside its own room and the cell it steps into, stored
+	// as y * mapWidth + x
+	private final int[] insideCells;
+	private final int[] outsideCells;
+
+	// transitions of portal p are at indices transitionOffsets[p] to
+	// transitionOffsets[p + 1] - 1
+	private final int[] transitionOffsets;
+	private final int[] transitionCosts;
+
+	private PortalGraph(RoomGraph graph, int mapWidth, int[] insideCells, int[] outsideCells,
+			int[] transitionOffsets, int[] transitionCosts) {
+		this.graph = graph;
+		this.mapWidth = mapWidth;
+		this.insideCells = insideCells;
+		this.outsideCells = outsideCells;
+		this.transitionOffsets = transitionOffsets;
+		this.transitionCosts = transitionCosts;
+	}
+
+	/**
+	 * Builds the portals of a map's doorways and the costs between them
+	 *
+	 * @param graph    Room graph of the map
+	 * @param rooms    Rooms of the map, where each room's ID is its index in the list
+	 * @param mapWidth Width of the map
+	 * @return A new portal graph
+	 */
+	static PortalGraph build(RoomGraph graph, List<Room> rooms, int mapWidth) {
+		int portalCount = graph.getEdgeCount();
+		int[] insideCells = new int[portalCount];
+		int[] outsideCells = new int[portalCount];
+		for (int room = 0; room < graph.getRoomCount(); room++) {
+			fillCells(graph, rooms.get(room), mapWidth, insideCells, outsideCells);
+		}
+
+		int[] transitionOffsets = transitionOffsets(graph);
+		int[] transitionCosts = new int[transitionOffsets[portalCount]];
+		for (int p = 0; p < portalCount; p++) {
+			fillTransitions(graph, p, mapWidth, insideCells, outsideCells, transitionOffsets, transitionCosts);
+		}
+
+		return new PortalGraph(graph, mapWidth, insideCells, outsideCells, transitionOffsets, transitionCosts);
+	}
+
+	/**
+	 * Builds the portals of a map after its layout was edited, copying the cells
+	 * and transition costs the edits did not change from the portals from before
+	 * them. A transition only changes if the room it starts or ends in was edited.
+	 *
+	 * @param old      Portals of the map before the edits
+	 * @param graph    Room graph of the map after the edits
+	 * @param rooms    Rooms of the map, where each room's ID is its index in the list
+	 * @param mapWidth Width of the map
+	 * @param edited   Flags of the edited rooms, as passed to RoomGraph.update()
+	 *                 for every edit since the old portals were built
+	 * @return A new portal graph
+	 */
+	static PortalGraph update(PortalGraph old, RoomGraph graph, List<Room> rooms, int mapWidth,
+			boolean[] edited) {
+		RoomGraph oldGraph = old.graph;
+		int portalCount = graph.getEdgeCount();
+		int[] insideCells = new int[portalCount];
+		int[] outsideCells = new int[portalCount];
+		for (int room = 0; room < graph.getRoomCount(); room++) {
+			if (RoomGraph.isEdited(oldGraph, edited, room)) {
+				fillCells(graph, rooms.get(room), mapWidth, insideCells, outsideCells);
+			} else {
+				int from = oldGraph.getEdgeStart(room);
+				int length = oldGraph.getEdgeEnd(room) - from;
+				System.arraycopy(old.insideCells, from, insideCells, graph.getEdgeStart(room), length);
+				System.arraycopy(old.outsideCells, from, outsideCells, graph.getEdgeStart(room), length);
+			}
+		}
+
+		int[] transitionOffsets = transitionOffsets(graph);
+		int[] transitionCosts = new int[transitionOffsets[portalCount]];
+		for (int room = 0; room < graph.getRoomCount(); room++) {
+			boolean roomEdited = RoomGraph.isEdited(oldGraph, edited, room);
+			int oldPortal = roomEdited ? -1 : oldGraph.getEdgeStart(room);
+
+			for (int p = graph.getEdgeStart(room); p < graph.getEdgeEnd(room); p++, oldPortal++) {
+				int next = graph.getNeighbor(p);
+				if (roomEdited || RoomGraph.isEdited(oldGraph, edited, next)) {
+					fillTransitions(graph, p, mapWidth, insideCells, outsideCells, transitionOffsets,
+							transitionCosts);
+				} else {
+					System.arraycopy(old.transitionCosts, old.transitionOffsets[oldPortal], transitionCosts,
+							transitionOffsets[p], graph.getDegree(next));
+				}
+			}
+		}
+
+		return new PortalGraph(graph, mapWidth, insideCells, outsideCells, transitionOffsets, transitionCosts);
+	}
+
+	/**
+	 * Finds the cells of the portals of a room
+	 */
+	private static void fillCells(RoomGraph graph, Room room, int mapWidth, int[] insideCells,
+			int[] outsideCells) {
+		for (int p = graph.getEdgeStart(room.getId()); p < graph.getEdgeEnd(room.getId()); p++) {
+			Direction dir = graph.getDoorDirection(p);
+			int dx = dir == Direction.LEFT ? -1 : dir == Direction.RIGHT ? 1 : 0;
+			int dy = dir == Direction.UP ? -1 : dir == Direction.DOWN ? 1 : 0;
+			int x = graph.getDoorX(p), y = graph.getDoorY(p);
+
+			insideCells[p] = y * mapWidth + x;
+			outsideCells[p] = (y + dy) * mapWidth + x + dx;
+		}
+	}
+
+	/**
+	 * Lays out the transitions of every portal, one per portal of the room it
+	 * leads to
+	 */
+	private static int[] transitionOffsets(RoomGraph graph) {
+		int portalCount = graph.getEdgeCount();
+		int[] transitionOffsets = new int[portalCount + 1];
+		for (int p = 0; p < portalCount; p++) {
+			transitionOffsets[p + 1] = transitionOffsets[p] + graph.getDegree(graph.getNeighbor(p));
+		}
+		return transitionOffsets;
+	}
+
+	/**
+	 * Computes the costs of moving on from a portal to each portal of the room it
+	 * leads to
+	 */
+	private static void fillTransitions(RoomGraph graph, int p, int mapWidth, int[] insideCells,
+			int[] outsideCells, int[] transitionOffsets, int[] transitionCosts) {
+		int next = graph.getNeighbor(p);
+		int transition = transitionOffsets[p];
+		for (int q = graph.getEdgeStart(next); q < graph.getEdgeEnd(next); q++) {
+			transitionCosts[transition++] = cellDistance(outsideCells[p], insideCells[q], mapWidth) + 1;
+		}
+	}
+
+	/**
+	 * @return Manhattan distance between two cells stored as y * mapWidth + x
+	 */
+	static int cellDistance(int cell, int otherCell, int mapWidth) {
+		return Math.abs(cell % mapWidth - otherCell % mapWidth) + Math.abs(cell / mapWidth - otherCell / mapWidth);
+	}
+
+	RoomGraph getRoomGraph() {
+		return graph;
+	}
+
+	int getMapWidth() {
+		return mapWidth;
+	}
+
+	int getPortalCount() {
+		return insideCells.length;
+	}
+
+	/**
+	 * @param portal Index of a portal
+	 * @return The portal's cell in its own room, as y * mapWidth + x
+	 */
+	int getInsideCell(int portal) {
+		return insideCells[portal];
+	}
+
+	/**
+	 * @param portal Index of a portal
+	 * @return The cell the portal steps into, as y * mapWidth + x
+	 */
+	int getOutsideCell(int portal) {
+		return outsideCells[portal];
+	}
+
+	/**
+	 * @param portal Index of a portal
+	 * @return Index of the cost of moving on to the first portal of the room the
+	 *         portal leads to
+	 */
+	int getTransitionStart(int portal) {
+		return transitionOffsets[portal];
+	}
+
+	/**
+	 * @param transition Index of a transition
+	 * @return Number of steps from the outside cell of a portal to the outside
+	 *         cell of the next one
+	 */
+	int getTransitionCost(int transition) {
+		return transitionCosts[transition];
+	}
+}
@@ -2,6 +2,8 @@ package procedural_dungeon_gen;
 import java.awt.Color;
 import java.awt.Point;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Represents a Room in a generated map.
@@ -9,6 +11,8 @@ import java.util.ArrayList;
  * @author Zach Dakoulas
  */
 public class Room {
+	// index of the room in its map's room table, or -1 if it is not part of a map
+	private int id;
 	private Point topLeftPos;
 	private Point botRightPos;
 	private Color color;
@@ -17,6 +21,12 @@ public class Room {
 	// and point is the cell from the current room where the "doorway" is attached
 	private ArrayList<Doorway> connectedRooms = new ArrayList<>();
 
+	// read-only view of the doorways handed out by getDoors()
+	private final List<Doorway> doorsView = Collections.unmodifiableList(connectedRooms);
+
+	// whether the room belongs to a frozen map and can no longer be changed
+	private boolean frozen;
+
 	public static enum Direction {
 		UP,
 		DOWN,
@@ -32,11 +42,36 @@ public class Room {
 	 * @param color Color of room
 	 */
 	public Room(Point topLeftPos, Point botRightPos, Color color) {
+		this(-1, topLeftPos, botRightPos, color);
+	}
+
+	/**
+	 * Creates a new room object with an ID in a map's room table
+	 * 
+	 * @param id ID of the room
+	 * @param topLeftPos Top left corner of room
+	 * @param botRightPos Bottom right corner of room
+	 * @param color Color of room
+	 */
+	Room(int id, Point topLeftPos, Point botRightPos, Color color) {
+		this.id = id;
 		this.topLeftPos = topLeftPos;
 		this.botRightPos = botRightPos; 
 		this.color = color;
 	}
 	
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @param id New index of the room in its map's room table, or -1 once it is
+	 *           removed from the map
+	 */
+	void setId(int id) {
+		this.id = id;
+	}
+
 	public Point getTopLeftPos() {
 		return topLeftPos;
 	}
@@ -53,7 +88,12 @@ public class Room {
 		return color;
 	}
 
+	/**
+	 * @param color New color of the room
+	 * @throws IllegalStateException If the room belongs to a frozen map
+	 */
 	public void setColor(Color color) {
+		checkNotFrozen();
 		this.color = color;
 	}
 
@@ -63,11 +103,24 @@ public class Room {
 	 * @param otherRoom Room the calling room is connected to
 	 * @param entrancePoint Position of the cell that contains the door
 	 * @param dir Direction the door in the current room should be facing to point to otherRoom
+	 * @throws IllegalStateException If the room belongs to a frozen map
 	 */
 	public void addConnectedRoom(Room otherRoom, Point entrancePoint, Direction dir) {
+		checkNotFrozen();
 		connectedRooms.add(new Doorway(otherRoom, entrancePoint, dir));
 	}
 
+	/**
+	 * Removes one of the room's doorways, without touching the doorway facing back
+	 * from the other room
+	 * 
+	 * @param door Doorway of the room
+	 */
+	void removeDoor(Doorway door) {
+		checkNotFrozen();
+		connectedRooms.remove(door);
+	}
+
 	public boolean isConnectedToRoom(Room otherRoom) {
 
 		for (Doorway door: connectedRooms) {
@@ -79,15 +132,32 @@ public class Room {
 		return false;
 	}
 	
-	public ArrayList<Doorway> getDoors() {
-		return connectedRooms;
+	/**
+	 * @return A read-only view of the room's doorways, which follows later changes
+	 */
+	public List<Doorway> getDoors() {
+		return doorsView;
+	}
+
+	/**
+	 * Makes the room read-only, as part of freezing its map
+	 */
+	void freeze() {
+		frozen = true;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new IllegalStateException("Room belongs to a frozen map");
+		}
 	}
 	
 	/**
 	 * Acts as a container class that holds information about room connections, including the connecting room,
-	 * entrance point, and direction the door is facing.
+	 * entrance point, and direction the door is facing. Static so that doorways do not hold a hidden reference
+	 * to the room they belong to.
 	 */
-	public class Doorway {
+	public static class Doorway {
 
 		private Room connectingRoom;
 		private Point entrancePoint; // Position of the cell that contains the door
@@ -0,0 +1,507 @@
+package procedural_dungeon_gen;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Answers distance queries between the rooms of a generated map, where the
+ * distance between two rooms is the number of doorways that must be passed
+ * through to get from one to the other. Single source distances are computed
+ * with a breadth first search over the room graph the first time they are
+ * needed and kept in a cache of at most a fixed number of rows, evicting the
+ * least recently used row. The size of the cache is set on the map with
+ * GeneratedMap.setDistanceIndexRows(), and making it as large as the number of
+ * rooms keeps all pairs in memory.
+ *
+ * All methods are synchronized, so an index can be shared between threads.
+ */
+public final class RoomDistanceIndex {
+
+	/**
+	 * Receives pairs of rooms found by a query
+	 */
+	public interface RoomPairConsumer {
+		void accept(int room, int otherRoom);
+	}
+
+	/**
+	 * Number of distance rows a map's index keeps in memory unless set with
+	 * GeneratedMap.setDistanceIndexRows()
+	 */
+	public static final int DEFAULT_CACHED_ROWS = 256;
+
+	private final RoomGraph graph;
+	private final int maxCachedRows;
+
+	// cached distance rows by source room, in least to most recently used order
+	private final LinkedHashMap<Integer, int[]> rows;
+
+	// scratch buffers of the searches, where a room counts as visited if its stamp
+	// equals the current stamp
+	private final int[] queue;
+	private final int[] stamps;
+	private final int[] depths;
+	private int stamp;
+
+	// marks the rooms that are candidates of the current pair query
+	private final boolean[] isCandidate;
+
+	// {room, other room, distance} of the farthest pair, once computed
+	private int[] farthestPair;
+
+	/**
+	 * Creates a new distance index
+	 *
+	 * @param graph         Graph of the map's rooms
+	 * @param maxCachedRows Max number of single source distance rows kept in memory
+	 */
+	RoomDistanceIndex(RoomGraph graph, final int maxCachedRows) {
+		if (maxCachedRows < 1) {
+			throw new IllegalArgumentException("At least one distance row must be cached");
+		}
+
+		int roomCount = graph.getRoomCount();
+		this.graph = graph;
+		this.maxCachedRows = maxCachedRows;
+		this.queue = new int[roomCount];
+		this.stamps = new int[roomCount];
+		this.depths = new int[roomCount];
+		this.isCandidate = new boolean[roomCount];
+
+		this.rows = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+				return size() > maxCachedRows;
+			}
+		};
+	}
+
+	/**
+	 * Creates a distance index over an edited map, keeping the rows of the index
+	 * from before the edits that the edits did not change. The previous index
+	 * must have been told about every edit through roomMoved() and
+	 * doorwayChanged(). Rows are resized to the new number of rooms, where rooms
+	 * added since have no path from the row's room.
+	 *
+	 * @param graph         Graph of the map's rooms after the edits
+	 * @param maxCachedRows Max number of single source distance rows kept in memory
+	 * @param previous      Index of the map before the edits
+	 */
+	RoomDistanceIndex(RoomGraph graph, int maxCachedRows, RoomDistanceIndex previous) {
+		this(graph, maxCachedRows);
+
+		int roomCount = graph.getRoomCount();
+		synchronized (previous) {
+			for (Map.Entry<Integer, int[]> entry : previous.rows.entrySet()) {
+				if (entry.getKey() < roomCount) {
+					int[] row = entry.getValue();
+					int[] resized = Arrays.copyOf(row, roomCount);
+					if (row.length < roomCount) {
+						Arrays.fill(resized, row.length, roomCount, -1);
+					}
+					rows.put(entry.getKey(), resized);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops the cached rows that opening or sealing a doorway between two rooms
+	 * may change. A doorway only shortens a path if the distances of its rooms
+	 * differ by more than one, and sealing one only lengthens a path if they
+	 * differ by exactly one, so rows where neither holds are kept.
+	 *
+	 * @param room      ID of one room of the doorway
+	 * @param otherRoom ID of the other room
+	 * @param opened    True if the doorway was opened, false if it was sealed
+	 */
+	synchronized void doorwayChanged(int room, int otherRoom, boolean opened) {
+		Iterator<int[]> it = rows.values().iterator();
+		while (it.hasNext()) {
+			int[] row = it.next();
+			int d = distance(row, room), otherD = distance(row, otherRoom);
+
+			boolean changed;
+			if (opened) {
+				changed = (d < 0) != (otherD < 0) || Math.abs(d - otherD) > 1;
+			} else {
+				changed = d >= 0 && Math.abs(d - otherD) == 1;
+			}
+			if (changed) {
+				it.remove();
+			}
+		}
+		farthestPair = null;
+	}
+
+	/**
+	 * Gives a room the ID of a removed room, which must have had no doorways left
+	 * when it was removed
+	 *
+	 * @param from ID the room had
+	 * @param to   ID of the removed room that the room takes over
+	 */
+	synchronized void roomMoved(int from, int to) {
+		rows.remove(to);
+		int[] movedRow = rows.remove(from);
+		if (movedRow != null) {
+			rows.put(to, movedRow);
+		}
+
+		for (int[] row : rows.values()) {
+			if (to < row.length) {
+				row[to] = distance(row, from);
+			}
+			// a room added later reuses the old ID
+			if (from < row.length) {
+				row[from] = -1;
+			}
+		}
+		farthestPair = null;
+	}
+
+	/**
+	 * @return The distance in a row, where rooms past its end were added after it
+	 *         was computed and cannot be reached
+	 */
+	private static int distance(int[] row, int room) {
+		return room < row.length ? row[room] : -1;
+	}
+
+	public RoomGraph getGraph() {
+		return graph;
+	}
+
+	public int getMaxCachedRows() {
+		return maxCachedRows;
+	}
+
+	/**
+	 * Gets the distance between two rooms
+	 *
+	 * @param room      ID of the first room
+	 * @param otherRoom ID of the second room
+	 * @return The number of doorways between the rooms, or -1 if no path exists
+	 */
+	public synchronized int getDistance(int room, int otherRoom) {
+		return row(room)[otherRoom];
+	}
+
+	/**
+	 * Copies the distances from a room to every other room
+	 *
+	 * @param room      ID of the source room
+	 * @param distances Filled with the distance to each room, or -1 if a room
+	 *                  cannot be reached
+	 */
+	public synchronized void getDistances(int room, int[] distances) {
+		System.arraycopy(row(room), 0, distances, 0, graph.getRoomCount());
+	}
+
+	/**
+	 * Computes the distance rows of as many rooms as fit in the cache, so later
+	 * queries are lookups. If the cache holds at least as many rows as there are
+	 * rooms, this computes all pairs.
+	 */
+	public synchronized void precompute() {
+		int count = Math.min(maxCachedRows, graph.getRoomCount());
+		for (int room = 0; room < count; room++) {
+			row(room);
+		}
+	}
+
+	/**
+	 * Counts the pairs of rooms exactly a given distance apart
+	 *
+	 * @param distance Distance between the rooms
+	 * @return The number of unordered pairs of rooms at that distance
+	 */
+	public long countPairsAtDistance(int distance) {
+		return countPairsAtDistance(null, distance);
+	}
+
+	/**
+	 * Counts the pairs among a set of rooms that are exactly a given distance apart
+	 *
+	 * @param candidates IDs of the rooms to consider, without duplicates, or null
+	 *                   for all rooms
+	 * @param distance   Distance between the rooms
+	 * @return The number of unordered pairs of candidates at that distance
+	 */
+	public long countPairsAtDistance(int[] candidates, int distance) {
+		return countPairsAtDistance(candidates, distance, null);
+	}
+
+	/**
+	 * Counts the pairs among a set of rooms that are exactly a given distance
+	 * apart, running a check before each candidate's search so a long query can be
+	 * stopped by throwing from it
+	 *
+	 * @param candidates  IDs of the rooms to consider, without duplicates, or null
+	 *                    for all rooms
+	 * @param distance    Distance between the rooms
+	 * @param sourceCheck Run before the search from each candidate, or null
+	 * @return The number of unordered pairs of candidates at that distance
+	 */
+	synchronized long countPairsAtDistance(int[] candidates, int distance, Runnable sourceCheck) {
+		return walkPairsAtDistance(candidates, distance, -1, null, sourceCheck);
+	}
+
+	/**
+	 * Calls consumer with every pair of rooms exactly a given distance apart. Each
+	 * unordered pair is reported once, with the smaller ID first.
+	 *
+	 * @param distance Distance between the rooms
+	 * @param consumer Receives the pairs
+	 */
+	public void forEachPairAtDistance(int distance, RoomPairConsumer consumer) {
+		forEachPairAtDistance(null, distance, consumer);
+	}
+
+	/**
+	 * Calls consumer with every pair among a set of rooms that are exactly a given
+	 * distance apart. Each unordered pair is reported once, with the smaller ID
+	 * first.
+	 *
+	 * @param candidates IDs of the rooms to consider, without duplicates, or null
+	 *                   for all rooms
+	 * @param distance   Distance between the rooms
+	 * @param consumer   Receives the pairs
+	 */
+	public synchronized void forEachPairAtDistance(int[] candidates, int distance, RoomPairConsumer consumer) {
+		walkPairsAtDistance(candidates, distance, -1, consumer, null);
+	}
+
+	/**
+	 * Finds the n-th pair among a set of rooms that are exactly a given distance
+	 * apart, in the order they are reported by forEachPairAtDistance()
+	 *
+	 * @param candidates IDs of the rooms to consider, without duplicates, or null
+	 *                   for all rooms
+	 * @param distance   Distance between the rooms
+	 * @param n          Index of the pair, less than countPairsAtDistance()
+	 * @return The pair, packed as ((long) room << 32) | otherRoom, or -1 if there
+	 *         are not that many pairs
+	 */
+	public long getPairAtDistance(int[] candidates, int distance, long n) {
+		return getPairAtDistance(candidates, distance, n, null);
+	}
+
+	/**
+	 * Same as getPairAtDistance(int[], int, long), running a check before each
+	 * candidate's search
+	 *
+	 * @param sourceCheck Run before the search from each candidate, or null
+	 */
+	synchronized long getPairAtDistance(int[] candidates, int distance, long n, Runnable sourceCheck) {
+		return walkPairsAtDistance(candidates, distance, n, null, sourceCheck);
+	}
+
+	/**
+	 * Finds the pair among a set of rooms whose distance is closest to a target
+	 * distance, preferring the smaller distance on ties and ignoring pairs that are
+	 * not connected
+	 *
+	 * @param candidates IDs of the rooms to consider, without duplicates, or null
+	 *                   for all rooms
+	 * @param distance   Target distance between the rooms
+	 * @return The pair, packed as ((long) room << 32) | otherRoom, or -1 if no two
+	 *         candidates are connected
+	 */
+	public long getClosestPairToDistance(int[] candidates, int distance) {
+		return getClosestPairToDistance(candidates, distance, null);
+	}
+
+	/**
+	 * Same as getClosestPairToDistance(int[], int), running a check before the
+	 * distances of each candidate are read
+	 *
+	 * @param sourceCheck Run before each candidate's distance row is read, or null
+	 */
+	synchronized long getClosestPairToDistance(int[] candidates, int distance, Runnable sourceCheck) {
+		int count = candidates == null ? graph.getRoomCount() : candidates.length;
+		long best = -1;
+		int bestError = Integer.MAX_VALUE;
+		int bestDistance = Integer.MAX_VALUE;
+
+		for (int i = 0; i < count; i++) {
+			if (sourceCheck != null) {
+				sourceCheck.run();
+			}
+
+			int room = candidates == null ? i : candidates[i];
+			int[] row = row(room);
+
+			for (int j = i + 1; j < count; j++) {
+				int otherRoom = candidates == null ? j : candidates[j];
+				int d = row[otherRoom];
+				if (d < 0) {
+					continue;
+				}
+
+				int error = Math.abs(d - distance);
+				if (error < bestError || (error == bestError && d < bestDistance)) {
+					best = pack(room, otherRoom);
+					bestError = error;
+					bestDistance = d;
+				}
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Finds the two rooms that are farthest apart, which is also the diameter of
+	 * the room graph. Runs a search from every room the first time it is called.
+	 *
+	 * @return An array of {room, other room, distance}, or {-1, -1, -1} if the map
+	 *         has no rooms
+	 */
+	public synchronized int[] getFarthestPair() {
+		if (farthestPair == null) {
+			int[] best = { -1, -1, -1 };
+			int[] distances = new int[graph.getRoomCount()];
+
+			for (int room = 0; room < graph.getRoomCount(); room++) {
+				int[] row = rows.get(room);
+				if (row == null) {
+					graph.distancesFrom(room, distances, queue);
+					row = distances;
+				}
+
+				for (int otherRoom = room; otherRoom < row.length; otherRoom++) {
+					if (row[otherRoom] > best[2]) {
+						best[0] = room;
+						best[1] = otherRoom;
+						best[2] = row[otherRoom];
+					}
+				}
+			}
+
+			farthestPair = best;
+		}
+
+		return farthestPair.clone();
+	}
+
+	/**
+	 * Gets the distance row of a room, computing and caching it if needed
+	 */
+	private int[] row(int room) {
+		int[] row = rows.get(room);
+		if (row == null) {
+			row = new int[graph.getRoomCount()];
+			graph.distancesFrom(room, row, queue);
+			rows.put(room, row);
+		}
+		return row;
+	}
+
+	/**
+	 * Walks the pairs of candidates at exactly a given distance using a breadth
+	 * first search from each candidate that stops at that depth, so only the rooms
+	 * near each candidate are visited. Reports each pair to consumer if it is not
+	 * null, and stops at the pair with index stopAt if it is not negative. Runs
+	 * sourceCheck, if not null, before each candidate's search.
+	 *
+	 * @return The pair at index stopAt packed into a long (or -1 if there are
+	 *         fewer pairs) if stopAt is not negative, otherwise the number of pairs
+	 */
+	private long walkPairsAtDistance(int[] candidates, int distance, long stopAt, RoomPairConsumer consumer,
+			Runnable sourceCheck) {
+
+		boolean allRooms = candidates == null;
+		if (!allRooms) {
+			for (int room : candidates) {
+				isCandidate[room] = true;
+			}
+		}
+
+		try {
+			return walkPairsFromCandidates(candidates, distance, stopAt, consumer, sourceCheck);
+
+		} finally {
+			if (!allRooms) {
+				for (int room : candidates) {
+					isCandidate[room] = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper to walkPairsAtDistance(), running the searches once the candidates
+	 * have been marked
+	 */
+	private long walkPairsFromCandidates(int[] candidates, int distance, long stopAt, RoomPairConsumer consumer,
+			Runnable sourceCheck) {
+		boolean allRooms = candidates == null;
+		long found = 0;
+
+		int count = allRooms ? graph.getRoomCount() : candidates.length;
+		for (int i = 0; i < count; i++) {
+			if (sourceCheck != null) {
+				sourceCheck.run();
+			}
+
+			int source = allRooms ? i : candidates[i];
+
+			int searchStamp = nextStamp();
+			int head = 0, tail = 0;
+			stamps[source] = searchStamp;
+			depths[source] = 0;
+			queue[tail++] = source;
+
+			while (head < tail) {
+				int room = queue[head++];
+				int depth = depths[room];
+
+				if (depth == distance) {
+					// every room at the target depth is a match, with the smaller ID
+					// reporting the pair so it is only counted once
+					if (room > source && (allRooms || isCandidate[room])) {
+						if (stopAt >= 0 && found == stopAt) {
+							return pack(source, room);
+						}
+						if (consumer != null) {
+							consumer.accept(source, room);
+						}
+						found++;
+					}
+					continue;
+				}
+
+				for (int edge = graph.getEdgeStart(room); edge < graph.getEdgeEnd(room); edge++) {
+					int neighbor = graph.getNeighbor(edge);
+					if (stamps[neighbor] != searchStamp) {
+						stamps[neighbor] = searchStamp;
+						depths[neighbor] = depth + 1;
+						queue[tail++] = neighbor;
+					}
+				}
+			}
+		}
+
+		return stopAt >= 0 ? -1 : found;
+	}
+
+	/**
+	 * Starts a new search, clearing all visited marks in constant time
+	 */
+	private int nextStamp() {
+		if (++stamp == 0) {
+			Arrays.fill(stamps, 0);
+			stamp = 1;
+		}
+		return stamp;
+	}
+
+	private static long pack(int room, int otherRoom) {
+		return ((long) room << 32) | otherRoom;
+	}
+}
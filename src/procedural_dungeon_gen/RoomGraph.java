@@ -0,0 +1,252 @@
+package procedural_dungeon_gen;
+
+import java.awt.Point;
+import java.util.List;
+
+import procedural_dungeon_gen.Room.Direction;
+
+/**
+ * Immutable, compact view of the connections between the rooms of a generated
+ * map. Rooms are identified by their ID, and the doorways of each room are
+ * stored in compressed sparse row form: the doorways of room r are the edges
+ * from getEdgeStart(r) up to but not including getEdgeEnd(r), and each edge
+ * holds the ID of the connecting room, the cell of the doorway and the
+ * direction it faces in flat primitive arrays. Algorithms can walk the graph
+ * without allocating an object per room or doorway.
+ */
+public final class RoomGraph {
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private final int mapWidth;
+
+	// edges of room r are at indices edgeOffsets[r] to edgeOffsets[r + 1] - 1
+	private final int[] edgeOffsets;
+
+	// room each edge leads to, the cell of the doorway stored as y * mapWidth + x,
+	// and the ordinal of the direction the doorway faces
+	private final int[] neighbors;
+	private final int[] doorCells;
+	private final byte[] doorDirections;
+
+	private RoomGraph(int mapWidth, int[] edgeOffsets, int[] neighbors, int[] doorCells, byte[] doorDirections) {
+		this.mapWidth = mapWidth;
+		this.edgeOffsets = edgeOffsets;
+		this.neighbors = neighbors;
+		this.doorCells = doorCells;
+		this.doorDirections = doorDirections;
+	}
+
+	/**
+	 * Builds a graph of the given rooms
+	 *
+	 * @param rooms    Rooms of a map, where each room's ID is its index in the list
+	 * @param mapWidth Width of the map
+	 * @return A new graph of the rooms and their doorways
+	 */
+	static RoomGraph build(List<Room> rooms, int mapWidth) {
+		int[] edgeOffsets = new int[rooms.size() + 1];
+		for (int r = 0; r < rooms.size(); r++) {
+			edgeOffsets[r + 1] = edgeOffsets[r] + rooms.get(r).getDoors().size();
+		}
+
+		int edgeCount = edgeOffsets[rooms.size()];
+		RoomGraph graph = new RoomGraph(mapWidth, edgeOffsets, new int[edgeCount], new int[edgeCount],
+				new byte[edgeCount]);
+		for (Room room : rooms) {
+			graph.fillEdges(room);
+		}
+		return graph;
+	}
+
+	/**
+	 * Builds the graph of a map's rooms after its layout was edited, copying the
+	 * edges of the rooms the edits did not touch from the graph from before them
+	 * and only reading the doorways of the others. The result is the same as
+	 * build(), at the cost of copying the arrays instead of walking every doorway.
+	 *
+	 * @param old      Graph of the rooms before the edits
+	 * @param rooms    Rooms of the map, where each room's ID is its index in the list
+	 * @param mapWidth Width of the map
+	 * @param edited   Flags of the rooms whose doorways were edited or lead to a
+	 *                 room whose ID changed, by ID. Rooms past the end of the array
+	 *                 or not in the old graph count as edited.
+	 * @return A new graph of the rooms and their doorways
+	 */
+	static RoomGraph update(RoomGraph old, List<Room> rooms, int mapWidth, boolean[] edited) {
+		int roomCount = rooms.size();
+		int[] edgeOffsets = new int[roomCount + 1];
+		for (int r = 0; r < roomCount; r++) {
+			int degree = isEdited(old, edited, r) ? rooms.get(r).getDoors().size() : old.getDegree(r);
+			edgeOffsets[r + 1] = edgeOffsets[r] + degree;
+		}
+
+		int edgeCount = edgeOffsets[roomCount];
+		RoomGraph graph = new RoomGraph(mapWidth, edgeOffsets, new int[edgeCount], new int[edgeCount],
+				new byte[edgeCount]);
+
+		for (int r = 0; r < roomCount;) {
+			if (isEdited(old, edited, r)) {
+				graph.fillEdges(rooms.get(r++));
+				continue;
+			}
+
+			// the edges of a run of untouched rooms are contiguous in both graphs
+			int end = r + 1;
+			while (end < roomCount && !isEdited(old, edited, end)) {
+				end++;
+			}
+			int from = old.edgeOffsets[r], to = edgeOffsets[r], length = old.edgeOffsets[end] - from;
+			System.arraycopy(old.neighbors, from, graph.neighbors, to, length);
+			System.arraycopy(old.doorCells, from, graph.doorCells, to, length);
+			System.arraycopy(old.doorDirections, from, graph.doorDirections, to, length);
+			r = end;
+		}
+
+		return graph;
+	}
+
+	/**
+	 * @return True if update() rebuilds the edges of a room rather than copying
+	 *         them from the old graph
+	 */
+	static boolean isEdited(RoomGraph old, boolean[] edited, int room) {
+		return room >= old.getRoomCount() || (room < edited.length && edited[room]);
+	}
+
+	/**
+	 * Writes the edges of a room from its doorways, once the offsets are set
+	 */
+	private void fillEdges(Room room) {
+		int edge = edgeOffsets[room.getId()];
+		for (Room.Doorway door : room.getDoors()) {
+			Point entrance = door.getEntrance();
+
+			neighbors[edge] = door.getConnectingRoom().getId();
+			doorCells[edge] = entrance.y * mapWidth + entrance.x;
+			doorDirections[edge] = (byte) door.directionFacing().ordinal();
+			edge++;
+		}
+	}
+
+	public int getRoomCount() {
+		return edgeOffsets.length - 1;
+	}
+
+	/**
+	 * @return The total number of doorways, counting each side of a connection
+	 *         separately
+	 */
+	public int getEdgeCount() {
+		return neighbors.length;
+	}
+
+	/**
+	 * @param room ID of the room
+	 * @return Index of the first doorway of the room
+	 */
+	public int getEdgeStart(int room) {
+		return edgeOffsets[room];
+	}
+
+	/**
+	 * @param room ID of the room
+	 * @return Index one past the last doorway of the room
+	 */
+	public int getEdgeEnd(int room) {
+		return edgeOffsets[room + 1];
+	}
+
+	/**
+	 * @param room ID of the room
+	 * @return The number of doorways in the room
+	 */
+	public int getDegree(int room) {
+		return edgeOffsets[room + 1] - edgeOffsets[room];
+	}
+
+	/**
+	 * @param edge Index of a doorway
+	 * @return ID of the room the doorway leads to
+	 */
+	public int getNeighbor(int edge) {
+		return neighbors[edge];
+	}
+
+	/**
+	 * @param edge Index of a doorway
+	 * @return The x position of the cell containing the doorway
+	 */
+	public int getDoorX(int edge) {
+		return doorCells[edge] % mapWidth;
+	}
+
+	/**
+	 * @param edge Index of a doorway
+	 * @return The y position of the cell containing the doorway
+	 */
+	public int getDoorY(int edge) {
+		return doorCells[edge] / mapWidth;
+	}
+
+	/**
+	 * @param edge Index of a doorway
+	 * @return The direction the doorway faces
+	 */
+	public Direction getDoorDirection(int edge) {
+		return DIRECTIONS[doorDirections[edge]];
+	}
+
+	/**
+	 * Checks if two rooms are connected by a doorway, in O(degree) time
+	 *
+	 * @param room      ID of the first room
+	 * @param otherRoom ID of the second room
+	 * @return True if the first room has a doorway leading to the second room
+	 */
+	public boolean isConnected(int room, int otherRoom) {
+		for (int edge = edgeOffsets[room]; edge < edgeOffsets[room + 1]; edge++) {
+			if (neighbors[edge] == otherRoom) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Computes the number of doorways that need to be passed through to get from a
+	 * source room to every other room using a breadth first search. Uses only the
+	 * buffers passed in.
+	 *
+	 * @param source    ID of the room to start from
+	 * @param distances Filled with the distance to each room, or -1 if a room
+	 *                  cannot be reached. Must hold at least getRoomCount() values
+	 * @param queue     Scratch buffer of at least getRoomCount() values
+	 * @return The number of rooms reachable from the source, including itself
+	 */
+	public int distancesFrom(int source, int[] distances, int[] queue) {
+		int roomCount = getRoomCount();
+		for (int r = 0; r < roomCount; r++) {
+			distances[r] = -1;
+		}
+
+		int head = 0, tail = 0;
+		distances[source] = 0;
+		queue[tail++] = source;
+
+		while (head < tail) {
+			int room = queue[head++];
+			int nextDistance = distances[room] + 1;
+
+			for (int edge = edgeOffsets[room]; edge < edgeOffsets[room + 1]; edge++) {
+				int neighbor = neighbors[edge];
+				if (distances[neighbor] < 0) {
+					distances[neighbor] = nextDistance;
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+
+		return tail;
+	}
+}
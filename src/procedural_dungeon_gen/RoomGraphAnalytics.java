@@ -0,0 +1,208 @@
+package procedural_dungeon_gen;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the metrics of a room graph used to score generated maps: diameter,
+ * eccentricity of every room, dead ends and loops, all in one pass.
+ *
+ * Eccentricities need a breadth first search from every room. These run 64 at a
+ * time as one bit-parallel search: every room holds a 64 bit word per search
+ * state, where bit b stands for the b-th source of the batch, and a level of all
+ * 64 searches is a single sweep over the graph that ORs each room's frontier
+ * word into its neighbors'. A map of n rooms needs n / 64 sweeps per level
+ * instead of n searches, and the batches are independent, so they can also be
+ * spread over a fork-join pool.
+ */
+public final class RoomGraphAnalytics {
+
+	// number of sources searched together, one per bit of a long
+	private static final int BATCH_SIZE = 64;
+
+	private RoomGraphAnalytics() {
+	}
+
+	/**
+	 * Computes the metrics of a map's room graph on the calling thread
+	 *
+	 * @param map The generated map
+	 * @return The metrics of the map's current layout
+	 */
+	public static RoomGraphMetrics analyze(GeneratedMap map) {
+		return analyze(map, null);
+	}
+
+	/**
+	 * Computes the metrics of a map's room graph
+	 *
+	 * @param map  The generated map
+	 * @param pool Pool that batches of sources are searched on, or null to search
+	 *             them all on the calling thread
+	 * @return The metrics of the map's current layout
+	 */
+	public static RoomGraphMetrics analyze(GeneratedMap map, ForkJoinPool pool) {
+		Room startRoom = map.getStartRoom();
+		return analyze(map.getRoomGraph(), startRoom == null ? -1 : startRoom.getId(), pool);
+	}
+
+	/**
+	 * Computes the metrics of a room graph
+	 *
+	 * @param graph     Graph of a map's rooms
+	 * @param startRoom ID of the start room, or -1 if there is none
+	 * @param pool      Pool that batches of sources are searched on, or null to
+	 *                  search them all on the calling thread
+	 * @return The metrics of the graph
+	 */
+	public static RoomGraphMetrics analyze(RoomGraph graph, int startRoom, ForkJoinPool pool) {
+		int roomCount = graph.getRoomCount();
+		if (startRoom < -1 || startRoom >= roomCount) {
+			throw new IllegalArgumentException("Start room " + startRoom + " is not in the graph");
+		}
+
+		int deadEnds = 0;
+		for (int room = 0; room < roomCount; room++) {
+			if (graph.getDegree(room) == 1) {
+				deadEnds++;
+			}
+		}
+
+		int[] eccentricities = new int[roomCount];
+		int batches = (roomCount + BATCH_SIZE - 1) / BATCH_SIZE;
+		if (pool == null || batches <= 1) {
+			searchBatches(graph, 0, batches, eccentricities);
+		} else {
+			pool.invoke(new BatchTask(graph, 0, batches, eccentricities));
+		}
+
+		// every doorway is listed by the rooms on both of its sides
+		return new RoomGraphMetrics(graph.getEdgeCount() / 2, countComponents(graph), deadEnds, startRoom,
+				eccentricities);
+	}
+
+	/**
+	 * Finds the eccentricities of the sources of batches [from, to), reusing one
+	 * set of buffers for all of them
+	 */
+	private static void searchBatches(RoomGraph graph, int from, int to, int[] eccentricities) {
+		int roomCount = graph.getRoomCount();
+
+		// sources that have reached each room, that reached it in the last level, and
+		// that reach it in the next
+		long[] seen = new long[roomCount];
+		long[] frontier = new long[roomCount];
+		long[] next = new long[roomCount];
+
+		for (int batch = from; batch < to; batch++) {
+			int firstSource = batch * BATCH_SIZE;
+			int sources = Math.min(BATCH_SIZE, roomCount - firstSource);
+
+			Arrays.fill(seen, 0);
+			Arrays.fill(frontier, 0);
+			for (int b = 0; b < sources; b++) {
+				seen[firstSource + b] = frontier[firstSource + b] = 1L << b;
+			}
+
+			// sweeps every room on each level rather than keeping a list of the active
+			// ones. The sources of a batch were placed one after another, so their
+			// searches overlap and most rooms are active on most levels anyway
+			for (int level = 1;; level++) {
+				for (int room = 0; room < roomCount; room++) {
+					long bits = frontier[room];
+					if (bits != 0) {
+						for (int edge = graph.getEdgeStart(room); edge < graph.getEdgeEnd(room); edge++) {
+							next[graph.getNeighbor(edge)] |= bits;
+						}
+					}
+				}
+
+				// keeps only the sources reaching a room for the first time
+				long reached = 0;
+				for (int room = 0; room < roomCount; room++) {
+					long bits = next[room] & ~seen[room];
+					next[room] = 0;
+					frontier[room] = bits;
+					seen[room] |= bits;
+					reached |= bits;
+				}
+
+				if (reached == 0) {
+					break;
+				}
+
+				// a source's eccentricity is the last level at which it reached a room
+				while (reached != 0) {
+					eccentricities[firstSource + Long.numberOfTrailingZeros(reached)] = level;
+					reached &= reached - 1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts the groups of rooms that can be reached from one another
+	 */
+	private static int countComponents(RoomGraph graph) {
+		int roomCount = graph.getRoomCount();
+		boolean[] visited = new boolean[roomCount];
+		int[] queue = new int[roomCount];
+		int components = 0;
+
+		for (int source = 0; source < roomCount; source++) {
+			if (visited[source]) {
+				continue;
+			}
+			components++;
+
+			int head = 0, tail = 0;
+			visited[source] = true;
+			queue[tail++] = source;
+			while (head < tail) {
+				int room = queue[head++];
+				for (int edge = graph.getEdgeStart(room); edge < graph.getEdgeEnd(room); edge++) {
+					int neighbor = graph.getNeighbor(edge);
+					if (!visited[neighbor]) {
+						visited[neighbor] = true;
+						queue[tail++] = neighbor;
+					}
+				}
+			}
+		}
+
+		return components;
+	}
+
+	/**
+	 * Searches the batches in the range [from, to), splitting the range in half
+	 * until it holds a single batch
+	 */
+	private static class BatchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final RoomGraph graph;
+		private final int from, to;
+		private final int[] eccentricities;
+
+		private BatchTask(RoomGraph graph, int from, int to, int[] eccentricities) {
+			this.graph = graph;
+			this.from = from;
+			this.to = to;
+			this.eccentricities = eccentricities;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				searchBatches(graph, from, to, eccentricities);
+
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new BatchTask(graph, from, mid, eccentricities),
+						new BatchTask(graph, mid, to, eccentricities));
+			}
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package procedural_dungeon_gen;
+
+import java.util.Arrays;
+
+/**
+ * Shape of the room graph of a generated map, as computed by
+ * RoomGraphAnalytics. Distances count the doorways passed through, and the
+ * eccentricity of a room is its distance to the farthest room it can reach.
+ */
+public final class RoomGraphMetrics {
+
+	private final int roomCount;
+	private final int doorwayCount;
+	private final int componentCount;
+	private final int deadEndCount;
+	private final int startRoom;
+	private final int[] eccentricities;
+	private final int diameter;
+
+	/**
+	 * Creates a new metrics record
+	 *
+	 * @param doorwayCount   Number of doorways, counting the two sides of a
+	 *                       doorway once
+	 * @param componentCount Number of groups of rooms reachable from one another
+	 * @param deadEndCount   Number of rooms with a single doorway
+	 * @param startRoom      ID of the start room, or -1 if there is none
+	 * @param eccentricities Eccentricity of each room
+	 */
+	RoomGraphMetrics(int doorwayCount, int componentCount, int deadEndCount, int startRoom, int[] eccentricities) {
+		this.roomCount = eccentricities.length;
+		this.doorwayCount = doorwayCount;
+		this.componentCount = componentCount;
+		this.deadEndCount = deadEndCount;
+		this.startRoom = startRoom;
+		this.eccentricities = eccentricities;
+
+		int max = 0;
+		for (int eccentricity : eccentricities) {
+			max = Math.max(max, eccentricity);
+		}
+		this.diameter = max;
+	}
+
+	public int getRoomCount() {
+		return roomCount;
+	}
+
+	/**
+	 * @return The number of doorways, counting the two sides of a doorway once
+	 */
+	public int getDoorwayCount() {
+		return doorwayCount;
+	}
+
+	/**
+	 * @return The number of groups of rooms that can be reached from one another
+	 */
+	public int getComponentCount() {
+		return componentCount;
+	}
+
+	/**
+	 * @return The number of rooms with a single doorway
+	 */
+	public int getDeadEndCount() {
+		return deadEndCount;
+	}
+
+	/**
+	 * Gets the number of independent loops of the graph, which is the number of
+	 * doorways beyond those of a spanning tree. Rooms grown from one another form
+	 * a tree, so these are the doorways added to make the dungeon less linear.
+	 *
+	 * @return The number of doorways minus rooms plus components
+	 */
+	public int getLoopCount() {
+		return doorwayCount - roomCount + componentCount;
+	}
+
+	/**
+	 * @return The largest distance between two rooms that can reach each other,
+	 *         or 0 if there are no rooms
+	 */
+	public int getDiameter() {
+		return diameter;
+	}
+
+	/**
+	 * @param room ID of a room
+	 * @return The distance from the room to the farthest room it can reach
+	 */
+	public int getEccentricity(int room) {
+		return eccentricities[room];
+	}
+
+	/**
+	 * @return A copy of the eccentricity of every room, indexed by room ID
+	 */
+	public int[] getEccentricities() {
+		return Arrays.copyOf(eccentricities, eccentricities.length);
+	}
+
+	/**
+	 * @return ID of the start room the metrics were computed for, or -1 if there
+	 *         is none
+	 */
+	public int getStartRoom() {
+		return startRoom;
+	}
+
+	/**
+	 * @return The eccentricity of the start room, or -1 if there is none
+	 */
+	public int getStartRoomEccentricity() {
+		return startRoom < 0 ? -1 : eccentricities[startRoom];
+	}
+
+	@Override
+	public String toString() {
+		return "RoomGraphMetrics[rooms=" + roomCount + ", doorways=" + doorwayCount + ", components="
+				+ componentCount + ", deadEnds=" + deadEndCount + ", loops=" + getLoopCount() + ", diameter="
+				+ diameter + ", startEccentricity=" + getStartRoomEccentricity() + "]";
+	}
+}
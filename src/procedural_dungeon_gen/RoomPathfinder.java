@@ -0,0 +1,196 @@
+package procedural_dungeon_gen;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds shortest cell paths between any two room cells of a generated map, where
+ * a path moves between side-adjacent cells and can only leave a room through a
+ * doorway. Works in two levels in the style of HPA*: an A* search runs over the
+ * doorways of the map, using the transition costs precomputed once per map by
+ * PortalGraph, and the doorway sequence it finds is then refined into cells by
+ * walking straight across each room. Rooms are solid rectangles, so these walks
+ * never need a search of their own, and a query only touches the doorways of
+ * the rooms it explores instead of every cell of the map.
+ *
+ * The search buffers are allocated once and reused by every query, so a
+ * pathfinder must not be shared between threads. Create one per thread; they
+ * can all share a frozen map.
+ */
+public final class RoomPathfinder {
+
+	// results of findGoalPortal() that are not portals
+	private static final int NO_PATH = -1, SAME_ROOM = -2;
+
+	private final GeneratedMap map;
+	private final PortalGraph portals;
+	private final RoomGraph graph;
+	private final int mapWidth;
+
+	// search over the portals, where the cost of a portal is the number of steps
+	// from the start cell to its outside cell
+	private final PathSearch search;
+
+	/**
+	 * Creates a pathfinder over the current layout of a map. Must be created again
+	 * after the map is generated again or edited.
+	 *
+	 * @param map The generated map
+	 */
+	public RoomPathfinder(GeneratedMap map) {
+		this.map = map;
+		this.portals = map.getPortalGraph();
+		this.graph = portals.getRoomGraph();
+		this.mapWidth = map.getMapWidth();
+
+		this.search = new PathSearch(portals.getPortalCount());
+	}
+
+	/**
+	 * Finds the length of the shortest path between two cells
+	 *
+	 * @param fromX The x position of the start cell
+	 * @param fromY The y position of the start cell
+	 * @param toX   The x position of the goal cell
+	 * @param toY   The y position of the goal cell
+	 * @return The number of steps of the shortest path, or -1 if either cell is not
+	 *         part of a room or the goal cannot be reached
+	 */
+	public int findDistance(int fromX, int fromY, int toX, int toY) {
+		int goalPortal = findGoalPortal(fromX, fromY, toX, toY);
+		if (goalPortal == NO_PATH) {
+			return -1;
+		}
+		if (goalPortal == SAME_ROOM) {
+			return Math.abs(toX - fromX) + Math.abs(toY - fromY);
+		}
+		return search.getCost(goalPortal) + PortalGraph.cellDistance(portals.getOutsideCell(goalPortal), toY * mapWidth + toX,
+				mapWidth);
+	}
+
+	/**
+	 * Finds the shortest path between two cells
+	 *
+	 * @param from The start cell
+	 * @param to   The goal cell
+	 * @return The cells of the path, including the start and goal cells, or null if
+	 *         either cell is not part of a room or the goal cannot be reached
+	 */
+	public List<Point> findPath(Point from, Point to) {
+		int length = findDistance(from.x, from.y, to.x, to.y) + 1;
+		if (length == 0) {
+			return null;
+		}
+
+		int[] cells = new int[length];
+		findPath(from.x, from.y, to.x, to.y, cells);
+
+		List<Point> path = new ArrayList<>(length);
+		for (int cell : cells) {
+			path.add(new Point(cell % mapWidth, cell / mapWidth));
+		}
+		return path;
+	}
+
+	/**
+	 * Finds the shortest path between two cells without allocating, writing its
+	 * cells as y * mapWidth + x. If the array is too short, only the first cells
+	 * are written, so a caller can size it from the returned length and try again.
+	 *
+	 * @param fromX The x position of the start cell
+	 * @param fromY The y position of the start cell
+	 * @param toX   The x position of the goal cell
+	 * @param toY   The y position of the goal cell
+	 * @param cells Filled with the cells of the path, including the start and goal
+	 *              cells
+	 * @return The number of cells in the path, or -1 if either cell is not part of
+	 *         a room or the goal cannot be reached
+	 */
+	public int findPath(int fromX, int fromY, int toX, int toY, int[] cells) {
+		int goalPortal = findGoalPortal(fromX, fromY, toX, toY);
+		if (goalPortal == NO_PATH) {
+			return -1;
+		}
+
+		int from = fromY * mapWidth + fromX;
+		int length = PathSearch.put(cells, 0, from);
+
+		if (goalPortal != SAME_ROOM) {
+			// the route lists the portals from the goal back to the start
+			for (int i = search.listRoute(goalPortal) - 1; i >= 0; i--) {
+				int portal = search.getRouteNode(i);
+				length = PathSearch.walk(cells, length, from, portals.getInsideCell(portal), mapWidth);
+				from = portals.getOutsideCell(portal);
+				length = PathSearch.put(cells, length, from);
+			}
+		}
+
+		return PathSearch.walk(cells, length, from, toY * mapWidth + toX, mapWidth);
+	}
+
+	/**
+	 * Runs an A* search over the portals from the start cell to the goal cell,
+	 * using the Manhattan distance from a portal's outside cell to the goal as the
+	 * estimate. The estimate never exceeds the remaining steps and is consistent,
+	 * so the first portal into the goal room taken from the heap ends a shortest
+	 * path.
+	 *
+	 * @return The last portal of the path, NO_PATH or SAME_ROOM
+	 */
+	private int findGoalPortal(int fromX, int fromY, int toX, int toY) {
+		if (!isInBounds(fromX, fromY) || !isInBounds(toX, toY)) {
+			return NO_PATH;
+		}
+
+		Room startRoom = map.getRoomAt(fromX, fromY), goalRoom = map.getRoomAt(toX, toY);
+		if (startRoom == null || goalRoom == null) {
+			return NO_PATH;
+		}
+		if (startRoom == goalRoom) {
+			return SAME_ROOM;
+		}
+
+		int goalId = goalRoom.getId();
+		int from = fromY * mapWidth + fromX, goal = toY * mapWidth + toX;
+		search.start();
+
+		for (int p = graph.getEdgeStart(startRoom.getId()); p < graph.getEdgeEnd(startRoom.getId()); p++) {
+			reach(p, PortalGraph.cellDistance(from, portals.getInsideCell(p), mapWidth) + 1, -1, goal);
+		}
+
+		while (!search.isEmpty()) {
+			int portal = search.pop();
+			if (!search.close(portal)) {
+				continue;
+			}
+
+			int room = graph.getNeighbor(portal);
+			if (room == goalId) {
+				return portal;
+			}
+
+			int transition = portals.getTransitionStart(portal);
+			for (int next = graph.getEdgeStart(room); next < graph.getEdgeEnd(room); next++, transition++) {
+				if (!search.isClosed(next)) {
+					reach(next, search.getCost(portal) + portals.getTransitionCost(transition), portal, goal);
+				}
+			}
+		}
+
+		return NO_PATH;
+	}
+
+	private boolean isInBounds(int x, int y) {
+		return x >= 0 && x < mapWidth && y >= 0 && y < map.getMapHeight();
+	}
+
+	/**
+	 * Records a way to cross a portal if it is cheaper than any found so far
+	 */
+	private void reach(int portal, int cost, int parent, int goal) {
+		if (search.reach(portal, cost, parent)) {
+			search.push(portal, cost + PortalGraph.cellDistance(portals.getOutsideCell(portal), goal, mapWidth));
+		}
+	}
+}
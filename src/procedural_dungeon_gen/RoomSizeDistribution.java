@@ -0,0 +1,175 @@
+package procedural_dungeon_gen;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Weighted distribution of room sizes, from 1x1 up to a maximum width and
+ * height. Sizes are drawn in constant time using an alias table, and the
+ * individual weights can be looked up to sample among only the sizes that fit
+ * in a given space.
+ */
+public final class RoomSizeDistribution {
+
+	private final int maxWidth, maxHeight;
+
+	// weight of each size, stored at index (width - 1) * maxHeight + (height - 1)
+	private final double[] weights;
+
+	// alias table, where a size index drawn uniformly is kept with probability
+	// prob[index] and replaced by alias[index] otherwise
+	private final double[] prob;
+	private final int[] alias;
+
+	/**
+	 * Creates a distribution where every size up to maxWidth x maxHeight is equally
+	 * likely
+	 *
+	 * @param maxWidth  Max width of a room
+	 * @param maxHeight Max height of a room
+	 * @return A new uniform room size distribution
+	 */
+	public static RoomSizeDistribution uniform(int maxWidth, int maxHeight) {
+		double[][] weights = new double[maxWidth][maxHeight];
+		for (double[] column : weights) {
+			Arrays.fill(column, 1);
+		}
+		return new RoomSizeDistribution(weights);
+	}
+
+	/**
+	 * Creates a new room size distribution
+	 *
+	 * @param weights Relative weight of each size, where weights[w - 1][h - 1] is
+	 *                the weight of a room of width w and height h. All rows must
+	 *                have the same length, weights must not be negative and at
+	 *                least one must be positive.
+	 */
+	public RoomSizeDistribution(double[][] weights) {
+		if (weights.length == 0 || weights[0].length == 0) {
+			throw new IllegalArgumentException("Room size weights must not be empty");
+		}
+
+		this.maxWidth = weights.length;
+		this.maxHeight = weights[0].length;
+		this.weights = new double[maxWidth * maxHeight];
+
+		double total = 0;
+		for (int w = 0; w < maxWidth; w++) {
+			if (weights[w].length != maxHeight) {
+				throw new IllegalArgumentException("Room size weights must be rectangular");
+			}
+
+			for (int h = 0; h < maxHeight; h++) {
+				double weight = weights[w][h];
+				if (!(weight >= 0) || Double.isInfinite(weight)) {
+					throw new IllegalArgumentException("Invalid weight for size " + (w + 1) + "x" + (h + 1));
+				}
+				this.weights[w * maxHeight + h] = weight;
+				total += weight;
+			}
+		}
+
+		if (total <= 0) {
+			throw new IllegalArgumentException("At least one room size must have a positive weight");
+		}
+
+		this.prob = new double[this.weights.length];
+		this.alias = new int[this.weights.length];
+		buildAliasTable(total);
+	}
+
+	/**
+	 * Builds the alias table using Vose's method, splitting sizes into those more
+	 * and less likely than average and pairing each less likely size with a more
+	 * likely one that fills the rest of its slot.
+	 *
+	 * @param total Sum of all weights
+	 */
+	private void buildAliasTable(double total) {
+		int n = weights.length;
+		double[] scaled = new double[n];
+		int[] small = new int[n], large = new int[n];
+		int numSmall = 0, numLarge = 0;
+
+		for (int i = 0; i < n; i++) {
+			scaled[i] = weights[i] * n / total;
+			if (scaled[i] < 1) {
+				small[numSmall++] = i;
+			} else {
+				large[numLarge++] = i;
+			}
+		}
+
+		while (numSmall > 0 && numLarge > 0) {
+			int less = small[--numSmall];
+			int more = large[--numLarge];
+
+			prob[less] = scaled[less];
+			alias[less] = more;
+
+			scaled[more] = scaled[more] + scaled[less] - 1;
+			if (scaled[more] < 1) {
+				small[numSmall++] = more;
+			} else {
+				large[numLarge++] = more;
+			}
+		}
+
+		// whatever remains is only off from 1 by rounding error
+		while (numLarge > 0) {
+			prob[large[--numLarge]] = 1;
+		}
+		while (numSmall > 0) {
+			prob[small[--numSmall]] = 1;
+		}
+	}
+
+	/**
+	 * Draws a random room size in constant time
+	 *
+	 * @param rand Random stream to draw from
+	 * @return The index of the drawn size, to be passed to width() and height()
+	 */
+	public int sample(Random rand) {
+		int index = rand.nextInt(prob.length);
+		return rand.nextDouble() < prob[index] ? index : alias[index];
+	}
+
+	/**
+	 * @param sizeIndex Index of a size returned by sample()
+	 * @return The width of the size
+	 */
+	public int width(int sizeIndex) {
+		return sizeIndex / maxHeight + 1;
+	}
+
+	/**
+	 * @param sizeIndex Index of a size returned by sample()
+	 * @return The height of the size
+	 */
+	public int height(int sizeIndex) {
+		return sizeIndex % maxHeight + 1;
+	}
+
+	/**
+	 * @param width  Width of the room
+	 * @param height Height of the room
+	 * @return The relative weight of rooms of the given size, or 0 if the size is
+	 *         larger than the max size
+	 */
+	public double weight(int width, int height) {
+		if (width < 1 || width > maxWidth || height < 1 || height > maxHeight) {
+			return 0;
+		}
+		return weights[(width - 1) * maxHeight + (height - 1)];
+	}
+
+	public int getMaxWidth() {
+		return maxWidth;
+	}
+
+	public int getMaxHeight() {
+		return maxHeight;
+	}
+}
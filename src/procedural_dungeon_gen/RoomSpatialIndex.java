@@ -0,0 +1,283 @@
+package procedural_dungeon_gen;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Spatial index of the rooms of a generated map, answering which rooms are at a
+ * cell, overlap a rectangle or lie within a radius of a cell. The map is split
+ * into square buckets of BUCKET_SIZE cells on a side, and each room is listed in
+ * every bucket its rectangle overlaps. Rooms are small, so a room is in at most
+ * a few buckets and a query only looks at the rooms of the buckets it covers.
+ *
+ * A room spanning several buckets is reported once: only by the bucket holding
+ * the top left cell of its overlap with the query rectangle. Queries hand each
+ * room to a callback or write it to an array supplied by the caller, so they
+ * allocate nothing, and they keep no state, so any number of threads can query
+ * the index of a frozen map at once.
+ */
+public final class RoomSpatialIndex {
+
+	// buckets are 1 << BUCKET_SHIFT cells on a side
+	private static final int BUCKET_SHIFT = 3;
+
+	/**
+	 * Number of cells on a side of a bucket
+	 */
+	public static final int BUCKET_SIZE = 1 << BUCKET_SHIFT;
+
+	private final int mapWidth, mapHeight;
+	private final int bucketColumns;
+
+	// rooms overlapping each bucket, in no particular order, and the number of them
+	private final Room[][] buckets;
+	private final int[] bucketSizes;
+
+	private int roomCount;
+
+	/**
+	 * Creates an empty index
+	 *
+	 * @param mapWidth  Width of the map
+	 * @param mapHeight Height of the map
+	 */
+	RoomSpatialIndex(int mapWidth, int mapHeight) {
+		this.mapWidth = mapWidth;
+		this.mapHeight = mapHeight;
+		this.bucketColumns = (mapWidth + BUCKET_SIZE - 1) >> BUCKET_SHIFT;
+		int bucketRows = (mapHeight + BUCKET_SIZE - 1) >> BUCKET_SHIFT;
+
+		this.buckets = new Room[bucketColumns * bucketRows][];
+		this.bucketSizes = new int[buckets.length];
+	}
+
+	/**
+	 * Adds a room to every bucket it overlaps
+	 *
+	 * @param room A room of the map
+	 */
+	void add(Room room) {
+		Point topLeft = room.getTopLeftPos();
+		Point botRight = room.getBotRightPos();
+
+		for (int by = topLeft.y >> BUCKET_SHIFT; by <= botRight.y >> BUCKET_SHIFT; by++) {
+			for (int bx = topLeft.x >> BUCKET_SHIFT; bx <= botRight.x >> BUCKET_SHIFT; bx++) {
+				int bucket = by * bucketColumns + bx;
+				Room[] rooms = buckets[bucket];
+				int size = bucketSizes[bucket];
+
+				if (rooms == null) {
+					rooms = buckets[bucket] = new Room[4];
+				} else if (size == rooms.length) {
+					rooms = buckets[bucket] = Arrays.copyOf(rooms, size * 2);
+				}
+				rooms[size] = room;
+				bucketSizes[bucket] = size + 1;
+			}
+		}
+
+		roomCount++;
+	}
+
+	/**
+	 * Removes a room from every bucket it overlaps
+	 *
+	 * @param room A room of the map that was added before
+	 */
+	void remove(Room room) {
+		Point topLeft = room.getTopLeftPos();
+		Point botRight = room.getBotRightPos();
+
+		for (int by = topLeft.y >> BUCKET_SHIFT; by <= botRight.y >> BUCKET_SHIFT; by++) {
+			for (int bx = topLeft.x >> BUCKET_SHIFT; bx <= botRight.x >> BUCKET_SHIFT; bx++) {
+				int bucket = by * bucketColumns + bx;
+				Room[] rooms = buckets[bucket];
+				int size = bucketSizes[bucket];
+
+				// swaps the last room of the bucket into the removed room's slot
+				for (int i = 0; i < size; i++) {
+					if (rooms[i] == room) {
+						rooms[i] = rooms[size - 1];
+						rooms[size - 1] = null;
+						bucketSizes[bucket] = size - 1;
+						break;
+					}
+				}
+			}
+		}
+
+		roomCount--;
+	}
+
+	/**
+	 * Removes all rooms, keeping the buckets' arrays for the next layout
+	 */
+	void clear() {
+		for (int bucket = 0; bucket < buckets.length; bucket++) {
+			if (bucketSizes[bucket] > 0) {
+				Arrays.fill(buckets[bucket], 0, bucketSizes[bucket], null);
+				bucketSizes[bucket] = 0;
+			}
+		}
+		roomCount = 0;
+	}
+
+	/**
+	 * @return The number of rooms in the index
+	 */
+	public int getRoomCount() {
+		return roomCount;
+	}
+
+	/**
+	 * Finds the room containing a cell
+	 *
+	 * @param x The x position of the cell
+	 * @param y The y position of the cell
+	 * @return The room containing the cell, or null if the cell is outside the map
+	 *         or not part of a room
+	 */
+	public Room getRoomAt(int x, int y) {
+		if (x < 0 || x >= mapWidth || y < 0 || y >= mapHeight) {
+			return null;
+		}
+
+		int bucket = (y >> BUCKET_SHIFT) * bucketColumns + (x >> BUCKET_SHIFT);
+		for (int i = 0; i < bucketSizes[bucket]; i++) {
+			Room room = buckets[bucket][i];
+			if (contains(room, x, y)) {
+				return room;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the rooms that overlap a rectangle of cells
+	 *
+	 * @param x      The x position of the rectangle's top left cell
+	 * @param y      The y position of the rectangle's top left cell
+	 * @param width  Width of the rectangle in cells
+	 * @param height Height of the rectangle in cells
+	 * @param action Called once with each room found
+	 * @return The number of rooms found
+	 */
+	public int findRooms(int x, int y, int width, int height, Consumer<? super Room> action) {
+		return query(x, y, (long) x + width - 1, (long) y + height - 1, 0, 0, -1, action, null);
+	}
+
+	/**
+	 * Finds the rooms that overlap a rectangle of cells. If the array is too short,
+	 * only the first rooms found are written, so a caller can size it from the
+	 * returned count and try again.
+	 *
+	 * @param x      The x position of the rectangle's top left cell
+	 * @param y      The y position of the rectangle's top left cell
+	 * @param width  Width of the rectangle in cells
+	 * @param height Height of the rectangle in cells
+	 * @param rooms  Filled with the rooms found
+	 * @return The number of rooms found
+	 */
+	public int findRooms(int x, int y, int width, int height, Room[] rooms) {
+		return query(x, y, (long) x + width - 1, (long) y + height - 1, 0, 0, -1, null, rooms);
+	}
+
+	/**
+	 * Finds the rooms with a cell within a radius of a cell, measured as the
+	 * straight line distance between cell positions
+	 *
+	 * @param x      The x position of the center cell
+	 * @param y      The y position of the center cell
+	 * @param radius Max distance in cells
+	 * @param action Called once with each room found
+	 * @return The number of rooms found
+	 */
+	public int findRoomsWithin(int x, int y, int radius, Consumer<? super Room> action) {
+		return query((long) x - radius, (long) y - radius, (long) x + radius, (long) y + radius, x, y,
+				(long) radius * radius, action, null);
+	}
+
+	/**
+	 * Finds the rooms with a cell within a radius of a cell, measured as the
+	 * straight line distance between cell positions. If the array is too short,
+	 * only the first rooms found are written.
+	 *
+	 * @param x      The x position of the center cell
+	 * @param y      The y position of the center cell
+	 * @param radius Max distance in cells
+	 * @param rooms  Filled with the rooms found
+	 * @return The number of rooms found
+	 */
+	public int findRoomsWithin(int x, int y, int radius, Room[] rooms) {
+		return query((long) x - radius, (long) y - radius, (long) x + radius, (long) y + radius, x, y,
+				(long) radius * radius, null, rooms);
+	}
+
+	/**
+	 * Reports the rooms overlapping the rectangle from (left,top) to
+	 * (right,bottom), and if radiusSquared is not negative, only those with a cell
+	 * within the radius of (centerX,centerY). The bounds are longs, so a rectangle
+	 * reaching past the int range is clipped to the map instead of wrapping around.
+	 */
+	private int query(long left, long top, long right, long bottom, int centerX, int centerY, long radiusSquared,
+			Consumer<? super Room> action, Room[] out) {
+		left = Math.max(left, 0);
+		top = Math.max(top, 0);
+		right = Math.min(right, mapWidth - 1);
+		bottom = Math.min(bottom, mapHeight - 1);
+		if (left > right || top > bottom) {
+			return 0;
+		}
+
+		// within the map, so every bound now fits in an int
+		int minX = (int) left, minY = (int) top, maxX = (int) right, maxY = (int) bottom;
+
+		int count = 0;
+		for (int by = minY >> BUCKET_SHIFT; by <= maxY >> BUCKET_SHIFT; by++) {
+			for (int bx = minX >> BUCKET_SHIFT; bx <= maxX >> BUCKET_SHIFT; bx++) {
+				int bucket = by * bucketColumns + bx;
+
+				for (int i = 0; i < bucketSizes[bucket]; i++) {
+					Room room = buckets[bucket][i];
+					Point topLeft = room.getTopLeftPos();
+					Point botRight = room.getBotRightPos();
+
+					if (topLeft.x > maxX || botRight.x < minX || topLeft.y > maxY || botRight.y < minY) {
+						continue;
+					}
+
+					// reports the room only from the bucket holding the top left cell of
+					// its overlap with the query
+					if (Math.max(topLeft.x, minX) >> BUCKET_SHIFT != bx
+							|| Math.max(topLeft.y, minY) >> BUCKET_SHIFT != by) {
+						continue;
+					}
+
+					if (radiusSquared >= 0) {
+						long dx = Math.max(0, Math.max((long) topLeft.x - centerX, (long) centerX - botRight.x));
+						long dy = Math.max(0, Math.max((long) topLeft.y - centerY, (long) centerY - botRight.y));
+						if (dx * dx + dy * dy > radiusSquared) {
+							continue;
+						}
+					}
+
+					if (action != null) {
+						action.accept(room);
+					} else if (count < out.length) {
+						out[count] = room;
+					}
+					count++;
+				}
+			}
+		}
+
+		return count;
+	}
+
+	private static boolean contains(Room room, int x, int y) {
+		Point topLeft = room.getTopLeftPos();
+		Point botRight = room.getBotRightPos();
+		return x >= topLeft.x && x <= botRight.x && y >= topLeft.y && y <= botRight.y;
+	}
+}
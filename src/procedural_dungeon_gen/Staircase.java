@@ -0,0 +1,70 @@
+package procedural_dungeon_gen;
+
+/**
+ * A staircase of a MultiFloorDungeon, linking a cell of one floor to the same
+ * cell of the floor above it. Like a doorway it joins two rooms, but the rooms
+ * are on different floors, so it is kept by the dungeon instead of being listed
+ * among either room's doorways. Taking the stairs is one step, the same as
+ * passing through a doorway.
+ */
+public final class Staircase {
+
+	private final int lowerFloor;
+	private final int x, y;
+	private final Room lowerRoom, upperRoom;
+
+	Staircase(int lowerFloor, int x, int y, Room lowerRoom, Room upperRoom) {
+		this.lowerFloor = lowerFloor;
+		this.x = x;
+		this.y = y;
+		this.lowerRoom = lowerRoom;
+		this.upperRoom = upperRoom;
+	}
+
+	/**
+	 * @return Index of the floor the staircase leads up from
+	 */
+	public int getLowerFloor() {
+		return lowerFloor;
+	}
+
+	/**
+	 * @return Index of the floor the staircase leads up to
+	 */
+	public int getUpperFloor() {
+		return lowerFloor + 1;
+	}
+
+	/**
+	 * @return The x position of the staircase's cell on both floors
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * @return The y position of the staircase's cell on both floors
+	 */
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * @return The room of the lower floor containing the staircase
+	 */
+	public Room getLowerRoom() {
+		return lowerRoom;
+	}
+
+	/**
+	 * @return The room of the upper floor containing the staircase
+	 */
+	public Room getUpperRoom() {
+		return upperRoom;
+	}
+
+	@Override
+	public String toString() {
+		return "Staircase[floor " + lowerFloor + " to " + (lowerFloor + 1) + " at " + x + "," + y + "]";
+	}
+}